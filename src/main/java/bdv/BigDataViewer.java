@@ -176,9 +176,14 @@ public class BigDataViewer
 		}
 		final double typeMin = Math.max( 0, Math.min( type.getMinValue(), 65535 ) );
 		final double typeMax = Math.max( 0, Math.min( type.getMaxValue(), 65535 ) );
-		final RealARGBColorConverter< V > vconverter = new RealARGBColorConverter.Imp0<>( typeMin, typeMax );
+		final boolean lut = RealARGBColorConverter.Lut.supports( type );
+		final RealARGBColorConverter< V > vconverter = lut
+				? new RealARGBColorConverter.Lut<>( typeMin, typeMax, type )
+				: new RealARGBColorConverter.Imp0<>( typeMin, typeMax );
 		vconverter.setColor( new ARGBType( 0xffffffff ) );
-		final RealARGBColorConverter< T > converter = new RealARGBColorConverter.Imp1<>( typeMin, typeMax );
+		final RealARGBColorConverter< T > converter = lut
+				? new RealARGBColorConverter.Lut<>( typeMin, typeMax, type )
+				: new RealARGBColorConverter.Imp1<>( typeMin, typeMax );
 		converter.setColor( new ARGBType( 0xffffffff ) );
 
 		final int setupId = setup.getId();
@@ -207,7 +212,9 @@ public class BigDataViewer
 	{
 		final double typeMin = type.getMinValue();
 		final double typeMax = type.getMaxValue();
-		final RealARGBColorConverter< T > converter = new RealARGBColorConverter.Imp1<>( typeMin, typeMax );
+		final RealARGBColorConverter< T > converter = RealARGBColorConverter.Lut.supports( type )
+				? new RealARGBColorConverter.Lut<>( typeMin, typeMax, type )
+				: new RealARGBColorConverter.Imp1<>( typeMin, typeMax );
 		converter.setColor( new ARGBType( 0xffffffff ) );
 
 		final int setupId = setup.getId();
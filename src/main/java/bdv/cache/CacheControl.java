@@ -29,6 +29,7 @@
  */
 package bdv.cache;
 
+import java.util.ArrayList;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import bdv.img.cache.VolatileGlobalCellCache;
@@ -56,6 +57,66 @@ public interface CacheControl
 	 */
 	public void prepareNextFrame();
 
+	/**
+	 * Get the memory budget of the cache, that is, the maximum number of bytes
+	 * of loaded data it holds on to.
+	 *
+	 * @return the memory budget in bytes, or a negative value if the cache is
+	 *         not bounded by a budget (e.g., because it is cleared by the
+	 *         garbage collector as required).
+	 */
+	public default long getMaxCacheBytes()
+	{
+		return -1;
+	}
+
+	/**
+	 * Set the memory budget of the cache, that is, the maximum number of bytes
+	 * of loaded data it holds on to. The default implementation does nothing.
+	 *
+	 * @param maxBytes
+	 *            the memory budget in bytes, or a negative value to let the
+	 *            cache manage memory as it sees fit.
+	 */
+	public default void setMaxCacheBytes( final long maxBytes )
+	{}
+
+	/**
+	 * Listener that is notified when data has been loaded into the cache.
+	 */
+	public interface LoadListener
+	{
+		/**
+		 * Called (on a loading thread) after data has been loaded and can be
+		 * obtained from the cache. This should return quickly.
+		 */
+		public void loaded();
+	}
+
+	/**
+	 * Register a {@link LoadListener} that is notified whenever data has been
+	 * loaded. The default implementation does nothing.
+	 *
+	 * @param listener
+	 *            the listener to add.
+	 * @return whether this {@link CacheControl} notifies listeners. If
+	 *         {@code false}, the renderer has to poll for new data.
+	 */
+	public default boolean addLoadListener( final LoadListener listener )
+	{
+		return false;
+	}
+
+	/**
+	 * Unregister a {@link LoadListener}. The default implementation does
+	 * nothing.
+	 *
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public default void removeLoadListener( final LoadListener listener )
+	{}
+
 	/**
 	 * {@link CacheControl} that does nothing.
 	 */
@@ -74,9 +135,13 @@ public interface CacheControl
 	{
 		private final CopyOnWriteArrayList< CacheControl > cacheControls = new CopyOnWriteArrayList<>();
 
+		private final CopyOnWriteArrayList< LoadListener > loadListeners = new CopyOnWriteArrayList<>();
+
 		public synchronized void addCacheControl( final CacheControl cacheControl, final int index )
 		{
-			cacheControls.remove( cacheControl );
+			if ( !cacheControls.remove( cacheControl ) )
+				for ( final LoadListener l : loadListeners )
+					cacheControl.addLoadListener( l );
 			final int s = cacheControls.size();
 			cacheControls.add( index < 0 ? 0 : index > s ? s : index, cacheControl );
 		}
@@ -86,12 +151,16 @@ public interface CacheControl
 			if ( !cacheControls.contains( cacheControl ) )
 			{
 				cacheControls.add( cacheControl );
+				for ( final LoadListener l : loadListeners )
+					cacheControl.addLoadListener( l );
 			}
 		}
 
 		public synchronized void removeCacheControl( final CacheControl cacheControl )
 		{
-			cacheControls.remove( cacheControl );
+			if ( cacheControls.remove( cacheControl ) )
+				for ( final LoadListener l : loadListeners )
+					cacheControl.removeLoadListener( l );
 		}
 
 		@Override
@@ -100,5 +169,90 @@ public interface CacheControl
 			for ( final CacheControl c : cacheControls )
 				c.prepareNextFrame();
 		}
+
+		/**
+		 * Forwards to all {@link CacheControl}s, including those added later.
+		 *
+		 * @return whether all current {@link CacheControl}s notify listeners.
+		 */
+		@Override
+		public synchronized boolean addLoadListener( final LoadListener listener )
+		{
+			loadListeners.add( listener );
+			boolean notifies = true;
+			for ( final CacheControl c : cacheControls )
+				notifies &= c.addLoadListener( listener );
+			return notifies;
+		}
+
+		@Override
+		public synchronized void removeLoadListener( final LoadListener listener )
+		{
+			loadListeners.remove( listener );
+			for ( final CacheControl c : cacheControls )
+				c.removeLoadListener( listener );
+		}
+
+		/**
+		 * Returns the sum of the memory budgets of all bounded
+		 * {@link CacheControl}s, or {@code -1} if there are none.
+		 */
+		@Override
+		public long getMaxCacheBytes()
+		{
+			long sum = -1;
+			for ( final CacheControl c : cacheControls )
+			{
+				final long b = c.getMaxCacheBytes();
+				if ( b >= 0 )
+					sum = ( sum < 0 ) ? b : sum + b;
+			}
+			return sum;
+		}
+
+		/**
+		 * Distributes the total memory budget {@code maxBytes} over the
+		 * bounded {@link CacheControl}s, in proportion to their current
+		 * budgets. If none of them is bounded yet, the budget is split equally
+		 * over all of them. A negative {@code maxBytes} is forwarded to all of
+		 * them.
+		 */
+		@Override
+		public synchronized void setMaxCacheBytes( final long maxBytes )
+		{
+			if ( maxBytes < 0 )
+			{
+				for ( final CacheControl c : cacheControls )
+					c.setMaxCacheBytes( maxBytes );
+				return;
+			}
+			final boolean anyBounded = getMaxCacheBytes() >= 0;
+			final ArrayList< CacheControl > targets = new ArrayList<>();
+			final ArrayList< Long > weights = new ArrayList<>();
+			long totalWeight = 0;
+			for ( final CacheControl c : cacheControls )
+			{
+				final long w = anyBounded ? c.getMaxCacheBytes() : 1;
+				if ( w >= 0 )
+				{
+					targets.add( c );
+					weights.add( w );
+					totalWeight += w;
+				}
+			}
+			long remaining = maxBytes;
+			for ( int i = 0; i < targets.size(); ++i )
+			{
+				final long b;
+				if ( totalWeight == 0 )
+					b = maxBytes / targets.size();
+				else if ( i == targets.size() - 1 )
+					b = remaining;
+				else
+					b = ( long ) ( ( double ) maxBytes * weights.get( i ) / totalWeight );
+				targets.get( i ).setMaxCacheBytes( b );
+				remaining -= b;
+			}
+		}
 	}
 }
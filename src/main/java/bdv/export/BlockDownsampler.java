@@ -0,0 +1,382 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Downsamples blocks by averaging {@code factor[0] x factor[1] x ...} input
+ * pixels into each output pixel.
+ * <p>
+ * An input block is first copied into a primitive array (for
+ * {@link ByteType}, {@link UnsignedByteType}, {@link ShortType},
+ * {@link UnsignedShortType}, and {@link FloatType}; other types are read as
+ * {@code double}). The average is then computed separably, one axis at a
+ * time, by loops over flat arrays. Intermediate sums are {@code double}, so
+ * the result is the same as averaging all pixels of each output pixel at once
+ * (for {@link FloatType} up to rounding of the double sums).
+ * <p>
+ * A {@link BlockDownsampler} holds scratch buffers and is not thread-safe.
+ * Use one instance per thread.
+ *
+ * @param <T>
+ *            pixel type
+ */
+public class BlockDownsampler< T extends RealType< T > >
+{
+	private enum Kind
+	{
+		BYTE, UNSIGNED_BYTE, SHORT, UNSIGNED_SHORT, FLOAT, DOUBLE
+	}
+
+	private final int n;
+
+	private final int[] factor;
+
+	private final double scale;
+
+	private final Kind kind;
+
+	private final long[] inDim;
+
+	private final long[] pos;
+
+	private ArrayImg< T, ? > staging;
+
+	private double[] bufA = new double[ 0 ];
+
+	private double[] bufB = new double[ 0 ];
+
+	/**
+	 * @param type
+	 *            an instance of the pixel type.
+	 * @param factor
+	 *            downsampling factor in every dimension.
+	 */
+	public BlockDownsampler( final T type, final int[] factor )
+	{
+		this.n = factor.length;
+		this.factor = factor.clone();
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+			size *= factor[ d ];
+		this.scale = 1.0 / size;
+		if ( type instanceof UnsignedByteType )
+			kind = Kind.UNSIGNED_BYTE;
+		else if ( type instanceof ByteType )
+			kind = Kind.BYTE;
+		else if ( type instanceof UnsignedShortType )
+			kind = Kind.UNSIGNED_SHORT;
+		else if ( type instanceof ShortType )
+			kind = Kind.SHORT;
+		else if ( type instanceof FloatType )
+			kind = Kind.FLOAT;
+		else
+			kind = Kind.DOUBLE;
+		inDim = new long[ n ];
+		pos = new long[ n ];
+	}
+
+	/**
+	 * Downsample the block of size {@code outDim * factor} starting at
+	 * {@code blockMin} in the input.
+	 *
+	 * @param in
+	 *            access to the input, must be defined on the whole block.
+	 * @param blockMin
+	 *            min coordinate of the input block.
+	 * @param outDim
+	 *            size of the output block.
+	 * @param out
+	 *            cursor over the output block, iterating in flat order. It is
+	 *            advanced {@code outDim[0] * outDim[1] * ...} times.
+	 */
+	public void downsample( final RandomAccess< T > in, final long[] blockMin, final long[] outDim, final Cursor< T > out )
+	{
+		int numIn = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			inDim[ d ] = outDim[ d ] * factor[ d ];
+			numIn *= inDim[ d ];
+		}
+
+		// first pass: load block and reduce dimension 0
+		final int numOut0 = numIn / factor[ 0 ];
+		double[] src = buffer( true, numOut0 );
+		if ( kind == Kind.DOUBLE )
+		{
+			final double[] data = buffer( false, numIn );
+			load( in, blockMin, data, numIn );
+			reduce( data, numIn, factor[ 0 ], src );
+		}
+		else
+		{
+			loadStaging( in, blockMin );
+			final Object data = ( ( ArrayDataAccess< ? > ) staging.update( null ) ).getCurrentStorageArray();
+			switch ( kind )
+			{
+			case BYTE:
+				reduce( ( byte[] ) data, numIn, factor[ 0 ], src );
+				break;
+			case UNSIGNED_BYTE:
+				reduceUnsigned( ( byte[] ) data, numIn, factor[ 0 ], src );
+				break;
+			case SHORT:
+				reduce( ( short[] ) data, numIn, factor[ 0 ], src );
+				break;
+			case UNSIGNED_SHORT:
+				reduceUnsigned( ( short[] ) data, numIn, factor[ 0 ], src );
+				break;
+			case FLOAT:
+			default:
+				reduce( ( float[] ) data, numIn, factor[ 0 ], src );
+				break;
+			}
+		}
+
+		// remaining passes: reduce dimensions 1, 2, ...
+		int size = numOut0;
+		int stride = ( int ) outDim[ 0 ];
+		boolean srcIsA = true;
+		for ( int d = 1; d < n; ++d )
+		{
+			if ( factor[ d ] > 1 )
+			{
+				final int outSize = size / factor[ d ];
+				final double[] dst = buffer( !srcIsA, outSize );
+				reduce( src, size, stride, factor[ d ], dst );
+				src = dst;
+				srcIsA = !srcIsA;
+				size = outSize;
+			}
+			stride *= outDim[ d ];
+		}
+
+		for ( int i = 0; i < size; ++i )
+			out.next().setReal( src[ i ] * scale );
+	}
+
+	/**
+	 * Get scratch buffer A or B with at least {@code size} elements.
+	 */
+	private double[] buffer( final boolean a, final int size )
+	{
+		if ( a )
+		{
+			if ( bufA.length < size )
+				bufA = new double[ size ];
+			return bufA;
+		}
+		else
+		{
+			if ( bufB.length < size )
+				bufB = new double[ size ];
+			return bufB;
+		}
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private void loadStaging( final RandomAccess< T > in, final long[] blockMin )
+	{
+		if ( staging == null || !Arrays.equals( dimensions( staging ), inDim ) )
+		{
+			final ArrayImg img;
+			switch ( kind )
+			{
+			case BYTE:
+				img = ArrayImgs.bytes( inDim );
+				break;
+			case UNSIGNED_BYTE:
+				img = ArrayImgs.unsignedBytes( inDim );
+				break;
+			case SHORT:
+				img = ArrayImgs.shorts( inDim );
+				break;
+			case UNSIGNED_SHORT:
+				img = ArrayImgs.unsignedShorts( inDim );
+				break;
+			case FLOAT:
+			default:
+				img = ArrayImgs.floats( inDim );
+				break;
+			}
+			staging = img;
+		}
+
+		final Cursor< T > c = staging.cursor();
+		in.setPosition( blockMin );
+		Arrays.fill( pos, 0 );
+		while ( c.hasNext() )
+		{
+			c.next().set( in.get() );
+			advance( in, blockMin );
+		}
+	}
+
+	private void load( final RandomAccess< T > in, final long[] blockMin, final double[] data, final int numIn )
+	{
+		in.setPosition( blockMin );
+		Arrays.fill( pos, 0 );
+		for ( int i = 0; i < numIn; ++i )
+		{
+			data[ i ] = in.get().getRealDouble();
+			advance( in, blockMin );
+		}
+	}
+
+	/**
+	 * Move {@code in} to the next position in flat iteration order of the
+	 * block.
+	 */
+	private void advance( final RandomAccess< T > in, final long[] blockMin )
+	{
+		for ( int d = 0; d < n; ++d )
+		{
+			if ( ++pos[ d ] < inDim[ d ] )
+			{
+				in.fwd( d );
+				return;
+			}
+			pos[ d ] = 0;
+			in.setPosition( blockMin[ d ], d );
+		}
+	}
+
+	private static long[] dimensions( final ArrayImg< ?, ? > img )
+	{
+		final long[] dims = new long[ img.numDimensions() ];
+		img.dimensions( dims );
+		return dims;
+	}
+
+	/*
+	 * Reduce dimension 0 of a flat array with {@code size} elements by
+	 * summing runs of {@code f} consecutive elements.
+	 */
+
+	private static void reduce( final byte[] in, final int size, final int f, final double[] out )
+	{
+		for ( int i = 0, o = 0; i < size; ++o )
+		{
+			double sum = 0;
+			for ( final int e = i + f; i < e; ++i )
+				sum += in[ i ];
+			out[ o ] = sum;
+		}
+	}
+
+	private static void reduceUnsigned( final byte[] in, final int size, final int f, final double[] out )
+	{
+		for ( int i = 0, o = 0; i < size; ++o )
+		{
+			double sum = 0;
+			for ( final int e = i + f; i < e; ++i )
+				sum += in[ i ] & 0xff;
+			out[ o ] = sum;
+		}
+	}
+
+	private static void reduce( final short[] in, final int size, final int f, final double[] out )
+	{
+		for ( int i = 0, o = 0; i < size; ++o )
+		{
+			double sum = 0;
+			for ( final int e = i + f; i < e; ++i )
+				sum += in[ i ];
+			out[ o ] = sum;
+		}
+	}
+
+	private static void reduceUnsigned( final short[] in, final int size, final int f, final double[] out )
+	{
+		for ( int i = 0, o = 0; i < size; ++o )
+		{
+			double sum = 0;
+			for ( final int e = i + f; i < e; ++i )
+				sum += in[ i ] & 0xffff;
+			out[ o ] = sum;
+		}
+	}
+
+	private static void reduce( final float[] in, final int size, final int f, final double[] out )
+	{
+		for ( int i = 0, o = 0; i < size; ++o )
+		{
+			double sum = 0;
+			for ( final int e = i + f; i < e; ++i )
+				sum += in[ i ];
+			out[ o ] = sum;
+		}
+	}
+
+	private static void reduce( final double[] in, final int size, final int f, final double[] out )
+	{
+		for ( int i = 0, o = 0; i < size; ++o )
+		{
+			double sum = 0;
+			for ( final int e = i + f; i < e; ++i )
+				sum += in[ i ];
+			out[ o ] = sum;
+		}
+	}
+
+	/**
+	 * Reduce a dimension with the given {@code stride} (product of the sizes
+	 * of all faster-varying dimensions) of a flat array with {@code size}
+	 * elements, by summing runs of {@code f} consecutive lines. The inner loop
+	 * runs over contiguous elements.
+	 */
+	private static void reduce( final double[] in, final int size, final int stride, final int f, final double[] out )
+	{
+		final int run = stride * f;
+		for ( int i = 0, o = 0; i < size; i += run, o += stride )
+		{
+			System.arraycopy( in, i, out, o, stride );
+			for ( int k = 1; k < f; ++k )
+			{
+				final int ik = i + k * stride;
+				for ( int j = 0; j < stride; ++j )
+					out[ o + j ] += in[ ik + j ];
+			}
+		}
+	}
+}
@@ -29,63 +29,154 @@
  */
 package bdv.export;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
 import net.imglib2.Cursor;
-import net.imglib2.FinalInterval;
-import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.algorithm.neighborhood.Neighborhood;
-import net.imglib2.algorithm.neighborhood.RectangleNeighborhoodFactory;
-import net.imglib2.algorithm.neighborhood.RectangleNeighborhoodUnsafe;
-import net.imglib2.algorithm.neighborhood.RectangleShape;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
 public class Downsample
 {
+	/**
+	 * Size of output blocks that are processed in parallel (in the first three
+	 * dimensions; blocks have size 1 in higher dimensions).
+	 */
+	private static final int BLOCK_SIZE = 64;
+
+	/**
+	 * Downsample {@code input} into {@code output} in the calling thread.
+	 * Output pixel {@code x} is the average of input pixels
+	 * {@code x * factor} to {@code (x + 1) * factor - 1}.
+	 */
 	public static < T extends RealType< T > > void downsample( final RandomAccessible< T > input, final RandomAccessibleInterval< T > output, final int[] factor )
 	{
-		assert input.numDimensions() == output.numDimensions();
-		assert input.numDimensions() == factor.length;
-
-		final int n = input.numDimensions();
-		final RectangleNeighborhoodFactory< T > f = RectangleNeighborhoodUnsafe.< T >factory();
-		final long[] dim = new long[ n ];
-		for ( int d = 0; d < n; ++d )
-			dim[ d ] = factor[ d ];
-		final Interval spanInterval = new FinalInterval( dim );
+		try
+		{
+			createTask( input, output, factor ).call();
+		}
+		catch ( final RuntimeException e )
+		{
+			throw e;
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final Exception e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
 
-		final long[] minRequiredInput = new long[ n ];
-		final long[] maxRequiredInput = new long[ n ];
-		output.min( minRequiredInput );
-		output.max( maxRequiredInput );
-		for ( int d = 0; d < n; ++d )
+	/**
+	 * Downsample {@code input} into {@code output}. Output pixel {@code x} is
+	 * the average of input pixels {@code x * factor} to
+	 * {@code (x + 1) * factor - 1}. The output is split into blocks that are
+	 * processed in parallel by {@link BlockDownsampler BlockDownsamplers}.
+	 *
+	 * @param executorService
+	 *            executes the downsampling tasks.
+	 * @param numTasks
+	 *            how many tasks to submit, i.e., how many threads of
+	 *            {@code executorService} to use at most.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting. Tasks
+	 *             that are still running are cancelled, and {@code output} is
+	 *             incomplete.
+	 */
+	public static < T extends RealType< T > > void downsample(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< T > output,
+			final int[] factor,
+			final ExecutorService executorService,
+			final int numTasks ) throws InterruptedException
+	{
+		final Callable< Void > task = createTask( input, output, factor );
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( int i = 0; i < numTasks; ++i )
+			tasks.add( task );
+		final List< Future< Void > > futures = executorService.invokeAll( tasks );
+		try
 		{
-			minRequiredInput[ d ] *= factor[ d ];
-			maxRequiredInput[ d ] *= factor[ d ];
-			maxRequiredInput[ d ] += factor[ d ] - 1;
+			for ( final Future< Void > f : futures )
+				f.get();
 		}
-		final RandomAccessibleInterval< T > requiredInput = Views.interval( input, new FinalInterval( minRequiredInput, maxRequiredInput ) );
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			throw new RuntimeException( cause );
+		}
+	}
 
-		final RectangleShape.NeighborhoodsAccessible< T > neighborhoods = new RectangleShape.NeighborhoodsAccessible<>( requiredInput, spanInterval, f );
-		final RandomAccess< Neighborhood< T > > block = neighborhoods.randomAccess();
+	/**
+	 * Create a task that downsamples blocks of {@code output} until all blocks
+	 * are done. The same task can be run by several threads concurrently; each
+	 * block is processed once. The task stops early if its thread is
+	 * interrupted.
+	 */
+	private static < T extends RealType< T > > Callable< Void > createTask( final RandomAccessible< T > input, final RandomAccessibleInterval< T > output, final int[] factor )
+	{
+		assert input.numDimensions() == output.numDimensions();
+		assert input.numDimensions() == factor.length;
 
-		long size = 1;
+		final int n = input.numDimensions();
+		final long[] outMin = new long[ n ];
+		final long[] outDim = new long[ n ];
+		final int[] blockSize = new int[ n ];
+		final long[] numBlocks = new long[ n ];
+		output.min( outMin );
+		output.dimensions( outDim );
+		long numBlocksTotal = 1;
 		for ( int d = 0; d < n; ++d )
-			size *= factor[ d ];
-		final double scale = 1.0 / size;
-
-		final Cursor< T > out = Views.iterable( output ).localizingCursor();
-		while( out.hasNext() )
 		{
-			final T o = out.next();
-			for ( int d = 0; d < n; ++d )
-				block.setPosition( out.getLongPosition( d ) * factor[ d ], d );
-			double sum = 0;
-			for ( final T i : block.get() )
-				sum += i.getRealDouble();
-			o.setReal( sum * scale );
+			blockSize[ d ] = d < 3 ? BLOCK_SIZE : 1;
+			numBlocks[ d ] = ( outDim[ d ] + blockSize[ d ] - 1 ) / blockSize[ d ];
+			numBlocksTotal *= numBlocks[ d ];
 		}
+		final long numBlocksFinal = numBlocksTotal;
+		if ( numBlocksFinal == 0 )
+			return () -> null;
+
+		final T type = Util.getTypeFromInterval( output );
+		final AtomicLong nextBlock = new AtomicLong();
+		return () -> {
+			final BlockDownsampler< T > downsampler = new BlockDownsampler<>( type, factor );
+			final RandomAccess< T > in = input.randomAccess();
+			final long[] blockPos = new long[ n ];
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			final long[] dim = new long[ n ];
+			final long[] blockMin = new long[ n ];
+			for ( long b = nextBlock.getAndIncrement(); b < numBlocksFinal; b = nextBlock.getAndIncrement() )
+			{
+				if ( Thread.currentThread().isInterrupted() )
+					throw new InterruptedException();
+				IntervalIndexer.indexToPosition( b, numBlocks, blockPos );
+				for ( int d = 0; d < n; ++d )
+				{
+					min[ d ] = outMin[ d ] + blockPos[ d ] * blockSize[ d ];
+					dim[ d ] = Math.min( blockSize[ d ], outMin[ d ] + outDim[ d ] - min[ d ] );
+					max[ d ] = min[ d ] + dim[ d ] - 1;
+					blockMin[ d ] = min[ d ] * factor[ d ];
+				}
+				final Cursor< T > out = Views.flatIterable( Views.interval( output, min, max ) ).cursor();
+				downsampler.downsample( in, blockMin, dim, out );
+			}
+			return null;
+		};
 	}
 }
@@ -78,6 +78,24 @@ class HDF5Access implements IHDF5Access
 	public void closeDataset()
 	{}
 
+	@Override
+	public void createDataset( final String path, final long[] dimensions, final int[] cellDimensions, final HDF5IntStorageFeatures features )
+	{
+		px.createAndOpenDataset( hdf5Writer, path, reorder( dimensions ), reorder( cellDimensions ), features );
+	}
+
+	@Override
+	public void writeBlockWithOffset( final String path, final Object data, final long[] blockDimensions, final long[] offset )
+	{
+		reorder( blockDimensions, reorderedDimensions );
+		reorder( offset, reorderedOffset );
+		px.hdf5writer( hdf5Writer, data, reorderedDimensions, path, reorderedOffset );
+	}
+
+	@Override
+	public void closeDataset( final String path )
+	{}
+
 	@Override
 	public void close()
 	{
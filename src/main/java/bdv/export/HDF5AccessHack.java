@@ -41,6 +41,7 @@ import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5P_DEFAULT;
 import static ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants.H5S_SELECT_SET;
 
 import java.lang.reflect.Field;
+import java.util.HashMap;
 
 import bdv.img.hdf5.Util;
 import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
@@ -61,6 +62,12 @@ class HDF5AccessHack implements IHDF5Access
 
 	private int fileSpaceId;
 
+	/**
+	 * Datasets opened by {@link #createDataset(String, long[], int[], HDF5IntStorageFeatures)}.
+	 * Maps path to { dataSetId, fileSpaceId }.
+	 */
+	private final HashMap< String, int[] > openDatasets = new HashMap<>();
+
 	public HDF5AccessHack(final IHDF5Writer hdf5Writer, final PixelTypeMaintainer<?> px )
 	throws ClassNotFoundException, SecurityException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException
 	{
@@ -112,6 +119,37 @@ class HDF5AccessHack implements IHDF5Access
 		H5Sclose( memorySpaceId );
 	}
 
+	@Override
+	public void createDataset( final String path, final long[] dimensions, final int[] cellDimensions, final HDF5IntStorageFeatures features )
+	{
+		px.createAndOpenDataset( hdf5Writer, path, reorder( dimensions ), reorder( cellDimensions ), features );
+		final int id = H5Dopen( fileId, path, H5P_DEFAULT );
+		openDatasets.put( path, new int[] { id, H5Dget_space( id ) } );
+	}
+
+	@Override
+	public void writeBlockWithOffset( final String path, final Object data, final long[] blockDimensions, final long[] offset )
+	{
+		final int[] ids = openDatasets.get( path );
+		reorder( blockDimensions, reorderedDimensions );
+		reorder( offset, reorderedOffset );
+		final int memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
+		H5Sselect_hyperslab( ids[ 1 ], H5S_SELECT_SET, reorderedOffset, null, reorderedDimensions, null );
+		px.h5Dwrite( ids[ 0 ], memorySpaceId, ids[ 1 ], data );
+		H5Sclose( memorySpaceId );
+	}
+
+	@Override
+	public void closeDataset( final String path )
+	{
+		final int[] ids = openDatasets.remove( path );
+		if ( ids != null )
+		{
+			H5Sclose( ids[ 1 ] );
+			H5Dclose( ids[ 0 ] );
+		}
+	}
+
 	@Override
 	public void close()
 	{
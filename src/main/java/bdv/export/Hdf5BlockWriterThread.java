@@ -167,6 +167,24 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 		put( new WriteBlockWithOffsetTask( data, blockDimensions, offset ) );
 	}
 
+	@Override
+	public void createDataset( final String path, final long[] dimensions, final int[] cellDimensions, final HDF5IntStorageFeatures features )
+	{
+		put( new CreateDatasetTask( path, dimensions, cellDimensions, features ) );
+	}
+
+	@Override
+	public void writeBlockWithOffset( final String path, final Object data, final long[] blockDimensions, final long[] offset )
+	{
+		put( new WriteBlockToDatasetTask( path, data, blockDimensions, offset ) );
+	}
+
+	@Override
+	public void closeDataset( final String path )
+	{
+		put( new CloseDatasetByPathTask( path ) );
+	}
+
 	@Override
 	public void closeDataset()
 	{
@@ -261,4 +279,70 @@ class Hdf5BlockWriterThread extends Thread implements IHDF5Access
 			hdf5Access.closeDataset();
 		}
 	}
+
+	private static class CreateDatasetTask implements Hdf5BlockWriterThread.Hdf5Task
+	{
+		private final String path;
+
+		private final long[] dimensions;
+
+		private final int[] cellDimensions;
+
+		private final HDF5IntStorageFeatures features;
+
+		public CreateDatasetTask( final String path, final long[] dimensions, final int[] cellDimensions, final HDF5IntStorageFeatures features )
+		{
+			this.path = path;
+			this.dimensions = dimensions;
+			this.cellDimensions = cellDimensions;
+			this.features = features;
+		}
+
+		@Override
+		public void run( final IHDF5Access hdf5Access )
+		{
+			hdf5Access.createDataset( path, dimensions, cellDimensions, features );
+		}
+	}
+
+	private static class WriteBlockToDatasetTask implements Hdf5BlockWriterThread.Hdf5Task
+	{
+		private final String path;
+
+		private final Object data;
+
+		private final long[] blockDimensions;
+
+		private final long[] offset;
+
+		public WriteBlockToDatasetTask( final String path, final Object data, final long[] blockDimensions, final long[] offset )
+		{
+			this.path = path;
+			this.data = data;
+			this.blockDimensions = blockDimensions;
+			this.offset = offset;
+		}
+
+		@Override
+		public void run( final IHDF5Access hdf5Access )
+		{
+			hdf5Access.writeBlockWithOffset( path, data, blockDimensions, offset );
+		}
+	}
+
+	private static class CloseDatasetByPathTask implements Hdf5BlockWriterThread.Hdf5Task
+	{
+		private final String path;
+
+		public CloseDatasetByPathTask( final String path )
+		{
+			this.path = path;
+		}
+
+		@Override
+		public void run( final IHDF5Access hdf5Access )
+		{
+			hdf5Access.closeDataset( path );
+		}
+	}
 }
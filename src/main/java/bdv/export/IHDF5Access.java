@@ -55,6 +55,19 @@ interface IHDF5Access
 
 	public void closeDataset();
 
+	/**
+	 * Create a dataset and keep it open, in addition to the dataset opened by
+	 * {@link #createAndOpenDataset(String, long[], int[], HDF5IntStorageFeatures)}
+	 * and other datasets opened by this method. Data is written to it with the
+	 * methods that take the dataset {@code path}. This is used to write several
+	 * resolution levels at the same time.
+	 */
+	public void createDataset( final String path, long[] dimensions, int[] cellDimensions, HDF5IntStorageFeatures features );
+
+	public void writeBlockWithOffset( final String path, final Object data, final long[] blockDimensions, final long[] offset );
+
+	public void closeDataset( final String path );
+
 	public void close();
 
 	// this is for sharing with Hdf5ImageLoader for loopback loader when exporting
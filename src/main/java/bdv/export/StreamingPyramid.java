@@ -0,0 +1,557 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import bdv.export.Hdf5BlockWriterPixelTypes.PixelTypeMaintainer;
+import bdv.export.WriteSequenceToHdf5.AfterEachPlane;
+import bdv.export.WriteSequenceToHdf5.CellCreatorThread;
+import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Writes all resolution levels of a 3D image in a single pass over the
+ * original image.
+ * <p>
+ * The original image is read one plane of full-resolution cells after the
+ * other. Each plane is written, and its z-slices are reduced into an
+ * accumulator slice of the next coarser level. When an accumulator has
+ * received all z-slices for one of its output slices, that slice is appended
+ * to the level's current plane of cells and reduced into the next coarser
+ * level in turn. A plane of cells is written as soon as it is complete.
+ * Values propagate between levels as unrounded {@code double} averages, so
+ * every level equals averaging the original image directly (up to
+ * floating-point rounding).
+ * <p>
+ * Memory use is one plane of full-resolution cells plus, for each coarser
+ * level, one plane of cells and one {@code double} slice. Planes and slices
+ * are stored as one array per cell, so no array is larger than a cell.
+ * Images for which this would take more than half of the maximum heap size
+ * are not streamed (see {@link #canStream}).
+ * <p>
+ * This requires that level 0 is full resolution, that the downsampling
+ * factors of each level are multiples of those of the previous level, and
+ * that every level has at least one pixel per factor in each dimension.
+ *
+ * @param <T>
+ *            pixel type
+ */
+class StreamingPyramid< T extends RealType< T > & NativeType< T > >
+{
+	private static final int n = 3;
+
+	private final PixelTypeMaintainer< T > pxM;
+
+	private final Hdf5BlockWriterThread writerQueue;
+
+	private final CellCreatorThread[] cellCreatorThreads;
+
+	private final Level[] levels;
+
+	/**
+	 * Check whether all levels of {@code img} with the given
+	 * {@code resolutions} and {@code subdivisions} can be written by a
+	 * {@link StreamingPyramid}, and whether the buffers for that fit into half
+	 * of the maximum heap size.
+	 */
+	static boolean canStream( final RandomAccessibleInterval< ? > img, final int[][] resolutions, final int[][] subdivisions, final int bytesPerElement )
+	{
+		if ( img.numDimensions() != n )
+			return false;
+		for ( int d = 0; d < n; ++d )
+			if ( resolutions[ 0 ][ d ] != 1 )
+				return false;
+		for ( int l = 1; l < resolutions.length; ++l )
+			for ( int d = 0; d < n; ++d )
+				if ( resolutions[ l ][ d ] % resolutions[ l - 1 ][ d ] != 0 || img.dimension( d ) < resolutions[ l ][ d ] )
+					return false;
+
+		long bytes = 0;
+		for ( int l = 0; l < resolutions.length; ++l )
+		{
+			final long sliceSize = ( img.dimension( 0 ) / resolutions[ l ][ 0 ] ) * ( img.dimension( 1 ) / resolutions[ l ][ 1 ] );
+			bytes += sliceSize * subdivisions[ l ][ 2 ] * bytesPerElement;
+			if ( l > 0 )
+				bytes += sliceSize * Double.BYTES;
+		}
+		return bytes <= Runtime.getRuntime().maxMemory() / 2;
+	}
+
+	/**
+	 * @param paths
+	 *            dataset path of each level.
+	 * @param resolutions
+	 *            downsampling factors of each level with respect to the
+	 *            original image.
+	 * @param subdivisions
+	 *            cell size of each level.
+	 */
+	StreamingPyramid(
+			final RandomAccessibleInterval< T > img,
+			final String[] paths,
+			final int[][] resolutions,
+			final int[][] subdivisions,
+			final PixelTypeMaintainer< T > pxM,
+			final Hdf5BlockWriterThread writerQueue,
+			final CellCreatorThread[] cellCreatorThreads )
+	{
+		this.pxM = pxM;
+		this.writerQueue = writerQueue;
+		this.cellCreatorThreads = cellCreatorThreads;
+
+		levels = new Level[ resolutions.length ];
+		for ( int l = 0; l < levels.length; ++l )
+		{
+			final long[] dimensions = new long[ n ];
+			final int[] factor = new int[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				dimensions[ d ] = img.dimension( d ) / resolutions[ l ][ d ];
+				factor[ d ] = l == 0 ? 1 : resolutions[ l ][ d ] / resolutions[ l - 1 ][ d ];
+			}
+			levels[ l ] = new Level( l, paths[ l ], dimensions, subdivisions[ l ], factor );
+		}
+	}
+
+	/**
+	 * Write all levels.
+	 *
+	 * @param img
+	 *            the original image.
+	 * @param storage
+	 *            storage features for the datasets.
+	 * @param afterEachPlane
+	 *            called after each plane of full-resolution cells. may be
+	 *            null.
+	 * @param progressWriter
+	 *            progress is reported to this.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the
+	 *             {@link CellCreatorThread}s. The datasets are incomplete
+	 *             then.
+	 */
+	void write(
+			final RandomAccessibleInterval< T > img,
+			final HDF5IntStorageFeatures storage,
+			final AfterEachPlane afterEachPlane,
+			final ProgressWriter progressWriter ) throws InterruptedException
+	{
+		for ( final Level level : levels )
+			writerQueue.createDataset( level.path, level.dimensions.clone(), level.cellDimensions.clone(), storage );
+
+		final RandomAccessibleInterval< T > source = Views.zeroMin( img );
+		final Level level0 = levels[ 0 ];
+		final long numPlanes = ( level0.dimensions[ 2 ] - 1 ) / level0.cellDimensions[ 2 ] + 1;
+		for ( long plane = 0; plane < numPlanes; ++plane )
+		{
+			final long z0 = plane * level0.cellDimensions[ 2 ];
+			final long nz = Math.min( level0.cellDimensions[ 2 ], level0.dimensions[ 2 ] - z0 );
+
+			// read the cells of this plane from the source, write them, and
+			// keep them for reducing into the next level
+			final ArrayImg< T, ? >[] cells = level0.createPlane( nz );
+			final AtomicInteger nextCell = new AtomicInteger();
+			runOnAllThreads( threadNum -> {
+				final RandomAccess< T > in = source.randomAccess();
+				final long[] cellMin = new long[ n ];
+				final long[] cellDim = new long[ n ];
+				for ( int c = nextCell.getAndIncrement(); c < cells.length; c = nextCell.getAndIncrement() )
+				{
+					level0.cellInterval( c, nz, cellMin, cellDim );
+					cellMin[ 2 ] = z0;
+					WriteSequenceToHdf5.copyBlock( cells[ c ].randomAccess(), cellDim, in, cellMin );
+					writeCell( level0, cells[ c ], cellDim, cellMin );
+				}
+			} );
+
+			if ( levels.length > 1 )
+				for ( int z = 0; z < nz; ++z )
+					levels[ 1 ].addSlice( level0.planeRows( cells, z ) );
+
+			if ( afterEachPlane != null )
+				afterEachPlane.afterEachPlane( false );
+			progressWriter.setProgress( ( double ) ( plane + 1 ) / numPlanes );
+		}
+
+		for ( final Level level : levels )
+			writerQueue.closeDataset( level.path );
+	}
+
+	private void writeCell( final Level level, final ArrayImg< T, ? > cell, final long[] cellDim, final long[] cellMin )
+	{
+		final Object data = ( ( ArrayDataAccess< ? > ) cell.update( null ) ).getCurrentStorageArray();
+		writerQueue.writeBlockWithOffset( level.path, data, cellDim.clone(), cellMin.clone() );
+	}
+
+	private interface ThreadTask
+	{
+		public void run( int threadNum );
+	}
+
+	/**
+	 * Run {@code task} on all {@link CellCreatorThread}s and wait until all
+	 * are done. If {@code task} fails on any thread, the exception is
+	 * rethrown.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting. Tasks that are still running
+	 *             are not stopped.
+	 */
+	private void runOnAllThreads( final ThreadTask task ) throws InterruptedException
+	{
+		final int numThreads = cellCreatorThreads.length;
+		final CountDownLatch doneSignal = new CountDownLatch( numThreads );
+		final AtomicReference< RuntimeException > failure = new AtomicReference<>();
+		for ( int threadNum = 0; threadNum < numThreads; ++threadNum )
+		{
+			final int t = threadNum;
+			cellCreatorThreads[ threadNum ].run( () -> {
+				try
+				{
+					task.run( t );
+				}
+				catch ( final RuntimeException e )
+				{
+					failure.compareAndSet( null, e );
+				}
+				finally
+				{
+					doneSignal.countDown();
+				}
+			} );
+		}
+		doneSignal.await();
+		if ( failure.get() != null )
+			throw failure.get();
+	}
+
+	/**
+	 * Provides rows of a slice as {@code double} values.
+	 */
+	private interface SliceRows
+	{
+		/**
+		 * Get the first {@code row.length} values of row {@code y}.
+		 */
+		public void get( long y, double[] row );
+	}
+
+	private class Level
+	{
+		final int index;
+
+		final String path;
+
+		final long[] dimensions;
+
+		final int[] cellDimensions;
+
+		/**
+		 * number of cells in X and Y.
+		 */
+		final int numCellsX;
+
+		final int numCellsY;
+
+		/**
+		 * downsampling factors with respect to the previous level.
+		 */
+		final int[] factor;
+
+		/**
+		 * sums of the input slices received for the current output slice, one
+		 * array per cell, indexed like {@link #planeCells}. (null for level
+		 * 0.)
+		 */
+		final double[][] accumulator;
+
+		/**
+		 * number of input slices received for the current output slice.
+		 */
+		int numAccumulated = 0;
+
+		/**
+		 * number of input slices received in total.
+		 */
+		long numInputSlices = 0;
+
+		/**
+		 * cells of the current plane, the z coordinate of its first slice, and
+		 * how many of its slices are filled.
+		 */
+		ArrayImg< T, ? >[] planeCells;
+
+		long planeZ0 = 0;
+
+		int planeFill = 0;
+
+		Level( final int index, final String path, final long[] dimensions, final int[] cellDimensions, final int[] factor )
+		{
+			this.index = index;
+			this.path = path;
+			this.dimensions = dimensions;
+			this.cellDimensions = cellDimensions;
+			this.factor = factor;
+			numCellsX = ( int ) ( ( dimensions[ 0 ] - 1 ) / cellDimensions[ 0 ] + 1 );
+			numCellsY = ( int ) ( ( dimensions[ 1 ] - 1 ) / cellDimensions[ 1 ] + 1 );
+			if ( index == 0 )
+				accumulator = null;
+			else
+			{
+				accumulator = new double[ numCellsX * numCellsY ][];
+				final long[] cellMin = new long[ n ];
+				final long[] cellDim = new long[ n ];
+				for ( int c = 0; c < accumulator.length; ++c )
+				{
+					cellInterval( c, 1, cellMin, cellDim );
+					accumulator[ c ] = new double[ ( int ) ( cellDim[ 0 ] * cellDim[ 1 ] ) ];
+				}
+			}
+		}
+
+		/**
+		 * Get min (with z = 0) and size of cell {@code c} (with
+		 * {@code c = cx + cy * numCellsX}) in a plane of depth {@code nz}.
+		 */
+		void cellInterval( final int c, final long nz, final long[] cellMin, final long[] cellDim )
+		{
+			cellMin[ 0 ] = ( long ) ( c % numCellsX ) * cellDimensions[ 0 ];
+			cellMin[ 1 ] = ( long ) ( c / numCellsX ) * cellDimensions[ 1 ];
+			cellMin[ 2 ] = 0;
+			cellDim[ 0 ] = Math.min( cellDimensions[ 0 ], dimensions[ 0 ] - cellMin[ 0 ] );
+			cellDim[ 1 ] = Math.min( cellDimensions[ 1 ], dimensions[ 1 ] - cellMin[ 1 ] );
+			cellDim[ 2 ] = nz;
+		}
+
+		/**
+		 * Allocate the cells of a plane of depth {@code nz}.
+		 */
+		ArrayImg< T, ? >[] createPlane( final long nz )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ArrayImg< T, ? >[] cells = new ArrayImg[ numCellsX * numCellsY ];
+			final long[] cellMin = new long[ n ];
+			final long[] cellDim = new long[ n ];
+			for ( int c = 0; c < cells.length; ++c )
+			{
+				cellInterval( c, nz, cellMin, cellDim );
+				cells[ c ] = pxM.createArrayImg( cellDim );
+			}
+			return cells;
+		}
+
+		/**
+		 * Rows of slice {@code z} of a plane of {@code cells} of this level.
+		 */
+		SliceRows planeRows( final ArrayImg< T, ? >[] cells, final int z )
+		{
+			return ( y, row ) -> {
+				final int cy = ( int ) ( y / cellDimensions[ 1 ] );
+				final long[] pos = new long[] { 0, y - ( long ) cy * cellDimensions[ 1 ], z };
+				for ( int cx = 0, x = 0; cx < numCellsX && x < row.length; ++cx )
+				{
+					final ArrayImg< T, ? > cell = cells[ cy * numCellsX + cx ];
+					final RandomAccess< T > in = cell.randomAccess();
+					in.setPosition( pos );
+					for ( int i = 0, w = ( int ) cell.dimension( 0 ); i < w && x < row.length; ++i, ++x )
+					{
+						row[ x ] = in.get().getRealDouble();
+						in.fwd( 0 );
+					}
+				}
+			};
+		}
+
+		/**
+		 * Rows of the current output slice in the {@link #accumulator}.
+		 */
+		SliceRows accumulatorRows()
+		{
+			return ( y, row ) -> {
+				final int cy = ( int ) ( y / cellDimensions[ 1 ] );
+				final int yy = ( int ) ( y - ( long ) cy * cellDimensions[ 1 ] );
+				for ( int cx = 0, x = 0; cx < numCellsX && x < row.length; ++cx )
+				{
+					final double[] tile = accumulator[ cy * numCellsX + cx ];
+					final int w = cellWidth( cx );
+					final int l = Math.min( w, row.length - x );
+					System.arraycopy( tile, yy * w, row, x, l );
+					x += l;
+				}
+			};
+		}
+
+		private int cellWidth( final int cx )
+		{
+			return ( int ) Math.min( cellDimensions[ 0 ], dimensions[ 0 ] - ( long ) cx * cellDimensions[ 0 ] );
+		}
+
+		/**
+		 * Receive an output slice of the previous level.
+		 */
+		void addSlice( final SliceRows source ) throws InterruptedException
+		{
+			if ( !acceptSlice() )
+				return;
+			final int fx = factor[ 0 ];
+			final int fy = factor[ 1 ];
+			final int ox = ( int ) dimensions[ 0 ];
+			final int oy = ( int ) dimensions[ 1 ];
+			final AtomicInteger nextRow = new AtomicInteger();
+			runOnAllThreads( threadNum -> {
+				final double[] in = new double[ ox * fx ];
+				final double[] sums = new double[ ox ];
+				for ( int y = nextRow.getAndIncrement(); y < oy; y = nextRow.getAndIncrement() )
+				{
+					Arrays.fill( sums, 0 );
+					for ( int j = 0; j < fy; ++j )
+					{
+						source.get( ( long ) y * fy + j, in );
+						for ( int x = 0, s = 0; x < ox; ++x )
+						{
+							double sum = 0;
+							for ( int k = 0; k < fx; ++k, ++s )
+								sum += in[ s ];
+							sums[ x ] += sum;
+						}
+					}
+					addToAccumulator( y, sums );
+				}
+			} );
+			sliceAdded();
+		}
+
+		/**
+		 * Add {@code sums} to row {@code y} of the {@link #accumulator}.
+		 */
+		private void addToAccumulator( final int y, final double[] sums )
+		{
+			final int cy = y / cellDimensions[ 1 ];
+			final int yy = y - cy * cellDimensions[ 1 ];
+			for ( int cx = 0, x = 0; cx < numCellsX; ++cx )
+			{
+				final double[] tile = accumulator[ cy * numCellsX + cx ];
+				final int w = cellWidth( cx );
+				for ( int i = yy * w, e = i + w; i < e; ++i, ++x )
+					tile[ i ] += sums[ x ];
+			}
+		}
+
+		/**
+		 * Whether the next input slice contributes to this level. Input slices
+		 * beyond {@code dimensions[2] * factor[2]} are cropped (as when
+		 * downsampling from the original image).
+		 */
+		private boolean acceptSlice()
+		{
+			return numInputSlices++ < dimensions[ 2 ] * factor[ 2 ];
+		}
+
+		/**
+		 * Called after an input slice was added to the accumulator. If the
+		 * current output slice is complete, append it to the plane of cells,
+		 * propagate it to the next level, and reset the accumulator.
+		 */
+		private void sliceAdded() throws InterruptedException
+		{
+			if ( ++numAccumulated < factor[ 2 ] )
+				return;
+
+			if ( planeCells == null )
+			{
+				planeCells = createPlane( Math.min( cellDimensions[ 2 ], dimensions[ 2 ] - planeZ0 ) );
+				planeFill = 0;
+			}
+
+			// average, and copy into slice planeFill of the plane of cells
+			final double scale = 1.0 / ( factor[ 0 ] * factor[ 1 ] * factor[ 2 ] );
+			final AtomicInteger nextCell = new AtomicInteger();
+			runOnAllThreads( threadNum -> {
+				for ( int c = nextCell.getAndIncrement(); c < planeCells.length; c = nextCell.getAndIncrement() )
+				{
+					final double[] tile = accumulator[ c ];
+					final ArrayImg< T, ? > cell = planeCells[ c ];
+					final RandomAccess< T > out = cell.randomAccess();
+					out.setPosition( planeFill, 2 );
+					final long w = cell.dimension( 0 );
+					final long h = cell.dimension( 1 );
+					for ( int y = 0, i = 0; y < h; ++y )
+					{
+						out.setPosition( 0, 0 );
+						out.setPosition( y, 1 );
+						for ( int x = 0; x < w; ++x, ++i )
+						{
+							tile[ i ] *= scale;
+							out.get().setReal( tile[ i ] );
+							out.fwd( 0 );
+						}
+					}
+				}
+			} );
+			if ( ++planeFill == planeCells[ 0 ].dimension( 2 ) )
+				flushPlane();
+
+			if ( index + 1 < levels.length )
+				levels[ index + 1 ].addSlice( accumulatorRows() );
+
+			for ( final double[] tile : accumulator )
+				Arrays.fill( tile, 0 );
+			numAccumulated = 0;
+		}
+
+		/**
+		 * Write the current plane of cells.
+		 */
+		private void flushPlane()
+		{
+			final long nz = planeCells[ 0 ].dimension( 2 );
+			final long[] cellMin = new long[ n ];
+			final long[] cellDim = new long[ n ];
+			for ( int c = 0; c < planeCells.length; ++c )
+			{
+				cellInterval( c, nz, cellMin, cellDim );
+				cellMin[ 2 ] = planeZ0;
+				writeCell( this, planeCells[ c ], cellDim, cellMin );
+			}
+			planeZ0 += nz;
+			planeCells = null;
+		}
+	}
+}
@@ -31,7 +31,6 @@ package bdv.export;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -57,7 +56,6 @@ import mpicbg.spim.data.generic.sequence.BasicViewSetup;
 import mpicbg.spim.data.sequence.TimePoint;
 import mpicbg.spim.data.sequence.TimePoints;
 import mpicbg.spim.data.sequence.ViewId;
-import net.imglib2.Cursor;
 import net.imglib2.Dimensions;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
@@ -144,6 +142,37 @@ public class WriteSequenceToHdf5
 			final AfterEachPlane afterEachPlane,
 			final int numCellCreatorThreads,
 			final ProgressWriter progressWriter )
+	{
+		writeHdf5File( seq, perSetupMipmapInfo, deflate, hdf5File, loopbackHeuristic, false, afterEachPlane, numCellCreatorThreads, progressWriter );
+	}
+
+	/**
+	 * Create a hdf5 file containing image data from all views and all
+	 * timepoints in a chunked, mipmaped representation. This is the same as
+	 * {@link #writeHdf5File(AbstractSequenceDescription, Map, boolean, File, LoopbackHeuristic, AfterEachPlane, int, ProgressWriter)}
+	 * except that all resolution levels of a view can be written in a single
+	 * pass over the original image.
+	 *
+	 * @param streamPyramid
+	 *            whether to write all resolution levels of a view in a single
+	 *            pass over the original image, propagating each slice through
+	 *            the pyramid in memory instead of reading back finer levels
+	 *            from the hdf5. This is done only if the downsampling factors
+	 *            of each level are multiples of those of the previous level,
+	 *            and if the buffers for that take at most half of the maximum
+	 *            heap size. Otherwise, levels are written one after the other,
+	 *            using {@code loopbackHeuristic}.
+	 */
+	public static void writeHdf5File(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+			final boolean deflate,
+			final File hdf5File,
+			final LoopbackHeuristic loopbackHeuristic,
+			final boolean streamPyramid,
+			final AfterEachPlane afterEachPlane,
+			final int numCellCreatorThreads,
+			final ProgressWriter progressWriter )
 	{
 		final HashMap< Integer, Integer > timepointIdSequenceToPartition = new HashMap<>();
 		for ( final TimePoint timepoint : seq.getTimePoints().getTimePointsOrdered() )
@@ -154,7 +183,7 @@ public class WriteSequenceToHdf5
 			setupIdSequenceToPartition.put( setup.getId(), setup.getId() );
 
 		final Partition partition = new Partition( hdf5File.getPath(), timepointIdSequenceToPartition, setupIdSequenceToPartition );
-		writeHdf5PartitionFile( seq, perSetupMipmapInfo, deflate, partition, loopbackHeuristic, afterEachPlane, numCellCreatorThreads, progressWriter );
+		writeHdf5PartitionFile( seq, perSetupMipmapInfo, deflate, partition, loopbackHeuristic, streamPyramid, afterEachPlane, numCellCreatorThreads, progressWriter );
 	}
 
 	/**
@@ -365,6 +394,37 @@ public class WriteSequenceToHdf5
 			final LoopbackHeuristic loopbackHeuristic,
 			final AfterEachPlane afterEachPlane,
 			final int numCellCreatorThreads,
+			final ProgressWriter progressWriter )
+	{
+		writeHdf5PartitionFile( seq, perSetupMipmapInfo, deflate, partition, loopbackHeuristic, false, afterEachPlane, numCellCreatorThreads, progressWriter );
+	}
+
+	/**
+	 * Create a single hdf5 partition file. This is the same as
+	 * {@link #writeHdf5PartitionFile(AbstractSequenceDescription, Map, boolean, Partition, LoopbackHeuristic, AfterEachPlane, int, ProgressWriter)}
+	 * except that all resolution levels of a view can be written in a single
+	 * pass over the original image.
+	 *
+	 * @param streamPyramid
+	 *            whether to write all resolution levels of a view in a single
+	 *            pass over the original image, propagating each slice through
+	 *            the pyramid in memory instead of reading back finer levels
+	 *            from the hdf5. This is done only if the downsampling factors
+	 *            of each level are multiples of those of the previous level,
+	 *            and if the buffers for that take at most half of the maximum
+	 *            heap size. Otherwise, levels are written one after the other,
+	 *            using {@code loopbackHeuristic}.
+	 */
+	public static <T extends RealType< T > & NativeType<T> >
+	void writeHdf5PartitionFile(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+			final boolean deflate,
+			final Partition partition,
+			final LoopbackHeuristic loopbackHeuristic,
+			final boolean streamPyramid,
+			final AfterEachPlane afterEachPlane,
+			final int numCellCreatorThreads,
 			ProgressWriter progressWriter )
 	{
 		final int blockWriterQueueLength = 100;
@@ -461,7 +521,7 @@ public class WriteSequenceToHdf5
 
 				writeViewToHdf5PartitionFile(
 						img, timepointIdPartition, setupIdPartition, mipmapInfo, false,
-						deflate, writerQueue, cellCreatorThreads, loopbackHeuristic, afterEachPlane, subProgressWriter );
+						deflate, writerQueue, cellCreatorThreads, loopbackHeuristic, streamPyramid, afterEachPlane, subProgressWriter );
 			}
 		}
 
@@ -527,6 +587,40 @@ public class WriteSequenceToHdf5
 			final AfterEachPlane afterEachPlane,
 			final int numCellCreatorThreads,
 			final ProgressWriter progressWriter )
+	{
+		writeViewToHdf5PartitionFile( img, partition, timepointIdPartition, setupIdPartition, mipmapInfo, writeMipmapInfo, deflate, loopbackHeuristic, false, afterEachPlane, numCellCreatorThreads, progressWriter );
+	}
+
+	/**
+	 * Write a single view to a hdf5 partition file. This is the same as
+	 * {@link #writeViewToHdf5PartitionFile(RandomAccessibleInterval, Partition, int, int, ExportMipmapInfo, boolean, boolean, LoopbackHeuristic, AfterEachPlane, int, ProgressWriter)}
+	 * except that all resolution levels can be written in a single pass over
+	 * the original image.
+	 *
+	 * @param streamPyramid
+	 *            whether to write all resolution levels of a view in a single
+	 *            pass over the original image, propagating each slice through
+	 *            the pyramid in memory instead of reading back finer levels
+	 *            from the hdf5. This is done only if the downsampling factors
+	 *            of each level are multiples of those of the previous level,
+	 *            and if the buffers for that take at most half of the maximum
+	 *            heap size. Otherwise, levels are written one after the other,
+	 *            using {@code loopbackHeuristic}.
+	 */
+	public static < T extends RealType< T > & NativeType<T> >
+	void writeViewToHdf5PartitionFile(
+			final RandomAccessibleInterval< T > img,
+			final Partition partition,
+			final int timepointIdPartition,
+			final int setupIdPartition,
+			final ExportMipmapInfo mipmapInfo,
+			final boolean writeMipmapInfo,
+			final boolean deflate,
+			final LoopbackHeuristic loopbackHeuristic,
+			final boolean streamPyramid,
+			final AfterEachPlane afterEachPlane,
+			final int numCellCreatorThreads,
+			final ProgressWriter progressWriter )
 	{
 		final int blockWriterQueueLength = 100;
 
@@ -541,7 +635,7 @@ public class WriteSequenceToHdf5
 		final CellCreatorThread[] cellCreatorThreads = createAndStartCellCreatorThreads( numCellCreatorThreads );
 
 		// write the image
-		writeViewToHdf5PartitionFile( img, timepointIdPartition, setupIdPartition, mipmapInfo, writeMipmapInfo, deflate, writerQueue, cellCreatorThreads, loopbackHeuristic, afterEachPlane, progressWriter );
+		writeViewToHdf5PartitionFile( img, timepointIdPartition, setupIdPartition, mipmapInfo, writeMipmapInfo, deflate, writerQueue, cellCreatorThreads, loopbackHeuristic, streamPyramid, afterEachPlane, progressWriter );
 
 		stopCellCreatorThreads( cellCreatorThreads );
 		writerQueue.close();
@@ -605,6 +699,39 @@ public class WriteSequenceToHdf5
 	 *            completion ratio and status output will be directed here. may
 	 *            be null.
 	 */
+	public static < T extends RealType< T > & NativeType<T> >
+	void writeViewToHdf5PartitionFile(
+			final RandomAccessibleInterval< T > img,
+			final int timepointIdPartition,
+			final int setupIdPartition,
+			final ExportMipmapInfo mipmapInfo,
+			final boolean writeMipmapInfo,
+			final boolean deflate,
+			final Hdf5BlockWriterThread writerQueue,
+			final CellCreatorThread[] cellCreatorThreads,
+			final LoopbackHeuristic loopbackHeuristic,
+			final AfterEachPlane afterEachPlane,
+			final ProgressWriter progressWriter )
+	{
+		writeViewToHdf5PartitionFile( img, timepointIdPartition, setupIdPartition, mipmapInfo, writeMipmapInfo, deflate, writerQueue, cellCreatorThreads, loopbackHeuristic, false, afterEachPlane, progressWriter );
+	}
+
+	/**
+	 * Write a single view to a hdf5 partition file. This is the same as
+	 * {@link #writeViewToHdf5PartitionFile(RandomAccessibleInterval, int, int, ExportMipmapInfo, boolean, boolean, Hdf5BlockWriterThread, CellCreatorThread[], LoopbackHeuristic, AfterEachPlane, ProgressWriter)}
+	 * except that all resolution levels can be written in a single pass over
+	 * the original image.
+	 *
+	 * @param streamPyramid
+	 *            whether to write all resolution levels of a view in a single
+	 *            pass over the original image, propagating each slice through
+	 *            the pyramid in memory instead of reading back finer levels
+	 *            from the hdf5. This is done only if the downsampling factors
+	 *            of each level are multiples of those of the previous level,
+	 *            and if the buffers for that take at most half of the maximum
+	 *            heap size. Otherwise, levels are written one after the other,
+	 *            using {@code loopbackHeuristic}.
+	 */
 	@SuppressWarnings("unchecked")
 	public static < T extends RealType< T > & NativeType<T> >
 	void writeViewToHdf5PartitionFile(
@@ -617,6 +744,7 @@ public class WriteSequenceToHdf5
 			final Hdf5BlockWriterThread writerQueue,
 			final CellCreatorThread[] cellCreatorThreads,
 			final LoopbackHeuristic loopbackHeuristic,
+			final boolean streamPyramid,
 			final AfterEachPlane afterEachPlane,
 			ProgressWriter progressWriter )
 	{
@@ -638,6 +766,30 @@ public class WriteSequenceToHdf5
 		if ( writeMipmapInfo )
 			writerQueue.writeMipmapDescription( setupIdPartition, mipmapInfo );
 
+		// write all levels in a single pass over the original image, if
+		// requested and possible.
+		if ( streamPyramid
+				&& StreamingPyramid.canStream( img, mipmapInfo.getExportResolutions(), mipmapInfo.getSubdivisions(), pxM.getBytesPerElement() ) )
+		{
+			progressWriter.out().println( "writing all levels" );
+			final ViewId viewIdPartition = new ViewId( timepointIdPartition, setupIdPartition );
+			final int numLevels = mipmapInfo.getNumLevels();
+			final String[] paths = new String[ numLevels ];
+			for ( int level = 0; level < numLevels; ++level )
+				paths[ level ] = Util.getCellsPath( viewIdPartition, level );
+			try
+			{
+				new StreamingPyramid<>( img, paths, mipmapInfo.getExportResolutions(), mipmapInfo.getSubdivisions(), pxM, writerQueue, cellCreatorThreads )
+						.write( img, storage, afterEachPlane, progressWriter );
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException( "interrupted while writing timepoint " + timepointIdPartition + ", setup " + setupIdPartition, e );
+			}
+			return;
+		}
+
 		// create loopback image-loader to read already written chunks from the
 		// h5 for generating low-resolution versions.
 		final LoopBackImageLoader loopback = ( loopbackHeuristic == null ) ? null : LoopBackImageLoader.create( writerQueue.getIHDF5Writer(), timepointIdPartition, setupIdPartition, img );
@@ -713,16 +865,9 @@ public class WriteSequenceToHdf5
 
 			sourceImg.dimensions( dimensions );
 			final boolean fullResolution = ( factor[ 0 ] == 1 && factor[ 1 ] == 1 && factor[ 2 ] == 1 );
-			long size = 1;
 			if ( !fullResolution )
-			{
 				for ( int d = 0; d < n; ++d )
-				{
 					dimensions[ d ] = Math.max( dimensions[ d ] / factor[ d ], 1 );
-					size *= factor[ d ];
-				}
-			}
-			final double scale = 1.0 / size;
 
 			final long[] minRequiredInput = new long[ n ];
 			final long[] maxRequiredInput = new long[ n ];
@@ -763,7 +908,7 @@ public class WriteSequenceToHdf5
 						@Override
 						public void run()
 						{
-							final double[] accumulator = fullResolution ? null : new double[ cellDimensions[ 0 ] * cellDimensions[ 1 ] * cellDimensions[ 2 ] ];
+							final BlockDownsampler< T > downsampler = fullResolution ? null : new BlockDownsampler<>( extendedImg.randomAccess().get().createVariable(), factor );
 							final long[] currentCellMin = new long[ n ];
 							final long[] currentCellMax = new long[ n ];
 							final long[] currentCellDim = new long[ n ];
@@ -792,7 +937,7 @@ public class WriteSequenceToHdf5
 								if ( fullResolution )
 									copyBlock( cell.randomAccess(), currentCellDim, in, blockMin );
 								else
-									downsampleBlock( cell.cursor(), accumulator, currentCellDim, in, blockMin, factor, scale );
+									downsampler.downsample( in, blockMin, currentCellDim, cell.cursor() );
 
 								//here comes the actual saving into HDF5
 								writerQueue.writeBlockWithOffset( ( ( ArrayDataAccess<?> ) cell.update( null ) ).getCurrentStorageArray(), currentCellDim.clone(), currentCellMin.clone() );
@@ -923,7 +1068,7 @@ public class WriteSequenceToHdf5
 		}
 	}
 
-	private static < T extends RealType< T > > void copyBlock( final RandomAccess< T > out, final long[] outDim, final RandomAccess< T > in, final long[] blockMin )
+	static < T extends RealType< T > > void copyBlock( final RandomAccess< T > out, final long[] outDim, final RandomAccess< T > in, final long[] blockMin )
 	{
 		in.setPosition( blockMin );
 		for ( out.setPosition( 0, 2 ); out.getLongPosition( 2 ) < outDim[ 2 ]; out.fwd( 2 ) )
@@ -941,53 +1086,4 @@ public class WriteSequenceToHdf5
 			in.fwd( 2 );
 		}
 	}
-
-	private static < T extends RealType< T > > void downsampleBlock( final Cursor< T > out, final double[] accumulator, final long[] outDim, final RandomAccess< T > randomAccess, final long[] blockMin, final int[] blockSize, final double scale )
-	{
-		final int numBlockPixels = ( int ) ( outDim[ 0 ] * outDim[ 1 ] * outDim[ 2 ] );
-		Arrays.fill( accumulator, 0, numBlockPixels, 0 );
-
-		randomAccess.setPosition( blockMin );
-
-		final int ox = ( int ) outDim[ 0 ];
-		final int oy = ( int ) outDim[ 1 ];
-		final int oz = ( int ) outDim[ 2 ];
-
-		final int sx = ox * blockSize[ 0 ];
-		final int sy = oy * blockSize[ 1 ];
-		final int sz = oz * blockSize[ 2 ];
-
-		int i = 0;
-		for ( int z = 0, bz = 0; z < sz; ++z )
-		{
-			for ( int y = 0, by = 0; y < sy; ++y )
-			{
-				for ( int x = 0, bx = 0; x < sx; ++x )
-				{
-					accumulator[ i ] += randomAccess.get().getRealDouble();
-					randomAccess.fwd( 0 );
-					if ( ++bx == blockSize[ 0 ] )
-					{
-						bx = 0;
-						++i;
-					}
-				}
-				randomAccess.move( -sx, 0 );
-				randomAccess.fwd( 1 );
-				if ( ++by == blockSize[ 1 ] )
-					by = 0;
-				else
-					i -= ox;
-			}
-			randomAccess.move( -sy, 1 );
-			randomAccess.fwd( 2 );
-			if ( ++bz == blockSize[ 2 ] )
-				bz = 0;
-			else
-				i -= ox * oy;
-		}
-
-		for ( int j = 0; j < numBlockPixels; ++j )
-			out.next().setReal( accumulator[ j ] * scale );
-	}
 }
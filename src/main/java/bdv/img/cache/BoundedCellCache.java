@@ -0,0 +1,362 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import bdv.img.cache.VolatileGlobalCellCache.Key;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.util.Intervals;
+
+/**
+ * A {@link LoaderCache} for the {@link VolatileGlobalCellCache} that holds
+ * strong references to at most {@link #getMaxBytes()} bytes of cell data.
+ * Unlike {@link net.imglib2.cache.ref.SoftRefLoaderCache}, eviction does not
+ * depend on garbage collector pressure.
+ * <p>
+ * The size of a cell is the number of its elements times the bytes per element
+ * of the {@link CacheArrayLoader} that loaded it (see
+ * {@link #get(Key, CacheLoader, int)}).
+ * <p>
+ * When the cache is full, the least recently used cell is evicted, with a bias
+ * towards keeping coarse mipmap levels: Every mipmap level has its own LRU
+ * list. A cell at level {@code l} competes for eviction as if it had been
+ * accessed {@code l * n} accesses later than it actually was, where {@code n}
+ * is the number of cells currently in the cache. Coarse cells cover a much
+ * larger part of the image than full-resolution cells and are needed for
+ * almost every frame, so they should survive a few "generations" of
+ * full-resolution cells.
+ * <p>
+ * Optionally, evicted cells are moved to an {@link OffHeapCellStore} second
+ * tier, from which they are restored instead of being loaded again.
+ */
+public class BoundedCellCache implements LoaderCache< Key, Cell< ? > >
+{
+	final class Entry
+	{
+		final Key key;
+
+		volatile Cell< ? > value;
+
+		long bytes;
+
+		long lastAccess;
+
+		boolean inLru;
+
+		Entry( final Key key )
+		{
+			this.key = key;
+		}
+	}
+
+	private final ConcurrentHashMap< Key, Entry > map = new ConcurrentHashMap<>();
+
+	/**
+	 * LRU lists of loaded entries, one per mipmap level. Guarded by
+	 * {@code this}.
+	 */
+	private final ArrayList< LinkedHashMap< Key, Entry > > lru = new ArrayList<>();
+
+	private long maxBytes;
+
+	private long currentBytes;
+
+	private int numEntries;
+
+	private long accessCounter;
+
+	private volatile OffHeapCellStore offHeapStore;
+
+	/**
+	 * Create a cache that holds at most {@code maxBytes} bytes of cell data.
+	 *
+	 * @param maxBytes
+	 *            memory budget in bytes.
+	 */
+	public BoundedCellCache( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Create a cache that holds at most {@code maxBytes} bytes of cell data,
+	 * and moves evicted cells to {@code offHeapStore}.
+	 *
+	 * @param maxBytes
+	 *            memory budget in bytes.
+	 * @param offHeapStore
+	 *            second tier for evicted cells, may be {@code null}.
+	 */
+	public BoundedCellCache( final long maxBytes, final OffHeapCellStore offHeapStore )
+	{
+		this.maxBytes = maxBytes;
+		this.offHeapStore = offHeapStore;
+	}
+
+	/**
+	 * Get the second tier to which evicted cells are moved.
+	 *
+	 * @return the second tier, or {@code null} if evicted cells are dropped.
+	 */
+	public OffHeapCellStore getOffHeapStore()
+	{
+		return offHeapStore;
+	}
+
+	/**
+	 * Set the second tier to which evicted cells are moved.
+	 *
+	 * @param offHeapStore
+	 *            the second tier, or {@code null} to drop evicted cells.
+	 */
+	public void setOffHeapStore( final OffHeapCellStore offHeapStore )
+	{
+		this.offHeapStore = offHeapStore;
+	}
+
+	/**
+	 * Get the memory budget of this cache.
+	 *
+	 * @return memory budget in bytes.
+	 */
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Set the memory budget of this cache. If the cache currently holds more
+	 * than {@code maxBytes}, cells are evicted immediately.
+	 *
+	 * @param maxBytes
+	 *            memory budget in bytes.
+	 */
+	public void setMaxBytes( final long maxBytes )
+	{
+		final ArrayList< Entry > evicted = new ArrayList<>();
+		synchronized ( this )
+		{
+			this.maxBytes = maxBytes;
+			evict( evicted );
+		}
+		spill( evicted );
+	}
+
+	/**
+	 * Get the number of bytes of cell data currently held by this cache.
+	 *
+	 * @return number of bytes currently held.
+	 */
+	public synchronized long getCurrentBytes()
+	{
+		return currentBytes;
+	}
+
+	@Override
+	public Cell< ? > getIfPresent( final Key key )
+	{
+		final Entry entry = map.get( key );
+		if ( entry == null )
+			return null;
+		final Cell< ? > value = entry.value;
+		if ( value != null )
+			touch( entry );
+		return value;
+	}
+
+	/**
+	 * Get the cell for {@code key}, loading it with {@code loader} if it is not
+	 * present. The size of the cell is estimated as one byte per element. Use
+	 * {@link #get(Key, CacheLoader, int)} if the element size is known.
+	 */
+	@Override
+	public Cell< ? > get( final Key key, final CacheLoader< ? super Key, ? extends Cell< ? > > loader ) throws ExecutionException
+	{
+		return get( key, loader, 1 );
+	}
+
+	/**
+	 * Get the cell for {@code key}, loading it with {@code loader} if it is not
+	 * present.
+	 *
+	 * @param key
+	 *            the key of the cell.
+	 * @param loader
+	 *            used to load the cell if it is not present.
+	 * @param bytesPerElement
+	 *            how many bytes one element of the cell occupies (see
+	 *            {@link CacheArrayLoader#getBytesPerElement()}).
+	 * @return the cell.
+	 * @throws ExecutionException
+	 *             if the loader throws an exception.
+	 */
+	public Cell< ? > get( final Key key, final CacheLoader< ? super Key, ? extends Cell< ? > > loader, final int bytesPerElement ) throws ExecutionException
+	{
+		final Entry entry = map.computeIfAbsent( key, Entry::new );
+		Cell< ? > value = entry.value;
+		if ( value == null )
+		{
+			synchronized ( entry )
+			{
+				value = entry.value;
+				if ( value == null )
+				{
+					final OffHeapCellStore store = offHeapStore;
+					if ( store != null )
+						value = store.remove( key );
+					if ( value == null )
+					{
+						try
+						{
+							value = loader.get( key );
+						}
+						catch ( final InterruptedException e )
+						{
+							map.remove( key, entry );
+							Thread.currentThread().interrupt();
+							throw new ExecutionException( e );
+						}
+						catch ( final Exception e )
+						{
+							map.remove( key, entry );
+							throw new ExecutionException( e );
+						}
+					}
+					entry.value = value;
+					spill( insert( entry, Intervals.numElements( value ) * bytesPerElement ) );
+					return value;
+				}
+			}
+		}
+		touch( entry );
+		return value;
+	}
+
+	@Override
+	public void invalidateAll()
+	{
+		synchronized ( this )
+		{
+			map.clear();
+			lru.clear();
+			currentBytes = 0;
+			numEntries = 0;
+		}
+		final OffHeapCellStore store = offHeapStore;
+		if ( store != null )
+			store.clear();
+	}
+
+	/**
+	 * Insert a loaded entry into the LRU lists. If the entry was removed from
+	 * the map by {@link #invalidateAll()} while it was loading, it is not
+	 * inserted.
+	 *
+	 * @return entries that were evicted to make room.
+	 */
+	private synchronized ArrayList< Entry > insert( final Entry entry, final long bytes )
+	{
+		if ( map.get( entry.key ) != entry )
+			return new ArrayList<>();
+		final int level = entry.key.getLevel();
+		while ( lru.size() <= level )
+			lru.add( new LinkedHashMap<>( 16, 0.75f, true ) );
+		entry.bytes = bytes;
+		entry.lastAccess = ++accessCounter;
+		entry.inLru = true;
+		lru.get( level ).put( entry.key, entry );
+		currentBytes += bytes;
+		++numEntries;
+		final ArrayList< Entry > evicted = new ArrayList<>();
+		evict( evicted );
+		return evicted;
+	}
+
+	private synchronized void touch( final Entry entry )
+	{
+		if ( entry.inLru )
+		{
+			entry.lastAccess = ++accessCounter;
+			lru.get( entry.key.getLevel() ).get( entry.key );
+		}
+	}
+
+	/**
+	 * Evict cells until the cache fits into {@link #maxBytes}. The last
+	 * remaining cell is never evicted, even if it alone exceeds the budget.
+	 */
+	private synchronized void evict( final ArrayList< Entry > evicted )
+	{
+		while ( currentBytes > maxBytes && numEntries > 1 )
+		{
+			Entry victim = null;
+			long victimScore = Long.MAX_VALUE;
+			for ( int level = 0; level < lru.size(); ++level )
+			{
+				final Iterator< Entry > it = lru.get( level ).values().iterator();
+				if ( it.hasNext() )
+				{
+					final Entry eldest = it.next();
+					final long score = eldest.lastAccess + ( long ) level * numEntries;
+					if ( score < victimScore )
+					{
+						victim = eldest;
+						victimScore = score;
+					}
+				}
+			}
+			lru.get( victim.key.getLevel() ).remove( victim.key );
+			map.remove( victim.key, victim );
+			victim.inLru = false;
+			currentBytes -= victim.bytes;
+			--numEntries;
+			evicted.add( victim );
+		}
+	}
+
+	/**
+	 * Move evicted entries to the {@link #offHeapStore}, if there is one. This
+	 * is done without holding the lock, because it copies the cell data.
+	 */
+	private void spill( final ArrayList< Entry > evicted )
+	{
+		final OffHeapCellStore store = offHeapStore;
+		if ( store != null )
+			for ( final Entry entry : evicted )
+				store.put( entry.key, entry.value );
+	}
+}
@@ -0,0 +1,366 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import bdv.cache.CacheControl;
+import net.imglib2.cache.queue.BlockingFetchQueues;
+
+/**
+ * {@link BlockingFetchQueues} that keep the requests of each client apart.
+ * Several viewers can then share one cache and fetch queue without
+ * disturbing each other.
+ * <p>
+ * A client is the {@link ThreadGroup} of the thread that enqueues a request.
+ * Every viewer renders and prefetches in its own thread group, so its
+ * requests are kept apart from those of other viewers. The same thread group
+ * is used for the IO budget.
+ * <p>
+ * {@link #clearToPrefetch()} moves only the pending requests of the calling
+ * client to its prefetch queue. So a new frame in one viewer
+ * ({@link CacheControl#prepareNextFrame()}) does not demote the requests for
+ * the frames of other viewers. {@link #take()} serves the highest priority
+ * over all clients. Within the same priority, clients are served in
+ * round-robin order.
+ * <p>
+ * Threads that process elements of the queue can defer work until they have
+ * finished their current element (see {@link #runAfterCurrentElement(Runnable)}).
+ */
+public class ClientFetchQueues< E > extends BlockingFetchQueues< E >
+{
+	private class Client
+	{
+		final ThreadGroup owner;
+
+		final ArrayDeque< E >[] queues;
+
+		final ArrayDeque< E > prefetch = new ArrayDeque<>();
+
+		/**
+		 * Number of elements in {@link #queues} and {@link #prefetch}.
+		 */
+		int count;
+
+		@SuppressWarnings( "unchecked" )
+		Client( final ThreadGroup owner )
+		{
+			this.owner = owner;
+			queues = new ArrayDeque[ numPriorities ];
+			for ( int i = 0; i < numPriorities; ++i )
+				queues[ i ] = new ArrayDeque<>();
+		}
+	}
+
+	private static final int DEFAULT_PREFETCH_CAPACITY = 16384;
+
+	private final int numPriorities;
+
+	private final int prefetchCapacity;
+
+	/**
+	 * Clients that have enqueued elements. Clients are removed when their last
+	 * element is taken. Guarded by {@link #lock}.
+	 */
+	private final ArrayList< Client > clients = new ArrayList<>();
+
+	/**
+	 * Index in {@link #clients} of the client that is served first by the
+	 * next {@link #take()}.
+	 */
+	private int nextClient = 0;
+
+	/**
+	 * Number of elements over all clients.
+	 */
+	private int count = 0;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	/**
+	 * Whether the current thread has taken elements from this queue.
+	 */
+	private final ThreadLocal< Boolean > isTaker = ThreadLocal.withInitial( () -> false );
+
+	/**
+	 * Tasks to run when the current thread is done with its current element.
+	 */
+	private final ThreadLocal< ArrayList< Runnable > > afterCurrentElement = ThreadLocal.withInitial( ArrayList::new );
+
+	/**
+	 * @param numPriorities
+	 *            number of priority levels. Priorities are
+	 *            {@code 0 ... numPriorities-1}, where 0 is the highest
+	 *            priority.
+	 */
+	public ClientFetchQueues( final int numPriorities )
+	{
+		this( numPriorities, DEFAULT_PREFETCH_CAPACITY );
+	}
+
+	/**
+	 * @param numPriorities
+	 *            number of priority levels. Priorities are
+	 *            {@code 0 ... numPriorities-1}, where 0 is the highest
+	 *            priority.
+	 * @param prefetchCapacity
+	 *            maximum number of elements in the prefetch queue of each
+	 *            client.
+	 */
+	public ClientFetchQueues( final int numPriorities, final int prefetchCapacity )
+	{
+		super( numPriorities );
+		this.numPriorities = numPriorities;
+		this.prefetchCapacity = prefetchCapacity;
+	}
+
+	/**
+	 * Add an element of the calling client with the specified priority.
+	 *
+	 * @param element
+	 *            the element to add
+	 * @param priority
+	 *            the priority of the element, 0 is the highest priority.
+	 * @param enqueuToFront
+	 *            whether to add the element to the front or to the back of the
+	 *            queue with the specified priority.
+	 */
+	@Override
+	public void put( final E element, final int priority, final boolean enqueuToFront )
+	{
+		lock.lock();
+		try
+		{
+			final Client client = getClient( Thread.currentThread().getThreadGroup(), true );
+			if ( enqueuToFront )
+				client.queues[ priority ].addFirst( element );
+			else
+				client.queues[ priority ].addLast( element );
+			++client.count;
+			++count;
+			notEmpty.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove and return the element with the highest priority over all
+	 * clients, waiting if necessary until an element becomes available.
+	 * Clients are served in round-robin order within the same priority.
+	 * Elements of the prefetch queues are returned only if no client has
+	 * pending elements.
+	 *
+	 * @return the element with the highest priority
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	@Override
+	public E take() throws InterruptedException
+	{
+		isTaker.set( true );
+		final ArrayList< Runnable > tasks = afterCurrentElement.get();
+		if ( !tasks.isEmpty() )
+		{
+			final Runnable[] run = tasks.toArray( new Runnable[ tasks.size() ] );
+			tasks.clear();
+			for ( final Runnable task : run )
+				task.run();
+		}
+
+		lock.lockInterruptibly();
+		try
+		{
+			while ( count == 0 )
+				notEmpty.await();
+
+			final int n = clients.size();
+			for ( int priority = 0; priority < numPriorities; ++priority )
+				for ( int i = 0; i < n; ++i )
+				{
+					final int c = ( nextClient + i ) % n;
+					final ArrayDeque< E > queue = clients.get( c ).queues[ priority ];
+					if ( !queue.isEmpty() )
+						return takeFrom( c, queue );
+				}
+			for ( int i = 0; i < n; ++i )
+			{
+				final int c = ( nextClient + i ) % n;
+				final ArrayDeque< E > queue = clients.get( c ).prefetch;
+				if ( !queue.isEmpty() )
+					return takeFrom( c, queue );
+			}
+			throw new IllegalStateException();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Run {@code task} when the calling thread has finished processing the
+	 * element it took last, that is, when it comes back to {@link #take()}
+	 * the next element. If the calling thread doesn't take elements from this
+	 * queue, {@code task} is run immediately.
+	 * <p>
+	 * This is used to do something after an element has completely been
+	 * processed, while only the processing of the element knows whether
+	 * there is something to do.
+	 */
+	public void runAfterCurrentElement( final Runnable task )
+	{
+		if ( isTaker.get() )
+			afterCurrentElement.get().add( task );
+		else
+			task.run();
+	}
+
+	/**
+	 * Atomically move all elements of the calling client to its prefetch
+	 * queue, highest priority first. If the prefetch queue exceeds its
+	 * capacity, the oldest elements are dropped. Elements of other clients
+	 * are not affected.
+	 */
+	@Override
+	public void clearToPrefetch()
+	{
+		lock.lock();
+		try
+		{
+			final Client client = getClient( Thread.currentThread().getThreadGroup(), false );
+			if ( client != null )
+			{
+				for ( int priority = numPriorities - 1; priority >= 0; --priority )
+				{
+					final ArrayDeque< E > queue = client.queues[ priority ];
+					final Iterator< E > it = queue.descendingIterator();
+					while ( it.hasNext() )
+						client.prefetch.addFirst( it.next() );
+					queue.clear();
+				}
+				while ( client.prefetch.size() > prefetchCapacity )
+				{
+					client.prefetch.removeLast();
+					--client.count;
+					--count;
+				}
+				if ( client.count == 0 )
+					removeClient( clients.indexOf( client ) );
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		// advance the frame counter, such that requests are enqueued again
+		super.clearToPrefetch();
+	}
+
+	/**
+	 * Atomically remove all elements of all clients.
+	 */
+	@Override
+	public void clear()
+	{
+		lock.lock();
+		try
+		{
+			clients.clear();
+			nextClient = 0;
+			count = 0;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		super.clear();
+	}
+
+	/**
+	 * Get the client for {@code owner}, creating it if {@code create} is
+	 * {@code true}.
+	 */
+	private Client getClient( final ThreadGroup owner, final boolean create )
+	{
+		for ( final Client client : clients )
+			if ( client.owner == owner )
+				return client;
+		if ( !create )
+			return null;
+		final Client client = new Client( owner );
+		clients.add( client );
+		return client;
+	}
+
+	/**
+	 * Take the first element of {@code queue} of client {@code c}, and serve
+	 * the next client first in the next {@link #take()}.
+	 */
+	private E takeFrom( final int c, final ArrayDeque< E > queue )
+	{
+		final E element = queue.pollFirst();
+		final Client client = clients.get( c );
+		--client.count;
+		--count;
+		if ( client.count == 0 )
+		{
+			clients.remove( c );
+			nextClient = clients.isEmpty() ? 0 : c % clients.size();
+		}
+		else
+			nextClient = ( c + 1 ) % clients.size();
+		return element;
+	}
+
+	/**
+	 * Remove client {@code c}, keeping the round-robin position.
+	 */
+	private void removeClient( final int c )
+	{
+		clients.remove( c );
+		if ( clients.isEmpty() )
+			nextClient = 0;
+		else
+		{
+			if ( nextClient > c )
+				--nextClient;
+			nextClient %= clients.size();
+		}
+	}
+}
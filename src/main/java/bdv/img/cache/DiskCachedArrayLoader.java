@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.nio.ByteBuffer;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
+
+/**
+ * A {@link CacheArrayLoader} that keeps loaded cells in a {@link DiskCellCache}
+ * and loads only cells that are not on disk yet from the wrapped loader. This
+ * is intended for remote back-ends, where fetching a cell again in a later
+ * session is much slower than reading it from local disk.
+ * <p>
+ * If the wrapped loader is a {@link FailureReportingArrayLoader}, cells that
+ * could not be fetched completely are not written to disk. Remote loaders fill
+ * in placeholder data when fetching fails, and this should not become
+ * persistent. Cells of other loaders are always written.
+ *
+ * @param <A>
+ *            type of access to cell data.
+ */
+public class DiskCachedArrayLoader< A extends VolatileArrayDataAccess< A > > implements CacheArrayLoader< A >
+{
+	private final CacheArrayLoader< A > loader;
+
+	private final A creator;
+
+	private final DiskCellCache diskCache;
+
+	private final String dataset;
+
+	/**
+	 * @param loader
+	 *            the loader to wrap.
+	 * @param creator
+	 *            an instance of {@code A}, used to create arrays for cells read
+	 *            from disk, e.g., {@code new VolatileShortArray( 0, false )}.
+	 * @param diskCache
+	 *            where to store cells.
+	 * @param dataset
+	 *            identifies the data set (e.g., the base URL of a remote data
+	 *            set) to keep cells of different data sets apart.
+	 */
+	public DiskCachedArrayLoader(
+			final CacheArrayLoader< A > loader,
+			final A creator,
+			final DiskCellCache diskCache,
+			final String dataset )
+	{
+		this.loader = loader;
+		this.creator = creator;
+		this.diskCache = diskCache;
+		this.dataset = dataset;
+	}
+
+	/**
+	 * Wrap {@code loader} into a {@link DiskCachedArrayLoader} using the
+	 * {@link DiskCellCache#getDefault() default disk cache}. If no disk cache
+	 * is configured, {@code loader} is returned as is.
+	 */
+	public static < A extends VolatileArrayDataAccess< A > > CacheArrayLoader< A > wrap(
+			final CacheArrayLoader< A > loader,
+			final A creator,
+			final String dataset )
+	{
+		final DiskCellCache diskCache = DiskCellCache.getDefault();
+		return diskCache == null
+				? loader
+				: new DiskCachedArrayLoader<>( loader, creator, diskCache, dataset );
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return loader.getBytesPerElement();
+	}
+
+	@Override
+	public EmptyArrayCreator< A > getEmptyArrayCreator()
+	{
+		return loader.getEmptyArrayCreator();
+	}
+
+	@Override
+	public A loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		int numEntities = 1;
+		for ( final int d : dimensions )
+			numEntities *= d;
+
+		final byte[] bytes = diskCache.read( dataset, timepoint, setup, level, min );
+		if ( bytes != null )
+		{
+			final A array = creator.createArray( numEntities, true );
+			final Object data = array.getCurrentStorageArray();
+			if ( bytes.length == numEntities * StorageArrays.bytesPerEntity( data ) )
+			{
+				StorageArrays.copy( ByteBuffer.wrap( bytes ), data, numEntities );
+				return array;
+			}
+			// written for a different cell size or type, don't read it again
+			diskCache.remove( dataset, timepoint, setup, level, min );
+		}
+
+		final A array;
+		final boolean complete;
+		if ( loader instanceof FailureReportingArrayLoader )
+		{
+			final FailureReportingArrayLoader.Loaded< A > loaded = ( ( FailureReportingArrayLoader< A > ) loader ).load( timepoint, setup, level, dimensions, min );
+			array = loaded.array;
+			complete = loaded.complete;
+		}
+		else
+		{
+			array = loader.loadArray( timepoint, setup, level, dimensions, min );
+			complete = true;
+		}
+		final Object data = array.getCurrentStorageArray();
+		final int bytesPerEntity = StorageArrays.bytesPerEntity( data );
+		if ( complete && bytesPerEntity > 0 )
+		{
+			final byte[] out = new byte[ numEntities * bytesPerEntity ];
+			StorageArrays.copy( data, numEntities, ByteBuffer.wrap( out ) );
+			diskCache.write( dataset, timepoint, setup, level, min, out );
+		}
+		return array;
+	}
+}
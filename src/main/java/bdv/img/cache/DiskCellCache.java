@@ -0,0 +1,341 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import bdv.util.Prefs;
+
+/**
+ * A persistent cache of cell data on local disk, with a size cap and LRU
+ * eviction. Cells are identified by a dataset identity string (e.g., the base
+ * URL of a remote dataset), timepoint, setup, level, and the min coordinate of
+ * the cell, which is equivalent to the cell index within the level.
+ * <p>
+ * Every cell is stored in its own file
+ * {@code <root>/<hash of dataset>/<timepoint>/<setup>/<level>/<min>.cell}.
+ * Files are written to a temporary file first and then moved into place, so
+ * that concurrent readers (and a crash) never see partially written cells. The
+ * last-modified time of a file is updated whenever it is read. This is used to
+ * restore the LRU order when the cache is opened in a new session.
+ * <p>
+ * One {@link DiskCellCache} instance should be used per root directory,
+ * shared by all loaders, because the size cap applies to the whole directory
+ * (see {@link #getDefault()}).
+ */
+public class DiskCellCache
+{
+	private static final String SUFFIX = ".cell";
+
+	private final Path root;
+
+	private long maxBytes;
+
+	/**
+	 * Maps cached files to their size in bytes, in LRU order. Guarded by
+	 * {@code this}.
+	 */
+	private final LinkedHashMap< Path, Long > index = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private long currentBytes;
+
+	/**
+	 * Open a disk cache in the {@code root} directory, which is created if it
+	 * doesn't exist. Existing cached cells are indexed (this may take a moment
+	 * for a large cache).
+	 *
+	 * @param root
+	 *            the cache directory.
+	 * @param maxBytes
+	 *            maximum total size of cached cells in bytes.
+	 * @throws IOException
+	 *             if the directory cannot be created or read.
+	 */
+	public DiskCellCache( final File root, final long maxBytes ) throws IOException
+	{
+		this.root = root.toPath();
+		this.maxBytes = maxBytes;
+		Files.createDirectories( this.root );
+		scan();
+	}
+
+	private static DiskCellCache defaultCache;
+
+	private static boolean defaultCacheInitialized;
+
+	/**
+	 * Get the shared {@link DiskCellCache} configured by
+	 * {@link Prefs#diskCacheDir()} and {@link Prefs#diskCacheMaxBytes()}.
+	 *
+	 * @return the shared disk cache, or {@code null} if no disk cache is
+	 *         configured (or it cannot be opened).
+	 */
+	public static synchronized DiskCellCache getDefault()
+	{
+		if ( !defaultCacheInitialized )
+		{
+			defaultCacheInitialized = true;
+			final String dir = Prefs.diskCacheDir();
+			if ( dir != null && !dir.isEmpty() )
+			{
+				try
+				{
+					defaultCache = new DiskCellCache( new File( dir ), Prefs.diskCacheMaxBytes() );
+				}
+				catch ( final IOException e )
+				{
+					System.err.println( "Cannot open disk cache in " + dir );
+					e.printStackTrace();
+				}
+			}
+		}
+		return defaultCache;
+	}
+
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public synchronized void setMaxBytes( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public synchronized long getCurrentBytes()
+	{
+		return currentBytes;
+	}
+
+	/**
+	 * Read a cached cell.
+	 *
+	 * @return the cell data, or {@code null} if the cell is not cached.
+	 */
+	public byte[] read( final String dataset, final int timepoint, final int setup, final int level, final long[] min )
+	{
+		final Path path = path( dataset, timepoint, setup, level, min );
+		synchronized ( this )
+		{
+			if ( index.get( path ) == null )
+				return null;
+		}
+		try
+		{
+			final byte[] bytes = Files.readAllBytes( path );
+			Files.setLastModifiedTime( path, FileTime.fromMillis( System.currentTimeMillis() ) );
+			return bytes;
+		}
+		catch ( final NoSuchFileException e )
+		{
+			// evicted concurrently, or removed by someone else
+			remove( path );
+			return null;
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			remove( path );
+			return null;
+		}
+	}
+
+	/**
+	 * Store a cell. If this fails, the cell is simply not cached.
+	 */
+	public void write( final String dataset, final int timepoint, final int setup, final int level, final long[] min, final byte[] bytes )
+	{
+		if ( bytes.length > getMaxBytes() )
+			return;
+		final Path path = path( dataset, timepoint, setup, level, min );
+		try
+		{
+			final Path dir = path.getParent();
+			Files.createDirectories( dir );
+			final Path tmp = Files.createTempFile( dir, "tmp", null );
+			try
+			{
+				Files.write( tmp, bytes );
+				Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			finally
+			{
+				Files.deleteIfExists( tmp );
+			}
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			return;
+		}
+		synchronized ( this )
+		{
+			final Long previous = index.put( path, ( long ) bytes.length );
+			if ( previous != null )
+				currentBytes -= previous;
+			currentBytes += bytes.length;
+			evict();
+		}
+	}
+
+	/**
+	 * Remove a cached cell, e.g., because its data turned out to be unusable.
+	 */
+	public void remove( final String dataset, final int timepoint, final int setup, final int level, final long[] min )
+	{
+		final Path path = path( dataset, timepoint, setup, level, min );
+		synchronized ( this )
+		{
+			if ( index.get( path ) == null )
+				return;
+			remove( path );
+		}
+		delete( path );
+	}
+
+	/**
+	 * Remove all cached cells.
+	 */
+	public synchronized void clear()
+	{
+		for ( final Path path : index.keySet() )
+			delete( path );
+		index.clear();
+		currentBytes = 0;
+	}
+
+	private synchronized void remove( final Path path )
+	{
+		final Long size = index.remove( path );
+		if ( size != null )
+			currentBytes -= size;
+	}
+
+	private synchronized void evict()
+	{
+		final Iterator< Map.Entry< Path, Long > > it = index.entrySet().iterator();
+		while ( currentBytes > maxBytes && it.hasNext() )
+		{
+			final Map.Entry< Path, Long > eldest = it.next();
+			delete( eldest.getKey() );
+			currentBytes -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	private static void delete( final Path path )
+	{
+		try
+		{
+			Files.deleteIfExists( path );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Index all cached cells in {@link #root}, oldest first.
+	 */
+	private synchronized void scan() throws IOException
+	{
+		final List< Path > files;
+		try ( Stream< Path > paths = Files.walk( root ) )
+		{
+			files = paths
+					.filter( p -> p.getFileName().toString().endsWith( SUFFIX ) )
+					.filter( Files::isRegularFile )
+					.collect( Collectors.toCollection( ArrayList::new ) );
+		}
+		final LinkedHashMap< Path, long[] > attributes = new LinkedHashMap<>();
+		for ( final Path path : files )
+			attributes.put( path, new long[] { Files.getLastModifiedTime( path ).toMillis(), Files.size( path ) } );
+		files.sort( ( a, b ) -> Long.compare( attributes.get( a )[ 0 ], attributes.get( b )[ 0 ] ) );
+		for ( final Path path : files )
+		{
+			final long size = attributes.get( path )[ 1 ];
+			index.put( path, size );
+			currentBytes += size;
+		}
+		evict();
+	}
+
+	private Path path( final String dataset, final int timepoint, final int setup, final int level, final long[] min )
+	{
+		final StringBuilder name = new StringBuilder();
+		for ( int d = 0; d < min.length; ++d )
+		{
+			if ( d > 0 )
+				name.append( '_' );
+			name.append( min[ d ] );
+		}
+		name.append( SUFFIX );
+		return root
+				.resolve( hash( dataset ) )
+				.resolve( Integer.toString( timepoint ) )
+				.resolve( Integer.toString( setup ) )
+				.resolve( Integer.toString( level ) )
+				.resolve( name.toString() );
+	}
+
+	private static String hash( final String dataset )
+	{
+		try
+		{
+			final byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( dataset.getBytes( StandardCharsets.UTF_8 ) );
+			final StringBuilder sb = new StringBuilder();
+			for ( final byte b : digest )
+				sb.append( String.format( "%02x", b ) );
+			return sb.toString();
+		}
+		catch ( final NoSuchAlgorithmException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+}
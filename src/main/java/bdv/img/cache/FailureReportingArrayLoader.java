@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+/**
+ * A {@link CacheArrayLoader} that tells whether a cell was fetched completely.
+ * Remote loaders fill in placeholder data when fetching (part of) a cell
+ * fails, so that the viewer has something to show. Such cells must not be
+ * persisted, e.g., by a {@link DiskCachedArrayLoader}.
+ *
+ * @param <A>
+ *            type of access to cell data.
+ */
+public interface FailureReportingArrayLoader< A > extends CacheArrayLoader< A >
+{
+	/**
+	 * Load cell data, like {@link #loadArray(int, int, int, int[], long[])},
+	 * and report whether all of it could be fetched.
+	 *
+	 * @return loaded cell data, which may contain placeholder data if fetching
+	 *         failed.
+	 */
+	public Loaded< A > load( final int timepoint, final int setup, final int level, int[] dimensions, long[] min ) throws InterruptedException;
+
+	@Override
+	public default A loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return load( timepoint, setup, level, dimensions, min ).array;
+	}
+
+	/**
+	 * Cell data returned by
+	 * {@link FailureReportingArrayLoader#load(int, int, int, int[], long[])}.
+	 */
+	public static final class Loaded< A >
+	{
+		/**
+		 * The cell data.
+		 */
+		public final A array;
+
+		/**
+		 * Whether {@link #array} was fetched completely. If {@code false},
+		 * (part of) {@link #array} is placeholder data.
+		 */
+		public final boolean complete;
+
+		public Loaded( final A array, final boolean complete )
+		{
+			this.array = array;
+			this.complete = complete;
+		}
+	}
+}
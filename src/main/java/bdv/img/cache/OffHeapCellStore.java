@@ -0,0 +1,295 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import bdv.img.cache.VolatileGlobalCellCache.Key;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * Second cache tier for {@link BoundedCellCache}. Cells evicted from the
+ * (on-heap) {@link BoundedCellCache} are copied into direct
+ * {@link ByteBuffer}s, where they do not contribute to garbage collection
+ * cost. When such a cell is requested again, it is copied back into a new
+ * primitive array, which is much cheaper than loading it from the original
+ * source.
+ * <p>
+ * The store holds at most {@link #getMaxBytes()} bytes. When full, the least
+ * recently stored cells are dropped. Buffers of dropped or restored cells are
+ * recycled for storing new cells, so that direct memory does not need to be
+ * reclaimed by the garbage collector.
+ * <p>
+ * Only cells with {@link VolatileArrayDataAccess} data backed by primitive
+ * arrays can be stored. Other cells are ignored by {@link #put(Key, Cell)}.
+ */
+public class OffHeapCellStore
+{
+	private static final class Entry
+	{
+		final int[] dimensions;
+
+		final long[] min;
+
+		final VolatileArrayDataAccess< ? > creator;
+
+		final int numEntities;
+
+		final ByteBuffer buffer;
+
+		Entry( final int[] dimensions, final long[] min, final VolatileArrayDataAccess< ? > creator, final int numEntities, final ByteBuffer buffer )
+		{
+			this.dimensions = dimensions;
+			this.min = min;
+			this.creator = creator;
+			this.numEntities = numEntities;
+			this.buffer = buffer;
+		}
+	}
+
+	/**
+	 * Stored cells in insertion order. Guarded by {@code this}.
+	 */
+	private final LinkedHashMap< Key, Entry > entries = new LinkedHashMap<>();
+
+	/**
+	 * Buffers of dropped or restored cells, available for re-use. Guarded by
+	 * {@code this}.
+	 */
+	private final ArrayDeque< ByteBuffer > free = new ArrayDeque<>();
+
+	/**
+	 * Keys of cells that are currently being copied by {@link #put(Key, Cell)},
+	 * mapped to the buffer they are copied into. A {@link #remove(Key)} or
+	 * {@link #clear()} in the meantime removes the key, and the copy is then
+	 * discarded. Guarded by {@code this}.
+	 */
+	private final HashMap< Key, ByteBuffer > pending = new HashMap<>();
+
+	private long maxBytes;
+
+	/**
+	 * Total capacity of all buffers, in {@link #entries}, {@link #free}, and
+	 * {@link #pending}.
+	 */
+	private long allocatedBytes;
+
+	/**
+	 * Create a store that holds at most {@code maxBytes} bytes of cell data in
+	 * direct memory.
+	 *
+	 * @param maxBytes
+	 *            direct memory budget in bytes.
+	 */
+	public OffHeapCellStore( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public synchronized void setMaxBytes( final long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+		makeRoom( 0 );
+	}
+
+	/**
+	 * Copy the data of {@code cell} into direct memory. Does nothing, if the
+	 * cell data is not a {@link VolatileArrayDataAccess} backed by a primitive
+	 * array, or if the cell is bigger than the whole store.
+	 *
+	 * @param key
+	 *            key of the cell.
+	 * @param cell
+	 *            the cell to store.
+	 */
+	public void put( final Key key, final Cell< ? > cell )
+	{
+		final Object data = cell.getData();
+		if ( !( data instanceof VolatileArrayDataAccess ) )
+			return;
+		final VolatileArrayDataAccess< ? > access = ( VolatileArrayDataAccess< ? > ) data;
+		final Object array = access.getCurrentStorageArray();
+		final int numEntities = Array.getLength( array );
+		final int bytesPerEntity = StorageArrays.bytesPerEntity( array );
+		if ( bytesPerEntity < 0 )
+			return;
+		final int numBytes = numEntities * bytesPerEntity;
+
+		final int n = cell.numDimensions();
+		final int[] dimensions = new int[ n ];
+		final long[] min = new long[ n ];
+		cell.dimensions( dimensions );
+		cell.min( min );
+
+		final ByteBuffer buffer;
+		synchronized ( this )
+		{
+			if ( numBytes > maxBytes || entries.containsKey( key ) || pending.containsKey( key ) )
+				return;
+			buffer = allocate( numBytes );
+			pending.put( key, buffer );
+		}
+		StorageArrays.copy( array, numEntities, buffer );
+		final VolatileArrayDataAccess< ? > creator = ( VolatileArrayDataAccess< ? > ) access.createArray( 0, true );
+		final Entry entry = new Entry( dimensions, min, creator, numEntities, buffer );
+		synchronized ( this )
+		{
+			// The cell may have been restored (and possibly stored again) or
+			// the store cleared while we were copying. Then our copy is stale.
+			if ( pending.get( key ) != buffer )
+			{
+				free.add( buffer );
+				makeRoom( 0 );
+				return;
+			}
+			pending.remove( key );
+			entries.put( key, entry );
+		}
+	}
+
+	/**
+	 * Remove the cell with the given key from the store and restore it into a
+	 * new (valid) cell on the Java heap.
+	 *
+	 * @param key
+	 *            key of the cell.
+	 * @return the restored cell, or {@code null} if the cell is not stored.
+	 */
+	public Cell< ? > remove( final Key key )
+	{
+		final Entry entry;
+		synchronized ( this )
+		{
+			entry = entries.remove( key );
+			pending.remove( key );
+		}
+		if ( entry == null )
+			return null;
+
+		final VolatileArrayDataAccess< ? > access = ( VolatileArrayDataAccess< ? > ) entry.creator.createArray( entry.numEntities, true );
+		StorageArrays.copy( entry.buffer, access.getCurrentStorageArray(), entry.numEntities );
+		synchronized ( this )
+		{
+			free.add( entry.buffer );
+			makeRoom( 0 );
+		}
+		return new Cell<>( entry.dimensions, entry.min, access );
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		free.clear();
+		// buffers of pending puts are still allocated, and go to the free
+		// list when those puts find that they were discarded.
+		allocatedBytes = 0;
+		for ( final ByteBuffer buffer : pending.values() )
+			allocatedBytes += buffer.capacity();
+		pending.clear();
+	}
+
+	/**
+	 * Get a buffer with at least {@code numBytes} capacity. A free buffer is
+	 * re-used if one fits. Otherwise, if the store is full, least recently
+	 * stored cells are dropped until the buffer of one of them fits (or there
+	 * is room for a new buffer). Buffers of dropped cells that do not fit are
+	 * kept for re-use. Must be called while holding the lock.
+	 */
+	private ByteBuffer allocate( final int numBytes )
+	{
+		final Iterator< ByteBuffer > it = free.iterator();
+		while ( it.hasNext() )
+		{
+			final ByteBuffer buffer = it.next();
+			if ( fits( buffer, numBytes ) )
+			{
+				it.remove();
+				return prepare( buffer, numBytes );
+			}
+		}
+		final Iterator< Entry > entryIt = entries.values().iterator();
+		while ( allocatedBytes + numBytes > maxBytes && entryIt.hasNext() )
+		{
+			final ByteBuffer buffer = entryIt.next().buffer;
+			entryIt.remove();
+			if ( fits( buffer, numBytes ) )
+				return prepare( buffer, numBytes );
+			free.add( buffer );
+		}
+		makeRoom( numBytes );
+		allocatedBytes += numBytes;
+		return ByteBuffer.allocateDirect( numBytes ).order( ByteOrder.nativeOrder() );
+	}
+
+	/**
+	 * Whether {@code buffer} can be re-used for {@code numBytes}, without
+	 * wasting more than half of it.
+	 */
+	private static boolean fits( final ByteBuffer buffer, final int numBytes )
+	{
+		return buffer.capacity() >= numBytes && buffer.capacity() / 2 <= numBytes;
+	}
+
+	private static ByteBuffer prepare( final ByteBuffer buffer, final int numBytes )
+	{
+		buffer.clear();
+		buffer.limit( numBytes );
+		return buffer;
+	}
+
+	/**
+	 * Release free buffers and drop least recently stored cells until
+	 * {@code numBytes} can be allocated without exceeding {@link #maxBytes}.
+	 * Must be called while holding the lock.
+	 */
+	private void makeRoom( final long numBytes )
+	{
+		while ( allocatedBytes + numBytes > maxBytes && !free.isEmpty() )
+			allocatedBytes -= free.poll().capacity();
+		final Iterator< Entry > it = entries.values().iterator();
+		while ( allocatedBytes + numBytes > maxBytes && it.hasNext() )
+		{
+			allocatedBytes -= it.next().buffer.capacity();
+			it.remove();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for copying the primitive storage arrays of array accesses to and
+ * from {@link ByteBuffer}s. The byte order of the buffer is respected.
+ */
+class StorageArrays
+{
+	/**
+	 * Get the size in bytes of one element of a primitive array.
+	 *
+	 * @return bytes per element, or {@code -1} if {@code array} is not a
+	 *         primitive array.
+	 */
+	static int bytesPerEntity( final Object array )
+	{
+		if ( array instanceof byte[] )
+			return 1;
+		else if ( array instanceof short[] || array instanceof char[] )
+			return 2;
+		else if ( array instanceof int[] || array instanceof float[] )
+			return 4;
+		else if ( array instanceof long[] || array instanceof double[] )
+			return 8;
+		else
+			return -1;
+	}
+
+	static void copy( final Object array, final int numEntities, final ByteBuffer buffer )
+	{
+		final ByteBuffer b = buffer.duplicate().order( buffer.order() );
+		if ( array instanceof byte[] )
+			b.put( ( byte[] ) array, 0, numEntities );
+		else if ( array instanceof short[] )
+			b.asShortBuffer().put( ( short[] ) array, 0, numEntities );
+		else if ( array instanceof char[] )
+			b.asCharBuffer().put( ( char[] ) array, 0, numEntities );
+		else if ( array instanceof int[] )
+			b.asIntBuffer().put( ( int[] ) array, 0, numEntities );
+		else if ( array instanceof float[] )
+			b.asFloatBuffer().put( ( float[] ) array, 0, numEntities );
+		else if ( array instanceof long[] )
+			b.asLongBuffer().put( ( long[] ) array, 0, numEntities );
+		else if ( array instanceof double[] )
+			b.asDoubleBuffer().put( ( double[] ) array, 0, numEntities );
+	}
+
+	static void copy( final ByteBuffer buffer, final Object array, final int numEntities )
+	{
+		final ByteBuffer b = buffer.duplicate().order( buffer.order() );
+		if ( array instanceof byte[] )
+			b.get( ( byte[] ) array, 0, numEntities );
+		else if ( array instanceof short[] )
+			b.asShortBuffer().get( ( short[] ) array, 0, numEntities );
+		else if ( array instanceof char[] )
+			b.asCharBuffer().get( ( char[] ) array, 0, numEntities );
+		else if ( array instanceof int[] )
+			b.asIntBuffer().get( ( int[] ) array, 0, numEntities );
+		else if ( array instanceof float[] )
+			b.asFloatBuffer().get( ( float[] ) array, 0, numEntities );
+		else if ( array instanceof long[] )
+			b.asLongBuffer().get( ( long[] ) array, 0, numEntities );
+		else if ( array instanceof double[] )
+			b.asDoubleBuffer().get( ( double[] ) array, 0, numEntities );
+	}
+}
@@ -95,6 +95,11 @@ public class VolatileCachedCellImg< T extends NativeType< T >, A >
 		cells.cacheHints = ( cacheHints != null ) ? cacheHints : cells.defaultCacheHints;
 	}
 
+	public CacheHints getCacheHints()
+	{
+		return cells.cacheHints;
+	}
+
 	public CacheHints getDefaultCacheHints()
 	{
 		return cells.defaultCacheHints;
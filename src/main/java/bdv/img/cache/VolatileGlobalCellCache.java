@@ -30,8 +30,11 @@
 package bdv.img.cache;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 
 import bdv.cache.CacheControl;
+import bdv.util.Prefs;
 import net.imglib2.cache.Cache;
 import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.LoaderCache;
@@ -90,6 +93,26 @@ public class VolatileGlobalCellCache implements CacheControl
 			hashcode = value;
 		}
 
+		public int getTimepoint()
+		{
+			return timepoint;
+		}
+
+		public int getSetup()
+		{
+			return setup;
+		}
+
+		public int getLevel()
+		{
+			return level;
+		}
+
+		public long getIndex()
+		{
+			return index;
+		}
+
 		@Override
 		public boolean equals( final Object other )
 		{
@@ -112,7 +135,15 @@ public class VolatileGlobalCellCache implements CacheControl
 
 	private final BlockingFetchQueues< Callable< ? > > queue;
 
-	protected final LoaderCache< Key, Cell< ? > > backingCache;
+	/**
+	 * The cache holding loaded cells. Images created by
+	 * {@link #createImg(CellGrid, int, int, int, CacheHints, CacheArrayLoader, NativeType)}
+	 * always go through the current {@code backingCache}, so it can be
+	 * replaced by {@link #setMaxCacheBytes(long)}.
+	 */
+	protected volatile LoaderCache< Key, Cell< ? > > backingCache;
+
+	private final CopyOnWriteArrayList< LoadListener > loadListeners = new CopyOnWriteArrayList<>();
 
 	/**
 	 * Create a new global cache with a new fetch queue served by the specified
@@ -125,9 +156,43 @@ public class VolatileGlobalCellCache implements CacheControl
 	 */
 	public VolatileGlobalCellCache( final int maxNumLevels, final int numFetcherThreads )
 	{
-		queue = new BlockingFetchQueues<>( maxNumLevels );
+		this( maxNumLevels, numFetcherThreads, Prefs.cacheMaxBytes() );
+	}
+
+	/**
+	 * Create a new global cache with a new fetch queue served by the specified
+	 * number of fetcher threads, and the specified memory budget.
+	 *
+	 * @param maxNumLevels
+	 *            the highest occurring mipmap level plus 1.
+	 * @param numFetcherThreads
+	 *            how many threads should be created to load data.
+	 * @param maxCacheBytes
+	 *            the memory budget in bytes, or a negative value to let the
+	 *            garbage collector decide.
+	 */
+	public VolatileGlobalCellCache( final int maxNumLevels, final int numFetcherThreads, final long maxCacheBytes )
+	{
+		this( maxNumLevels, numFetcherThreads, createBackingCache( maxCacheBytes ) );
+	}
+
+	/**
+	 * Create a new global cache with a new fetch queue served by the specified
+	 * number of fetcher threads, and the specified backing cache.
+	 *
+	 * @param maxNumLevels
+	 *            the highest occurring mipmap level plus 1.
+	 * @param numFetcherThreads
+	 *            how many threads should be created to load data.
+	 * @param backingCache
+	 *            the cache holding loaded cells, e.g., a
+	 *            {@link SoftRefLoaderCache} or a {@link BoundedCellCache}.
+	 */
+	public VolatileGlobalCellCache( final int maxNumLevels, final int numFetcherThreads, final LoaderCache< Key, Cell< ? > > backingCache )
+	{
+		queue = new ClientFetchQueues<>( maxNumLevels );
 		new FetcherThreads( queue, numFetcherThreads );
-		backingCache = new SoftRefLoaderCache<>();
+		this.backingCache = backingCache;
 	}
 
 	/**
@@ -138,15 +203,120 @@ public class VolatileGlobalCellCache implements CacheControl
 	 *            queue to which asynchronous data loading jobs are submitted
 	 */
 	public VolatileGlobalCellCache( final BlockingFetchQueues< Callable< ? > > queue )
+	{
+		this( queue, Prefs.cacheMaxBytes() );
+	}
+
+	/**
+	 * Create a new global cache with the specified fetch queue and memory
+	 * budget. (It is the callers responsibility to create fetcher threads that
+	 * serve the queue.)
+	 *
+	 * @param queue
+	 *            queue to which asynchronous data loading jobs are submitted
+	 * @param maxCacheBytes
+	 *            the memory budget in bytes, or a negative value to let the
+	 *            garbage collector decide.
+	 */
+	public VolatileGlobalCellCache( final BlockingFetchQueues< Callable< ? > > queue, final long maxCacheBytes )
+	{
+		this( queue, createBackingCache( maxCacheBytes ) );
+	}
+
+	/**
+	 * Create a new global cache with the specified fetch queue and backing
+	 * cache. (It is the callers responsibility to create fetcher threads that
+	 * serve the queue.)
+	 *
+	 * @param queue
+	 *            queue to which asynchronous data loading jobs are submitted
+	 * @param backingCache
+	 *            the cache holding loaded cells, e.g., a
+	 *            {@link SoftRefLoaderCache} or a {@link BoundedCellCache}.
+	 */
+	public VolatileGlobalCellCache( final BlockingFetchQueues< Callable< ? > > queue, final LoaderCache< Key, Cell< ? > > backingCache )
 	{
 		this.queue = queue;
-		backingCache = new SoftRefLoaderCache<>();
+		this.backingCache = backingCache;
+	}
+
+	/**
+	 * Create the backing cache for the memory budget {@code maxBytes}: A
+	 * {@link BoundedCellCache} if a budget is given, a
+	 * {@link SoftRefLoaderCache} if {@code maxBytes} is negative.
+	 */
+	private static LoaderCache< Key, Cell< ? > > createBackingCache( final long maxBytes )
+	{
+		return maxBytes < 0
+				? new SoftRefLoaderCache<>()
+				: createBoundedCellCache( maxBytes );
+	}
+
+	/**
+	 * Create a {@link BoundedCellCache} with the specified memory budget. If
+	 * {@link Prefs#cacheOffHeapMaxBytes()} is positive, evicted cells are moved
+	 * to an {@link OffHeapCellStore} of that size.
+	 */
+	private static BoundedCellCache createBoundedCellCache( final long maxBytes )
+	{
+		final long offHeapMaxBytes = Prefs.cacheOffHeapMaxBytes();
+		return new BoundedCellCache( maxBytes,
+				offHeapMaxBytes > 0 ? new OffHeapCellStore( offHeapMaxBytes ) : null );
+	}
+
+	/**
+	 * Get the memory budget of the cache.
+	 *
+	 * @return the memory budget in bytes, or {@code -1} if the cache is backed
+	 *         by a {@link SoftRefLoaderCache}.
+	 */
+	@Override
+	public long getMaxCacheBytes()
+	{
+		final LoaderCache< Key, Cell< ? > > cache = backingCache;
+		return ( cache instanceof BoundedCellCache )
+				? ( ( BoundedCellCache ) cache ).getMaxBytes()
+				: -1;
+	}
+
+	/**
+	 * Set the memory budget of the cache. If the cache is not backed by a
+	 * {@link BoundedCellCache} yet, a new {@link BoundedCellCache} replaces
+	 * the current backing cache (the contents of which are discarded). A
+	 * negative {@code maxBytes} switches back to a {@link SoftRefLoaderCache}.
+	 *
+	 * @param maxBytes
+	 *            the memory budget in bytes, or a negative value to let the
+	 *            garbage collector decide.
+	 */
+	@Override
+	public synchronized void setMaxCacheBytes( final long maxBytes )
+	{
+		final LoaderCache< Key, Cell< ? > > cache = backingCache;
+		if ( cache instanceof BoundedCellCache )
+		{
+			if ( maxBytes >= 0 )
+			{
+				( ( BoundedCellCache ) cache ).setMaxBytes( maxBytes );
+				return;
+			}
+			backingCache = new SoftRefLoaderCache<>();
+		}
+		else
+		{
+			if ( maxBytes < 0 )
+				return;
+			backingCache = createBoundedCellCache( maxBytes );
+		}
+		cache.invalidateAll();
 	}
 
 	/**
 	 * Prepare the cache for providing data for the "next frame",
 	 * by moving pending cell request to the prefetch queue
-	 * ({@link BlockingFetchQueues#clearToPrefetch()}).
+	 * ({@link BlockingFetchQueues#clearToPrefetch()}). With a
+	 * {@link ClientFetchQueues}, only the requests of the calling viewer are
+	 * moved.
 	 */
 	@Override
 	public void prepareNextFrame()
@@ -154,6 +324,25 @@ public class VolatileGlobalCellCache implements CacheControl
 		queue.clearToPrefetch();
 	}
 
+	/**
+	 * Register a {@link LoadListener} that is notified after each cell has
+	 * been loaded.
+	 *
+	 * @return {@code true}
+	 */
+	@Override
+	public boolean addLoadListener( final LoadListener listener )
+	{
+		loadListeners.addIfAbsent( listener );
+		return true;
+	}
+
+	@Override
+	public void removeLoadListener( final LoadListener listener )
+	{
+		loadListeners.remove( listener );
+	}
+
 	/**
 	 * Remove all references to loaded data as well as all enqueued requests
 	 * from the cache.
@@ -222,7 +411,7 @@ public class VolatileGlobalCellCache implements CacheControl
 				index -> new Key( timepoint, setup, level, index ),
 				key -> key.index );
 
-		final Cache< Long, Cell< ? > > cache = backingCache
+		final Cache< Long, Cell< ? > > cache = new CurrentBackingCache( cacheArrayLoader.getBytesPerElement() )
 				.mapKeys( bimap )
 				.withLoader( loader );
 
@@ -241,4 +430,60 @@ public class VolatileGlobalCellCache implements CacheControl
 
 		return img;
 	}
+
+	private void notifyLoaded()
+	{
+		for ( final LoadListener l : loadListeners )
+			l.loaded();
+	}
+
+	/**
+	 * Forwards to the current {@link #backingCache}. If that is a
+	 * {@link BoundedCellCache}, cells are weighed with the bytes per element of
+	 * the {@link CacheArrayLoader} of the image. {@link LoadListener}s are
+	 * notified whenever a cell that was not present is obtained, either by
+	 * loading it or by restoring it from an {@link OffHeapCellStore}. If this
+	 * happens on a fetcher thread of a {@link ClientFetchQueues}, listeners
+	 * are notified only after the fetch task has completed, i.e., after the
+	 * cell has been published to the volatile cache, so that a repaint
+	 * triggered by the notification sees the cell.
+	 */
+	private class CurrentBackingCache implements LoaderCache< Key, Cell< ? > >
+	{
+		private final int bytesPerElement;
+
+		CurrentBackingCache( final int bytesPerElement )
+		{
+			this.bytesPerElement = bytesPerElement;
+		}
+
+		@Override
+		public Cell< ? > getIfPresent( final Key key )
+		{
+			return backingCache.getIfPresent( key );
+		}
+
+		@Override
+		public Cell< ? > get( final Key key, final CacheLoader< ? super Key, ? extends Cell< ? > > loader ) throws ExecutionException
+		{
+			final LoaderCache< Key, Cell< ? > > cache = backingCache;
+			final Cell< ? > present = cache.getIfPresent( key );
+			if ( present != null )
+				return present;
+			final Cell< ? > cell = ( cache instanceof BoundedCellCache )
+					? ( ( BoundedCellCache ) cache ).get( key, loader, bytesPerElement )
+					: cache.get( key, loader );
+			if ( queue instanceof ClientFetchQueues )
+				( ( ClientFetchQueues< ? > ) queue ).runAfterCurrentElement( VolatileGlobalCellCache.this::notifyLoaded );
+			else
+				notifyLoaded();
+			return cell;
+		}
+
+		@Override
+		public void invalidateAll()
+		{
+			backingCache.invalidateAll();
+		}
+	}
 }
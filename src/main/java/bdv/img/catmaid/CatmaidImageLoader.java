@@ -32,6 +32,8 @@ package bdv.img.catmaid;
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.ViewerSetupImgLoader;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.DiskCachedArrayLoader;
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.img.cache.VolatileGlobalCellCache;
 import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
@@ -59,7 +61,7 @@ public class CatmaidImageLoader extends AbstractViewerSetupImgLoader< ARGBType,
 
 	private VolatileGlobalCellCache cache;
 
-	private final CatmaidVolatileIntArrayLoader loader;
+	private final CacheArrayLoader< VolatileIntArray > loader;
 
 	final static private int[][] blockDimensions(
 			final int tileWidth,
@@ -118,7 +120,10 @@ public class CatmaidImageLoader extends AbstractViewerSetupImgLoader< ARGBType,
 			mipmapTransforms[ l ] = mipmapTransform;
 		}
 
-		loader = new CatmaidVolatileIntArrayLoader( urlFormat, tileWidth, tileHeight, zScales );
+		loader = DiskCachedArrayLoader.wrap(
+				new CatmaidVolatileIntArrayLoader( urlFormat, tileWidth, tileHeight, zScales ),
+				new VolatileIntArray( 0, false ),
+				urlFormat );
 		cache = new VolatileGlobalCellCache( numScales, 10 );
 	}
 
@@ -29,18 +29,40 @@
  */
 package bdv.img.catmaid;
 
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.PixelGrabber;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.FailureReportingArrayLoader;
+import bdv.util.Prefs;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
 
-public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< VolatileIntArray >
+/**
+ * Loads ARGB cells from CATMAID tiles. All tiles of a cell, for all z-planes
+ * that are averaged into the cell, are fetched concurrently by a shared pool of
+ * tile fetcher threads. Tiles are read completely before decoding, so that the
+ * HTTP keep-alive connection can be reused for the next tile from the same
+ * server. Decoded tiles are copied directly into the cell data. Tiles that
+ * cannot be fetched are left black, and the cell is reported as incomplete.
+ */
+public class CatmaidVolatileIntArrayLoader implements FailureReportingArrayLoader< VolatileIntArray >
 {
 	private final String urlFormat;
 
@@ -94,8 +116,42 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 		return 4;
 	}
 
-	final private void loadSliceArray(
-			final int[] slice,
+	private static ExecutorService tileFetchers;
+
+	/**
+	 * Get the pool of tile fetcher threads shared by all CATMAID loaders. The
+	 * number of threads is given by {@link Prefs#catmaidTileFetcherThreads()}.
+	 */
+	private static synchronized ExecutorService getTileFetchers()
+	{
+		if ( tileFetchers == null )
+			tileFetchers = Executors.newFixedThreadPool( Prefs.catmaidTileFetcherThreads(), new TileFetcherThreadFactory() );
+		return tileFetchers;
+	}
+
+	private static final class TileFetcherThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+		@Override
+		public Thread newThread( final Runnable r )
+		{
+			final Thread t = new Thread( r, "catmaid-tile-fetcher-" + threadNumber.getAndIncrement() );
+			t.setDaemon( true );
+			return t;
+		}
+	}
+
+	/**
+	 * Submit fetching all tiles overlapping a {@code w x h} slice at
+	 * ({@code min[0]}, {@code min[1]}, {@code z}). Each tile is decoded
+	 * into its region of the slice, which starts at {@code offset} in
+	 * {@code data}.
+	 */
+	private void submitSliceTiles(
+			final List< Future< Boolean > > futures,
+			final int[] data,
+			final int offset,
 			final int level,
 			final double scale,
 			final long c0,
@@ -107,10 +163,9 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 			final long ym,
 			final long[] min,
 			final int w,
-			final int h ) throws InterruptedException
+			final int h )
 	{
-		final BufferedImage image = new BufferedImage( w, h, BufferedImage.TYPE_INT_RGB );
-		final Graphics2D g2d = image.createGraphics();
+		final ExecutorService ex = getTileFetchers();
 		for (
 				long c = c0, x = x0;
 				x < xm;
@@ -121,63 +176,120 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 					y < ym;
 					++r, y += tileHeight )
 			{
-				try
-				{
-					final String urlString = String.format( urlFormat, level, scale, x, y, z, tileWidth, tileHeight, r, c );
-//					System.out.println( urlString );
-					final URL url = new URL( urlString );
-					final BufferedImage tile = ImageIO.read( url );
-					g2d.drawImage( tile, ( int )( x - min[ 0 ] ), ( int )( y - min[ 1 ] ), null );
-				}
-				catch (final IOException e)
-				{
-					System.out.println( "failed loading r=" + r + " c=" + c );
-				}
+				final long fc = c, fr = r, fx = x, fy = y;
+				futures.add( ex.submit( () -> loadTile( data, offset, level, scale, fc, fr, fx, fy, z, min, w, h ) ) );
 			}
 		}
-
-		final PixelGrabber pg = new PixelGrabber( image, 0, 0, w, h, slice, 0, w );
-		pg.grabPixels();
 	}
 
-
-	final private void averageSlice(
-			final int[] slice,
+	/**
+	 * Fetch a tile and copy it into its region of the slice.
+	 *
+	 * @return whether the tile was fetched successfully.
+	 */
+	private boolean loadTile(
+			final int[] data,
+			final int offset,
 			final int level,
 			final double scale,
-			final long c0,
-			final long r0,
-			final long x0,
-			final long y0,
-			final long xm,
-			final long ym,
+			final long c,
+			final long r,
+			final long x,
+			final long y,
+			final long z,
 			final long[] min,
 			final int w,
-			final int h ) throws InterruptedException
+			final int h )
+	{
+		try
+		{
+			final String urlString = String.format( urlFormat, level, scale, x, y, z, tileWidth, tileHeight, r, c );
+			final BufferedImage tile = ImageIO.read( new ByteArrayInputStream( fetch( new URL( urlString ) ) ) );
+			if ( tile == null )
+				throw new IOException( "cannot decode " + urlString );
+
+			// intersection of tile and slice, in slice coordinates
+			final int sx0 = ( int ) Math.max( 0, x - min[ 0 ] );
+			final int sy0 = ( int ) Math.max( 0, y - min[ 1 ] );
+			final int sx1 = ( int ) Math.min( w, x - min[ 0 ] + tile.getWidth() );
+			final int sy1 = ( int ) Math.min( h, y - min[ 1 ] + tile.getHeight() );
+			if ( sx1 <= sx0 || sy1 <= sy0 )
+				return true;
+			final int tx0 = ( int ) ( sx0 + min[ 0 ] - x );
+			final int ty0 = ( int ) ( sy0 + min[ 1 ] - y );
+			tile.getRGB( tx0, ty0, sx1 - sx0, sy1 - sy0, data, offset + sy0 * w + sx0, w );
+			for ( int sy = sy0; sy < sy1; ++sy )
+				for ( int i = offset + sy * w + sx0, e = offset + sy * w + sx1; i < e; ++i )
+					data[ i ] |= 0xff000000;
+			return true;
+		}
+		catch ( final IOException e )
+		{
+			System.out.println( "failed loading r=" + r + " c=" + c );
+			return false;
+		}
+	}
+
+	/**
+	 * Read the complete response for {@code url}. Reading responses to the end
+	 * (also for errors) allows the connection to be kept alive and reused.
+	 */
+	private static byte[] fetch( final URL url ) throws IOException
 	{
-		final long[] rs = new long[ slice.length ], gs = new long[ slice.length ], bs = new long[ slice.length ];
-		for ( int z = ( int ) min[ 2 ] * zScales[ level ], dz = 0; dz < zScales[ level ]; ++dz )
+		final URLConnection connection = url.openConnection();
+		try ( final InputStream in = connection.getInputStream() )
+		{
+			final int length = connection.getContentLength();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream( length > 0 ? length : 64 * 1024 );
+			final byte[] buf = new byte[ 16 * 1024 ];
+			for ( int l = in.read( buf ); l >= 0; l = in.read( buf ) )
+				out.write( buf, 0, l );
+			return out.toByteArray();
+		}
+		catch ( final IOException e )
 		{
-			loadSliceArray( slice, level, scale, c0, r0, x0, y0, z + dz, xm, ym, min, w, h );
-			for ( int i = 0; i < slice.length; ++i )
+			if ( connection instanceof HttpURLConnection )
 			{
-				rs[ i ] += ( slice[ i ] >> 16 ) & 0xff;
-				gs[ i ] += ( slice[ i ] >> 8 ) & 0xff;
-				bs[ i ] += slice[ i ] & 0xff;
+				try ( final InputStream err = ( ( HttpURLConnection ) connection ).getErrorStream() )
+				{
+					if ( err != null )
+						while ( err.skip( Long.MAX_VALUE ) > 0 );
+				}
+				catch ( final IOException ignored )
+				{}
 			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait for all tiles to be loaded.
+	 *
+	 * @return whether all tiles were fetched successfully.
+	 */
+	private static boolean awaitAll( final List< Future< Boolean > > futures ) throws InterruptedException
+	{
+		try
+		{
+			boolean complete = true;
+			for ( final Future< Boolean > f : futures )
+				complete &= f.get();
+			return complete;
 		}
-		for ( int i = 0; i < slice.length; ++i )
+		catch ( final InterruptedException e )
 		{
-			final int red = ( int ) ( rs[ i ] / zScales[ level ] );
-			final int green = ( int ) ( gs[ i ] / zScales[ level ] );
-			final int blue = ( int ) ( bs[ i ] / zScales[ level ] );
-			slice[ i ] = ( ( ( ( red << 8 ) | green ) << 8 ) | blue ) | 0xff000000;
+			for ( final Future< ? > f : futures )
+				f.cancel( true );
+			throw e;
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
 		}
 	}
 
-
 	@Override
-	public VolatileIntArray loadArray(
+	public Loaded< VolatileIntArray > load(
 			 final int timepoint,
 			 final int setup,
 			 final int level,
@@ -186,41 +298,66 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 	{
 		final int w = dimensions[ 0 ];
 		final int h = dimensions[ 1 ];
+		final int d = dimensions[ 2 ];
 		final long xm = min[ 0 ] + w;
 		final long ym = min[ 1 ] + h;
 		final double scale = 1.0 / Math.pow(2.0, level);
-		final int[] slice = new int[ w * h ];
+		final int sliceSize = w * h;
 
 		final long c0 = min[ 0 ] / tileWidth;
 		final long r0 = min[ 1 ] / tileHeight;
 		final long x0 = c0 * tileWidth;
 		final long y0 = r0 * tileHeight;
 
-		final int[] data;
-		if ( dimensions[ 2 ] > 1 )
+		final int zScale = zScales[ level ];
+		final int[] data = new int[ sliceSize * d ];
+		final List< Future< Boolean > > futures = new ArrayList<>();
+		final boolean complete;
+		if ( zScale > 1 )
 		{
-			data = new int[ w * h * dimensions[ 2 ] ];
-			final long[] zMin = min.clone();
-			for ( int z = 0; z < dimensions[ 2 ]; ++z )
-			{
-				zMin[ 2 ] = min[ 2 ] + z;
-				if ( zScales[ level ] > 1 )
-					averageSlice( slice, level, scale, c0, r0, x0, y0, xm, ym, zMin, w, h );
-				else
-					loadSliceArray( slice, level, scale, c0, r0, x0, y0, zMin[ 2 ], xm, ym, zMin, w, h );
-
-				System.arraycopy( slice, 0, data, z * slice.length, slice.length );
-			}
+			// one plane for each z-plane averaged into each slice of the cell
+			final int[] planes = new int[ sliceSize * d * zScale ];
+			Arrays.fill( planes, 0xff000000 );
+			for ( int z = 0; z < d; ++z )
+				for ( int dz = 0; dz < zScale; ++dz )
+					submitSliceTiles( futures, planes, ( z * zScale + dz ) * sliceSize, level, scale, c0, r0, x0, y0, ( min[ 2 ] + z ) * zScale + dz, xm, ym, min, w, h );
+			complete = awaitAll( futures );
+			averageSlices( planes, zScale, sliceSize, data );
 		}
 		else
 		{
-			data = slice;
-			if ( zScales[ level ] > 1 )
-				averageSlice( slice, level, scale, c0, r0, x0, y0, xm, ym, min, w, h );
-			else
-				loadSliceArray( slice, level, scale, c0, r0, x0, y0, min[ 2 ], xm, ym, min, w, h );
+			Arrays.fill( data, 0xff000000 );
+			for ( int z = 0; z < d; ++z )
+				submitSliceTiles( futures, data, z * sliceSize, level, scale, c0, r0, x0, y0, min[ 2 ] + z, xm, ym, min, w, h );
+			complete = awaitAll( futures );
 		}
 
-		return new VolatileIntArray( data, true );
+		return new Loaded<>( new VolatileIntArray( data, true ), complete );
+	}
+
+	/**
+	 * Average each run of {@code zScale} consecutive ARGB slices of size
+	 * {@code sliceSize} in {@code planes} into one slice of {@code data}.
+	 */
+	private static void averageSlices( final int[] planes, final int zScale, final int sliceSize, final int[] data )
+	{
+		for ( int o = 0, p = 0; o < data.length; o += sliceSize, p += zScale * sliceSize )
+		{
+			for ( int i = 0; i < sliceSize; ++i )
+			{
+				int r = 0, g = 0, b = 0;
+				for ( int j = p + i, e = p + zScale * sliceSize; j < e; j += sliceSize )
+				{
+					final int v = planes[ j ];
+					r += ( v >> 16 ) & 0xff;
+					g += ( v >> 8 ) & 0xff;
+					b += v & 0xff;
+				}
+				final int red = r / zScale;
+				final int green = g / zScale;
+				final int blue = b / zScale;
+				data[ o + i ] = ( ( ( ( red << 8 ) | green ) << 8 ) | blue ) | 0xff000000;
+			}
+		}
 	}
 }
@@ -83,7 +83,7 @@ class HDF5Access implements IHDF5Access
 	}
 
 	//local skeleton to be re-used in the front-ends below
-	private float[] readMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	private synchronized float[] readMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
 		if ( Thread.interrupted() )
 			throw new InterruptedException();
@@ -204,7 +204,7 @@ class HDF5AccessHack implements IHDF5Access
 		return dataBlock;
 	}
 
-	private float[] readMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	private synchronized float[] readMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
 	{
 		if ( Thread.interrupted() )
 			throw new InterruptedException();
@@ -46,9 +46,11 @@ import bdv.ViewerImgLoader;
 import bdv.export.Hdf5BlockWriterPixelTypes;
 import bdv.export.Hdf5BlockWriterPixelTypes.PixelTypeMaintainer;
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.ClientFetchQueues;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.util.ConstantRandomAccessible;
 import bdv.util.MipmapTransforms;
+import bdv.util.Prefs;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
@@ -111,6 +113,21 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 
 	protected FetcherThreads fetchers;
 
+	/**
+	 * How many {@link FetcherThreads} are serving the cache. Unless the loader
+	 * was created with an {@link #existingHdf5Reader}, each fetcher thread gets
+	 * its own reader handle on the hdf5 file (see {@link StripedHDF5Access}).
+	 * The default is taken from {@link Prefs#hdf5FetcherThreads()}.
+	 */
+	protected int numFetcherThreads = Prefs.hdf5FetcherThreads();
+
+	/**
+	 * Memory budget of the {@link #cache} in bytes, or a negative value to let
+	 * the garbage collector decide. The default is taken from
+	 * {@link Prefs#cacheMaxBytes()}.
+	 */
+	protected long maxCacheBytes = Prefs.cacheMaxBytes();
+
 	//was: protected Hdf5VolatileShortArrayLoader shortLoader;
 	//
 	//despite it is protected, i.e. might be used in some class derived from this one,
@@ -241,25 +258,99 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 
 				System.out.println("(r) voxel type: "+this.hdf5PixelType);
 
-				try
+				// An existing reader may belong to a writer that still has the
+				// file open, so we don't open additional handles in that case.
+				// Otherwise, every fetcher thread gets its own handle, and the
+				// handle opened above is shared by all other threads.
+				final BlockingFetchQueues< Callable< ? > > queue;
+				if ( existingHdf5Reader != null || numFetcherThreads == 1 )
 				{
-					hdf5Access = new HDF5AccessHack( hdf5Reader, pxM );
+					hdf5Access = createHdf5Access( hdf5Reader, pxM );
+					queue = new ClientFetchQueues<>( maxNumLevels );
 				}
-				catch ( final Exception e )
+				else
 				{
-					e.printStackTrace();
-					hdf5Access = new HDF5Access( hdf5Reader, pxM );
+					final IHDF5Access[] stripes = new IHDF5Access[ numFetcherThreads ];
+					for ( int i = 0; i < numFetcherThreads; ++i )
+						stripes[ i ] = createHdf5Access( HDF5Factory.openForReading( hdf5File ), pxM );
+					final StripedHDF5Access striped = new StripedHDF5Access( createHdf5Access( hdf5Reader, pxM ), stripes );
+					hdf5Access = striped;
+
+					// Only fetcher threads take from the queue, so this is
+					// where they are bound to their stripes.
+					queue = new ClientFetchQueues< Callable< ? > >( maxNumLevels )
+					{
+						@Override
+						public Callable< ? > take() throws InterruptedException
+						{
+							striped.bindFetcherThread();
+							return super.take();
+						}
+					};
 				}
 				//again, create appropriate type-specific implementation of the CacheArrayLoader<?>
 				volatileArrayLoader = pxM.createHdf5VolatileTypeArrayLoader( hdf5Access );
 
-				final BlockingFetchQueues< Callable< ? > > queue = new BlockingFetchQueues<>( maxNumLevels );
-				fetchers = new FetcherThreads( queue, 1 );
-				cache = new VolatileGlobalCellCache( queue );
+				fetchers = new FetcherThreads( queue, numFetcherThreads );
+				cache = new VolatileGlobalCellCache( queue, maxCacheBytes );
 			}
 		}
 	}
 
+	private static IHDF5Access createHdf5Access( final IHDF5Reader hdf5Reader, final PixelTypeMaintainer< ? > pxM )
+	{
+		try
+		{
+			return new HDF5AccessHack( hdf5Reader, pxM );
+		}
+		catch ( final Exception e )
+		{
+			e.printStackTrace();
+			return new HDF5Access( hdf5Reader, pxM );
+		}
+	}
+
+	/**
+	 * Set the number of fetcher threads (and hdf5 reader handles) used to load
+	 * cells. This takes effect the next time the hdf5 file is opened, i.e.,
+	 * it should be called before any images are requested (or after
+	 * {@link #close()}).
+	 *
+	 * @param numFetcherThreads
+	 *            how many threads should be created to load data.
+	 */
+	public void setNumFetcherThreads( final int numFetcherThreads )
+	{
+		if ( numFetcherThreads < 1 )
+			throw new IllegalArgumentException( "numFetcherThreads must be at least 1" );
+		this.numFetcherThreads = numFetcherThreads;
+	}
+
+	public int getNumFetcherThreads()
+	{
+		return numFetcherThreads;
+	}
+
+	/**
+	 * Set the memory budget of the cache of this loader. If the hdf5 file is
+	 * already open, the budget of its cache is changed immediately.
+	 *
+	 * @param maxCacheBytes
+	 *            the memory budget in bytes, or a negative value to let the
+	 *            garbage collector decide.
+	 */
+	public synchronized void setMaxCacheBytes( final long maxCacheBytes )
+	{
+		this.maxCacheBytes = maxCacheBytes;
+		if ( isOpen )
+			cache.setMaxCacheBytes( maxCacheBytes );
+	}
+
+	public synchronized long getMaxCacheBytes()
+	{
+		return maxCacheBytes;
+	}
+
 	/**
 	 * Clear the cache and close the hdf5 file. Images that were obtained from
 	 * this loader before {@link #close()} will stop working. Requesting images
@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link IHDF5Access} backed by several independent {@link IHDF5Access}
+ * instances, each with its own HDF5 reader handle on the same file. Fetcher
+ * threads {@link #bindFetcherThread() bind} to one stripe each and keep using
+ * it afterwards. Thus, with as many stripes as fetcher threads, every fetcher
+ * thread reads through its own handle and does not block on the other
+ * fetchers' {@code synchronized} access. All other threads (e.g., the painter
+ * thread querying image dimensions) share a separate handle.
+ */
+class StripedHDF5Access implements IHDF5Access
+{
+	private final IHDF5Access shared;
+
+	private final IHDF5Access[] stripes;
+
+	private final AtomicInteger nextStripe = new AtomicInteger();
+
+	private final ThreadLocal< IHDF5Access > threadStripe = new ThreadLocal< IHDF5Access >()
+	{
+		@Override
+		protected IHDF5Access initialValue()
+		{
+			return shared;
+		}
+	};
+
+	/**
+	 * @param shared
+	 *            access used by threads that are not bound to a stripe.
+	 * @param stripes
+	 *            one access per fetcher thread.
+	 */
+	public StripedHDF5Access( final IHDF5Access shared, final IHDF5Access[] stripes )
+	{
+		if ( stripes.length == 0 )
+			throw new IllegalArgumentException( "need at least one IHDF5Access stripe" );
+		this.shared = shared;
+		this.stripes = stripes;
+	}
+
+	public int numStripes()
+	{
+		return stripes.length;
+	}
+
+	/**
+	 * Bind the calling fetcher thread to the next unused stripe, unless it is
+	 * bound already. If more threads are bound than there are stripes, the
+	 * surplus threads use the shared access.
+	 */
+	public void bindFetcherThread()
+	{
+		if ( threadStripe.get() != shared )
+			return;
+		final int i = nextStripe.getAndIncrement();
+		if ( i < stripes.length )
+			threadStripe.set( stripes[ i ] );
+	}
+
+	private IHDF5Access stripe()
+	{
+		return threadStripe.get();
+	}
+
+	@Override
+	public DimsAndExistence getDimsAndExistence( final ViewLevelId id )
+	{
+		return stripe().getDimsAndExistence( id );
+	}
+
+	@Override
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return stripe().readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min );
+	}
+
+	@Override
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final byte[] dataBlock ) throws InterruptedException
+	{
+		return stripe().readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+	}
+
+	@Override
+	public float[] readByteMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return stripe().readByteMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min );
+	}
+
+	@Override
+	public float[] readByteMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		return stripe().readByteMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min, dataBlock );
+	}
+
+	@Override
+	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return stripe().readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min );
+	}
+
+	@Override
+	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final short[] dataBlock ) throws InterruptedException
+	{
+		return stripe().readShortMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+	}
+
+	@Override
+	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return stripe().readShortMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min );
+	}
+
+	@Override
+	public float[] readShortMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		return stripe().readShortMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min, dataBlock );
+	}
+
+	@Override
+	public float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return stripe().readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min );
+	}
+
+	@Override
+	public float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		return stripe().readFloatMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
+	}
+
+	@Override
+	public float[] readFloatMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		return stripe().readFloatMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min );
+	}
+
+	@Override
+	public float[] readFloatMDArrayBlockWithOffsetAsFloat( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		return stripe().readFloatMDArrayBlockWithOffsetAsFloat( timepoint, setup, level, dimensions, min, dataBlock );
+	}
+
+	@Override
+	public void closeAllDataSets()
+	{
+		shared.closeAllDataSets();
+		for ( final IHDF5Access access : stripes )
+			access.closeAllDataSets();
+	}
+
+	@Override
+	public void close()
+	{
+		shared.close();
+		for ( final IHDF5Access access : stripes )
+			access.close();
+	}
+}
@@ -41,6 +41,8 @@ import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.ViewerSetupImgLoader;
 import bdv.cache.CacheControl;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.DiskCachedArrayLoader;
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.img.cache.VolatileGlobalCellCache;
 import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
@@ -70,7 +72,7 @@ public class OpenConnectomeImageLoader extends AbstractViewerSetupImgLoader< Uns
 
 	private final VolatileGlobalCellCache cache;
 
-	private final OpenConnectomeVolatileArrayLoader loader;
+	private final CacheArrayLoader< VolatileByteArray > loader;
 
 	public OpenConnectomeImageLoader( final String baseUrl, final String token, final String mode )
 	{
@@ -88,11 +90,14 @@ public class OpenConnectomeImageLoader extends AbstractViewerSetupImgLoader< Uns
 		cache = new VolatileGlobalCellCache( numScales, 10 );
 		System.out.println( info.getOffsets( mode )[ 0 ][ 2 ] + " " + imageDimensions[ 0 ][ 2 ] );
 
-		loader = new OpenConnectomeVolatileArrayLoader(
-				baseUrl,
-				token,
-				mode,
-				Math.round( info.getOffsets( mode )[ 0 ][ 2 ] ) );
+		loader = DiskCachedArrayLoader.wrap(
+				new OpenConnectomeVolatileArrayLoader(
+						baseUrl,
+						token,
+						mode,
+						Math.round( info.getOffsets( mode )[ 0 ][ 2 ] ) ),
+				new VolatileByteArray( 0, false ),
+				baseUrl + "/" + token + "/" + mode );
 	}
 
 	/**
@@ -29,17 +29,19 @@
  */
 package bdv.img.openconnectome;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.FailureReportingArrayLoader;
+import net.imglib2.cache.iotiming.CacheIoTiming;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
-public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< VolatileByteArray >
+public class OpenConnectomeVolatileArrayLoader implements FailureReportingArrayLoader< VolatileByteArray >
 {
 	final private String tokenUrl;
 
@@ -47,6 +49,12 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 
 	final private long zMin;
 
+	/**
+	 * {@link Inflater} of each fetcher thread, reset and reused for every
+	 * cell.
+	 */
+	final private ThreadLocal< Inflater > inflaters = ThreadLocal.withInitial( Inflater::new );
+
 	/**
 	 * <p>Create a {@link CacheArrayLoader} for a source provided by the
 	 * <a href="http://hssl.cs.jhu.edu/wiki/doku.php?id=randal:hssl:research:brain:data_set_description">Open
@@ -82,7 +90,7 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 	}
 
 	@Override
-	public VolatileByteArray loadArray(
+	public Loaded< VolatileByteArray > load(
 			final int timepoint,
 			final int setup,
 			final int level,
@@ -91,12 +99,12 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 	{
 		try
 		{
-			return tryLoadArray( timepoint, setup, level, dimensions, min );
+			return tryLoad( timepoint, setup, level, dimensions, min );
 		}
 		catch ( final OutOfMemoryError e )
 		{
 			System.gc();
-			return tryLoadArray( timepoint, setup, level, dimensions, min );
+			return tryLoad( timepoint, setup, level, dimensions, min );
 		}
 	}
 
@@ -106,6 +114,16 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 			final int level,
 			final int[] dimensions,
 			final long[] min ) throws InterruptedException
+	{
+		return tryLoad( timepoint, setup, level, dimensions, min ).array;
+	}
+
+	private Loaded< VolatileByteArray > tryLoad(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min ) throws InterruptedException
 	{
 		final byte[] data = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
 
@@ -128,32 +146,39 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 		url.append( z + dimensions[ 2 ] );
 		url.append( mode );
 
+		final Inflater inflater = inflaters.get();
+		inflater.reset();
+		boolean complete = false;
 		try
 		{
 			final URL file = new URL( url.toString() );
-			final InputStream in = file.openStream();
-			final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-			final byte[] chunk = new byte[ 4096 ];
-			int l;
-			for ( l = in.read( chunk ); l > 0; l = in.read( chunk ) )
-			    byteStream.write( chunk, 0, l );
-
-			final byte[] zippedData = byteStream.toByteArray();
-			final Inflater inflater = new Inflater();
-			inflater.setInput( zippedData );
-			inflater.inflate( data );
-			inflater.end();
-			byteStream.close();
+			try ( final InputStream in = new InflaterInputStream( file.openStream(), inflater, 64 * 1024 ) )
+			{
+				int off = 0;
+				while ( off < data.length )
+				{
+					final int l = in.read( data, off, data.length - off );
+					if ( l < 0 )
+						break;
+					off += l;
+				}
+				complete = off == data.length;
+			}
+		}
+		catch ( final ZipException e )
+		{
+			System.out.println( "failed unpacking x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url.toString() + ")" );
 		}
 		catch ( final IOException e )
 		{
 			System.out.println( "failed loading x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url.toString() + ")" );
 		}
-		catch( final DataFormatException e )
+		finally
 		{
-			System.out.println( "failed unpacking x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url.toString() + ")" );
+			// compressed bytes transferred
+			CacheIoTiming.getIoStatistics().incIoBytes( inflater.getBytesRead() );
 		}
 
-		return new VolatileByteArray( data, true );
+		return new Loaded<>( new VolatileByteArray( data, true ), complete );
 	}
 }
@@ -38,17 +38,21 @@ import com.google.gson.GsonBuilder;
 
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.DiskCachedArrayLoader;
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.img.hdf5.DimsAndExistence;
 import bdv.img.hdf5.MipmapInfo;
 import bdv.img.hdf5.ViewLevelId;
 import bdv.util.ConstantRandomAccessible;
+import bdv.util.Prefs;
 import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.NativeType;
@@ -67,7 +71,18 @@ public class RemoteImageLoader implements ViewerImgLoader
 
 	protected VolatileGlobalCellCache cache;
 
-	protected RemoteVolatileShortArrayLoader shortLoader;
+	protected CacheArrayLoader< VolatileShortArray > shortLoader;
+
+	protected int numFetcherThreads = Prefs.remoteFetcherThreads();
+
+	protected int maxCellsPerRequest = Prefs.remoteCellsPerRequest();
+
+	/**
+	 * Memory budget of the {@link #cache} in bytes, or a negative value to let
+	 * the garbage collector decide. The default is taken from
+	 * {@link Prefs#cacheMaxBytes()}.
+	 */
+	protected long maxCacheBytes = Prefs.cacheMaxBytes();
 
 	/**
 	 * TODO
@@ -112,8 +127,11 @@ public class RemoteImageLoader implements ViewerImgLoader
 				metadata = gsonBuilder.create().fromJson(
 						new InputStreamReader( url.openStream() ),
 						RemoteImageLoaderMetaData.class );
-				shortLoader = new RemoteVolatileShortArrayLoader( this );
-				cache = new VolatileGlobalCellCache( metadata.maxNumLevels, 10 );
+				shortLoader = DiskCachedArrayLoader.wrap(
+						new RemoteVolatileShortArrayLoader( this, maxCellsPerRequest, Prefs.remoteConcurrentRequests() ),
+						new VolatileShortArray( 0, false ),
+						baseUrl );
+				cache = new VolatileGlobalCellCache( metadata.maxNumLevels, numFetcherThreads, maxCacheBytes );
 				cellsDimensions = metadata.createCellsDimensions();
 				for ( final int setupId : metadata.perSetupMipmapInfo.keySet() )
 					setupImgLoaders.put( setupId, new SetupImgLoader( setupId ) );
@@ -140,6 +158,61 @@ public class RemoteImageLoader implements ViewerImgLoader
 		return cache;
 	}
 
+	/**
+	 * Set the number of threads that fetch cells from the server. This must be
+	 * called before the loader is opened, i.e., before any images are
+	 * requested, to have an effect.
+	 *
+	 * @param numFetcherThreads
+	 *            how many threads should be created to load data.
+	 */
+	public void setNumFetcherThreads( final int numFetcherThreads )
+	{
+		if ( numFetcherThreads < 1 )
+			throw new IllegalArgumentException( "numFetcherThreads must be at least 1" );
+		this.numFetcherThreads = numFetcherThreads;
+	}
+
+	public int getNumFetcherThreads()
+	{
+		return numFetcherThreads;
+	}
+
+	/**
+	 * Set the memory budget of the cache of this loader. If the loader is
+	 * already open, the budget of its cache is changed immediately.
+	 *
+	 * @param maxCacheBytes
+	 *            the memory budget in bytes, or a negative value to let the
+	 *            garbage collector decide.
+	 */
+	public synchronized void setMaxCacheBytes( final long maxCacheBytes )
+	{
+		this.maxCacheBytes = maxCacheBytes;
+		if ( cache != null )
+			cache.setMaxCacheBytes( maxCacheBytes );
+	}
+
+	public synchronized long getMaxCacheBytes()
+	{
+		return maxCacheBytes;
+	}
+
+	/**
+	 * Set how many cells are coalesced at most into one {@code cells} request
+	 * to the server. Values &le; 1 disable batching. This must be called before
+	 * the loader is opened to have an effect.
+	 */
+	public void setMaxCellsPerRequest( final int maxCellsPerRequest )
+	{
+		this.maxCellsPerRequest = maxCellsPerRequest;
+	}
+
+	public int getMaxCellsPerRequest()
+	{
+		return maxCellsPerRequest;
+	}
+
 	public MipmapInfo getMipmapInfo( final int setupId )
 	{
 		tryopen();
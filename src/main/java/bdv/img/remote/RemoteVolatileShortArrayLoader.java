@@ -29,62 +29,296 @@
  */
 package bdv.img.remote;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
-import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.FailureReportingArrayLoader;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
 
-public class RemoteVolatileShortArrayLoader implements CacheArrayLoader< VolatileShortArray >
+/**
+ * Loads {@code short} cells from a BigDataViewer server.
+ * <p>
+ * Cells are requested with {@code ?p=cell/index/t/s/l/d0/d1/d2/m0/m1/m2},
+ * where {@code index} is the cell index within the level, {@code t},
+ * {@code s}, {@code l} are timepoint, setup, and level, {@code d} are cell
+ * dimensions, and {@code m} is the cell min. The response is the cell data as
+ * big-endian shorts.
+ * <p>
+ * If {@code maxCellsPerRequest > 1}, concurrent cell requests (from several
+ * fetcher threads) are coalesced into one {@code ?p=cells/...} request, whose
+ * path is the concatenation of the 10 parameters of each cell. The response
+ * is the concatenated data of all cells, in request order. At most
+ * {@code maxConcurrentRequests} requests are in flight at any time. Cells
+ * that are requested while all requests are in flight are queued and sent
+ * together in the next request. If the server answers a {@code cells} request
+ * with {@code 404 Not Found} or {@code 400 Bad Request} (before any
+ * {@code cells} request succeeded), it presumably doesn't understand
+ * {@code cells} requests, and the loader falls back to one request per cell.
+ * Other failures only affect the cells of the failed request, which are then
+ * requested one by one.
+ * <p>
+ * Cells that cannot be fetched are filled with zeros and reported as
+ * incomplete.
+ */
+public class RemoteVolatileShortArrayLoader implements FailureReportingArrayLoader< VolatileShortArray >
 {
 	private final RemoteImageLoader imgLoader;
 
+	private final int maxCellsPerRequest;
+
+	private final int maxConcurrentRequests;
+
+	/**
+	 * Queued cell requests that are not yet sent. Guarded by {@code queue}.
+	 */
+	private final ArrayDeque< CellRequest > queue = new ArrayDeque<>();
+
+	/**
+	 * Number of requests currently in flight. Guarded by {@code queue}.
+	 */
+	private int numRequestsInFlight = 0;
+
+	/**
+	 * Set to {@code true} when a {@code cells} request succeeded, and to
+	 * {@code false} if the server rejected one as unknown before any
+	 * succeeded.
+	 */
+	private volatile Boolean batchingSupported = null;
+
 	public RemoteVolatileShortArrayLoader( final RemoteImageLoader imgLoader )
+	{
+		this( imgLoader, 1, 1 );
+	}
+
+	/**
+	 * @param imgLoader
+	 *            the image loader.
+	 * @param maxCellsPerRequest
+	 *            how many cells to request at most in a single
+	 *            {@code cells} request. Values &le; 1 disable batching.
+	 * @param maxConcurrentRequests
+	 *            how many batched requests may be in flight at the same time.
+	 */
+	public RemoteVolatileShortArrayLoader( final RemoteImageLoader imgLoader, final int maxCellsPerRequest, final int maxConcurrentRequests )
 	{
 		this.imgLoader = imgLoader;
+		this.maxCellsPerRequest = maxCellsPerRequest;
+		this.maxConcurrentRequests = Math.max( 1, maxConcurrentRequests );
+	}
+
+	@Override
+	public Loaded< VolatileShortArray > load( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	{
+		final CellRequest request = new CellRequest( timepoint, setup, level, dimensions, min );
+		if ( maxCellsPerRequest > 1 && batchingSupported != Boolean.FALSE )
+			loadBatched( request );
+		else
+			loadSingle( request );
+		return new Loaded<>( new VolatileShortArray( request.data, true ), !request.failed );
 	}
 
 	@Override
-	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	public int getBytesPerElement() {
+		return 2;
+	}
+
+	private void loadSingle( final CellRequest request )
 	{
-		final int index = imgLoader.getCellIndex( timepoint, setup, level, min );
-		final short[] data = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
 		try
 		{
-			final URL url = new URL( String.format( "%s?p=cell/%d/%d/%d/%d/%d/%d/%d/%d/%d/%d",
-					imgLoader.baseUrl,
-					index,
-					timepoint,
-					setup,
-					level,
-					dimensions[ 0 ],
-					dimensions[ 1 ],
-					dimensions[ 2 ],
-					min[ 0 ],
-					min[ 1 ],
-					min[ 2 ] ) );
-			final InputStream s = url.openStream();
-			final byte[] buf = new byte[ data.length * 2 ];
-			for ( int i = 0, l = s.read( buf, 0, buf.length ); l > 0; i += l, l = s.read( buf, i, buf.length - i ) );
-			for ( int i = 0, j = 0; i < data.length; ++i, j += 2 )
-				data[ i ] = ( short ) ( ( ( buf[ j ] & 0xff ) << 8 ) | ( buf[ j + 1 ] & 0xff ) );
-			s.close();
+			final URL url = new URL( String.format( "%s?p=cell/%s", imgLoader.baseUrl, request.path() ) );
+			try ( final InputStream s = url.openStream() )
+			{
+				readCell( new DataInputStream( s ), request.data );
+			}
 		}
 		catch ( final MalformedURLException e )
 		{
 			e.printStackTrace();
+			request.failed = true;
 		}
 		catch ( final IOException e )
 		{
 			e.printStackTrace();
+			request.failed = true;
 		}
-		return new VolatileShortArray( data, true );
 	}
 
-	@Override
-	public int getBytesPerElement() {
-		return 2;
+	/**
+	 * Queue {@code request} and wait until it is loaded. If there is capacity
+	 * for another request in flight while {@code request} is still queued, the
+	 * calling thread sends a {@code cells} request for {@code request} and
+	 * other queued cells.
+	 */
+	private void loadBatched( final CellRequest request ) throws InterruptedException
+	{
+		final List< CellRequest > batch = new ArrayList<>();
+		synchronized ( queue )
+		{
+			queue.add( request );
+			try
+			{
+				while ( !request.done && ( request.sent || numRequestsInFlight >= maxConcurrentRequests ) )
+					queue.wait();
+			}
+			catch ( final InterruptedException e )
+			{
+				if ( !request.sent )
+					queue.remove( request );
+				throw e;
+			}
+			if ( request.done )
+				return;
+
+			queue.remove( request );
+			request.sent = true;
+			batch.add( request );
+			while ( batch.size() < maxCellsPerRequest && !queue.isEmpty() )
+			{
+				final CellRequest r = queue.poll();
+				r.sent = true;
+				batch.add( r );
+			}
+			++numRequestsInFlight;
+		}
+
+		try
+		{
+			loadBatch( batch );
+		}
+		finally
+		{
+			synchronized ( queue )
+			{
+				for ( final CellRequest r : batch )
+					r.done = true;
+				--numRequestsInFlight;
+				queue.notifyAll();
+			}
+		}
+	}
+
+	private void loadBatch( final List< CellRequest > batch )
+	{
+		if ( batch.size() == 1 || batchingSupported == Boolean.FALSE )
+		{
+			for ( final CellRequest r : batch )
+				loadSingle( r );
+			return;
+		}
+
+		final StringBuilder path = new StringBuilder();
+		for ( final CellRequest r : batch )
+			path.append( '/' ).append( r.path() );
+		try
+		{
+			final URL url = new URL( String.format( "%s?p=cells%s", imgLoader.baseUrl, path ) );
+			final URLConnection connection = url.openConnection();
+			if ( connection instanceof HttpURLConnection && batchingSupported == null )
+			{
+				final HttpURLConnection http = ( HttpURLConnection ) connection;
+				final int status = http.getResponseCode();
+				if ( status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_BAD_REQUEST )
+				{
+					final InputStream err = http.getErrorStream();
+					if ( err != null )
+						err.close();
+					System.err.println( "Server does not support batched cell requests. Falling back to one request per cell." );
+					batchingSupported = Boolean.FALSE;
+					for ( final CellRequest r : batch )
+						loadSingle( r );
+					return;
+				}
+			}
+			try ( final InputStream s = connection.getInputStream() )
+			{
+				final DataInputStream in = new DataInputStream( s );
+				for ( final CellRequest r : batch )
+					readCell( in, r.data );
+			}
+			batchingSupported = Boolean.TRUE;
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			for ( final CellRequest r : batch )
+				loadSingle( r );
+		}
+	}
+
+	/**
+	 * Read big-endian shorts from {@code in} to fill {@code data}.
+	 */
+	private static void readCell( final DataInputStream in, final short[] data ) throws IOException
+	{
+		final byte[] buf = new byte[ data.length * 2 ];
+		in.readFully( buf );
+		ByteBuffer.wrap( buf ).asShortBuffer().get( data );
+	}
+
+	private class CellRequest
+	{
+		final int timepoint;
+
+		final int setup;
+
+		final int level;
+
+		final int[] dimensions;
+
+		final long[] min;
+
+		final short[] data;
+
+		/**
+		 * Whether this cell has been taken from the queue to be sent. Guarded
+		 * by {@code queue}.
+		 */
+		boolean sent = false;
+
+		/**
+		 * Whether {@link #data} has been loaded. Guarded by {@code queue}.
+		 */
+		boolean done = false;
+
+		/**
+		 * Whether fetching {@link #data} failed. Written by the thread that
+		 * loads this request, before {@link #done} is set.
+		 */
+		boolean failed = false;
+
+		CellRequest( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min )
+		{
+			this.timepoint = timepoint;
+			this.setup = setup;
+			this.level = level;
+			this.dimensions = dimensions;
+			this.min = min;
+			data = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		}
+
+		String path()
+		{
+			return String.format( "%d/%d/%d/%d/%d/%d/%d/%d/%d/%d",
+					imgLoader.getCellIndex( timepoint, setup, level, min ),
+					timepoint,
+					setup,
+					level,
+					dimensions[ 0 ],
+					dimensions[ 1 ],
+					dimensions[ 2 ],
+					min[ 0 ],
+					min[ 1 ],
+					min[ 2 ] );
+		}
 	}
 }
@@ -65,7 +65,7 @@ public class RealARGBColorConverterSetup implements ConverterSetup
 			converter.setMax( max );
 		}
 		if ( viewer != null )
-			viewer.requestRepaint();
+			viewer.requestConverterRepaint();
 	}
 
 	@Override
@@ -74,7 +74,7 @@ public class RealARGBColorConverterSetup implements ConverterSetup
 		for ( final ColorConverter converter : converters )
 			converter.setColor( color );
 		if ( viewer != null )
-			viewer.requestRepaint();
+			viewer.requestConverterRepaint();
 	}
 
 	@Override
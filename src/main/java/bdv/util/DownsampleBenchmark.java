@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import bdv.export.Downsample;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.RectangleNeighborhoodFactory;
+import net.imglib2.algorithm.neighborhood.RectangleNeighborhoodUnsafe;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+/**
+ * Compare the speed of
+ * {@link Downsample#downsample(RandomAccessible, RandomAccessibleInterval, int[], ExecutorService, int)}
+ * with the previous per-pixel neighborhood implementation, and check that both
+ * give the same result.
+ * <p>
+ * Usage: {@code DownsampleBenchmark [size] [factor] [numThreads]}. A random
+ * {@code size^3} {@link UnsignedShortType} image is downsampled by
+ * {@code factor} in every dimension. Each variant is run several times, and
+ * the best time is reported.
+ */
+public class DownsampleBenchmark
+{
+	public static void main( final String[] args ) throws InterruptedException
+	{
+		final int size = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 256;
+		final int f = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 2;
+		final int numThreads = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : Runtime.getRuntime().availableProcessors();
+		final int numRuns = 5;
+
+		final ArrayImg< UnsignedShortType, ShortArray > input = ArrayImgs.unsignedShorts( size, size, size );
+		final Random random = new Random( 1 );
+		for ( final UnsignedShortType t : input )
+			t.set( random.nextInt( 65536 ) );
+		final int[] factor = new int[] { f, f, f };
+		final long os = size / f;
+
+		final ArrayImg< UnsignedShortType, ShortArray > reference = ArrayImgs.unsignedShorts( os, os, os );
+		long best = Long.MAX_VALUE;
+		for ( int i = 0; i < numRuns; ++i )
+		{
+			final long t0 = System.nanoTime();
+			downsampleNeighborhood( input, reference, factor );
+			best = Math.min( best, System.nanoTime() - t0 );
+		}
+		System.out.println( String.format( "neighborhood, 1 thread:      %8.1f ms", best / 1e6 ) );
+
+		final ExecutorService ex = Executors.newFixedThreadPool( numThreads );
+		for ( final int threads : new int[] { 1, numThreads } )
+		{
+			final ArrayImg< UnsignedShortType, ShortArray > output = ArrayImgs.unsignedShorts( os, os, os );
+			best = Long.MAX_VALUE;
+			for ( int i = 0; i < numRuns; ++i )
+			{
+				final long t0 = System.nanoTime();
+				Downsample.downsample( input, output, factor, ex, threads );
+				best = Math.min( best, System.nanoTime() - t0 );
+			}
+			System.out.println( String.format( "separable, %2d thread(s):     %8.1f ms", threads, best / 1e6 ) );
+
+			final Cursor< UnsignedShortType > c = output.cursor();
+			final Cursor< UnsignedShortType > r = reference.cursor();
+			long numDifferent = 0;
+			while ( c.hasNext() )
+				if ( c.next().get() != r.next().get() )
+					++numDifferent;
+			if ( numDifferent != 0 )
+				System.out.println( "  " + numDifferent + " pixels differ from the neighborhood implementation" );
+		}
+		ex.shutdown();
+	}
+
+	/**
+	 * The previous implementation of
+	 * {@link Downsample#downsample(RandomAccessible, RandomAccessibleInterval, int[])},
+	 * iterating a rectangle neighborhood for every output pixel.
+	 */
+	private static < T extends RealType< T > > void downsampleNeighborhood( final RandomAccessible< T > input, final RandomAccessibleInterval< T > output, final int[] factor )
+	{
+		final int n = input.numDimensions();
+		final RectangleNeighborhoodFactory< T > f = RectangleNeighborhoodUnsafe.< T >factory();
+		final long[] dim = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+			dim[ d ] = factor[ d ];
+		final Interval spanInterval = new FinalInterval( dim );
+
+		final long[] minRequiredInput = new long[ n ];
+		final long[] maxRequiredInput = new long[ n ];
+		output.min( minRequiredInput );
+		output.max( maxRequiredInput );
+		for ( int d = 0; d < n; ++d )
+		{
+			minRequiredInput[ d ] *= factor[ d ];
+			maxRequiredInput[ d ] *= factor[ d ];
+			maxRequiredInput[ d ] += factor[ d ] - 1;
+		}
+		final RandomAccessibleInterval< T > requiredInput = Views.interval( input, new FinalInterval( minRequiredInput, maxRequiredInput ) );
+
+		final RectangleShape.NeighborhoodsAccessible< T > neighborhoods = new RectangleShape.NeighborhoodsAccessible<>( requiredInput, spanInterval, f );
+		final RandomAccess< Neighborhood< T > > block = neighborhoods.randomAccess();
+
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+			size *= factor[ d ];
+		final double scale = 1.0 / size;
+
+		final Cursor< T > out = Views.iterable( output ).localizingCursor();
+		while( out.hasNext() )
+		{
+			final T o = out.next();
+			for ( int d = 0; d < n; ++d )
+				block.setPosition( out.getLongPosition( d ) * factor[ d ], d );
+			double sum = 0;
+			for ( final T i : block.get() )
+				sum += i.getRealDouble();
+			o.setReal( sum * scale );
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import bdv.cache.CacheControl.LoadListener;
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.img.hdf5.Hdf5ImageLoader;
+import bdv.img.hdf5.ViewLevelId;
+import bdv.spimdata.SequenceDescriptionMinimal;
+import bdv.spimdata.SpimDataMinimal;
+import bdv.spimdata.XmlIoSpimDataMinimal;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import net.imglib2.Cursor;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Measure how many cells per second can be loaded from a BDV hdf5 dataset with
+ * a varying number of fetcher threads (and hdf5 reader handles, see
+ * {@link Hdf5ImageLoader#setNumFetcherThreads(int)}). Cells are requested
+ * through the cache of the loader, so that they are loaded by its fetcher
+ * threads exactly as they would be for a viewer.
+ * <p>
+ * Usage: {@code Hdf5CellLoadingBenchmark dataset.xml [maxNumThreads]}. All
+ * cells of the full resolution level of the first timepoint are read once for
+ * every thread count 1, 2, 4, ..., maxNumThreads. Note that the OS file cache
+ * will be warm after the first run, so the results show the best case where
+ * reading is not limited by disk bandwidth.
+ */
+public class Hdf5CellLoadingBenchmark
+{
+	public static void benchmark( final String xmlFilename, final int maxNumThreads ) throws Exception
+	{
+		for ( int numThreads = 1; numThreads <= maxNumThreads; numThreads *= 2 )
+		{
+			final SpimDataMinimal spimData = new XmlIoSpimDataMinimal().load( xmlFilename );
+			final SequenceDescriptionMinimal seq = spimData.getSequenceDescription();
+			if ( !( seq.getImgLoader() instanceof Hdf5ImageLoader ) )
+			{
+				System.err.println( "not a hdf5 dataset" );
+				return;
+			}
+			final Hdf5ImageLoader imgLoader = ( Hdf5ImageLoader ) seq.getImgLoader();
+			imgLoader.close();
+			imgLoader.setNumFetcherThreads( numThreads );
+
+			final long[] elapsedAndCells = run( imgLoader, seq );
+			final double cellsPerSecond = 1000.0 * elapsedAndCells[ 1 ] / Math.max( 1, elapsedAndCells[ 0 ] );
+			System.out.println( String.format( "%3d threads: %8d cells in %6d ms, %10.1f cells/s",
+					numThreads, elapsedAndCells[ 1 ], elapsedAndCells[ 0 ], cellsPerSecond ) );
+			imgLoader.close();
+		}
+	}
+
+	private static long[] run( final Hdf5ImageLoader imgLoader, final SequenceDescriptionMinimal seq ) throws InterruptedException
+	{
+		final VolatileGlobalCellCache cache = imgLoader.getCacheControl();
+		final CacheArrayLoader< ? > loader = imgLoader.getShortArrayLoader();
+		final int timepointId = seq.getTimePoints().getTimePointsOrdered().get( 0 ).getId();
+		final int level = 0;
+
+		final List< VolatileCachedCellImg< ?, ? > > imgs = new ArrayList<>();
+		long numCells = 0;
+		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
+		{
+			final int setupId = setup.getId();
+			final ViewLevelId id = new ViewLevelId( timepointId, setupId, level );
+			if ( !imgLoader.existsImageData( id ) )
+				continue;
+			final long[] dimensions = imgLoader.getDimsAndExistence( id ).getDimensions();
+			final int[] cellDimensions = imgLoader.getSetupImgLoader( setupId ).getMipmapInfo().getSubdivisions()[ level ];
+			final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+			imgs.add( createImg( cache, grid, timepointId, setupId, level, loader ) );
+			numCells += Intervals.numElements( grid.getGridDimensions() );
+		}
+
+		// Cells are requested with LoadingStrategy.VOLATILE, so they are
+		// loaded by the fetcher threads of the loader, each reading through
+		// its own hdf5 handle. The listener counts the loaded cells.
+		final CountDownLatch remaining = new CountDownLatch( Math.toIntExact( numCells ) );
+		final LoadListener listener = remaining::countDown;
+		cache.addLoadListener( listener );
+		final long t0 = System.currentTimeMillis();
+		for ( final VolatileCachedCellImg< ?, ? > img : imgs )
+		{
+			final Cursor< ? > cells = img.getCells().cursor();
+			while ( cells.hasNext() )
+				cells.next();
+		}
+		remaining.await();
+		final long t1 = System.currentTimeMillis();
+		cache.removeLoadListener( listener );
+		return new long[] { t1 - t0, numCells };
+	}
+
+	private static < A > VolatileCachedCellImg< VolatileUnsignedShortType, A > createImg(
+			final VolatileGlobalCellCache cache,
+			final CellGrid grid,
+			final int timepointId,
+			final int setupId,
+			final int level,
+			final CacheArrayLoader< A > loader )
+	{
+		final CacheHints cacheHints = new CacheHints( LoadingStrategy.VOLATILE, level, false );
+		return cache.createImg( grid, timepointId, setupId, level, cacheHints, loader, new VolatileUnsignedShortType() );
+	}
+
+	public static void main( final String[] args ) throws Exception
+	{
+		if ( args.length < 1 )
+		{
+			System.err.println( "usage: Hdf5CellLoadingBenchmark dataset.xml [maxNumThreads]" );
+			return;
+		}
+		final int maxNumThreads = args.length > 1
+				? Integer.parseInt( args[ 1 ] )
+				: Runtime.getRuntime().availableProcessors();
+		benchmark( args[ 0 ], maxNumThreads );
+	}
+}
@@ -67,6 +67,51 @@ public class Prefs
 		return getInstance().scaleBarBgColor;
 	}
 
+	public static int hdf5FetcherThreads()
+	{
+		return getInstance().hdf5FetcherThreads;
+	}
+
+	public static int remoteFetcherThreads()
+	{
+		return getInstance().remoteFetcherThreads;
+	}
+
+	public static int remoteCellsPerRequest()
+	{
+		return getInstance().remoteCellsPerRequest;
+	}
+
+	public static int remoteConcurrentRequests()
+	{
+		return getInstance().remoteConcurrentRequests;
+	}
+
+	public static int catmaidTileFetcherThreads()
+	{
+		return getInstance().catmaidTileFetcherThreads;
+	}
+
+	public static long cacheMaxBytes()
+	{
+		return getInstance().cacheMaxBytes;
+	}
+
+	public static long cacheOffHeapMaxBytes()
+	{
+		return getInstance().cacheOffHeapMaxBytes;
+	}
+
+	public static String diskCacheDir()
+	{
+		return getInstance().diskCacheDir;
+	}
+
+	public static long diskCacheMaxBytes()
+	{
+		return getInstance().diskCacheMaxBytes;
+	}
+
 	public static void showScaleBar( final boolean show )
 	{
 		getInstance().showScaleBar = show;
@@ -97,6 +142,51 @@ public class Prefs
 		getInstance().scaleBarBgColor = color;
 	}
 
+	public static void hdf5FetcherThreads( final int numThreads )
+	{
+		getInstance().hdf5FetcherThreads = numThreads;
+	}
+
+	public static void remoteFetcherThreads( final int numThreads )
+	{
+		getInstance().remoteFetcherThreads = numThreads;
+	}
+
+	public static void remoteCellsPerRequest( final int numCells )
+	{
+		getInstance().remoteCellsPerRequest = numCells;
+	}
+
+	public static void remoteConcurrentRequests( final int numRequests )
+	{
+		getInstance().remoteConcurrentRequests = numRequests;
+	}
+
+	public static void catmaidTileFetcherThreads( final int numThreads )
+	{
+		getInstance().catmaidTileFetcherThreads = numThreads;
+	}
+
+	public static void cacheMaxBytes( final long maxBytes )
+	{
+		getInstance().cacheMaxBytes = maxBytes;
+	}
+
+	public static void cacheOffHeapMaxBytes( final long maxBytes )
+	{
+		getInstance().cacheOffHeapMaxBytes = maxBytes;
+	}
+
+	public static void diskCacheDir( final String dir )
+	{
+		getInstance().diskCacheDir = dir;
+	}
+
+	public static void diskCacheMaxBytes( final long maxBytes )
+	{
+		getInstance().diskCacheMaxBytes = maxBytes;
+	}
+
 	private static Prefs instance;
 
 	public static Prefs getInstance()
@@ -114,6 +204,15 @@ public class Prefs
 	private static final String SHOW_SCALE_BAR_IN_MOVIE = "show-scale-bar-in-movie";
 	private static final String SCALE_BAR_COLOR = "scale-bar-color";
 	private static final String SCALE_BAR_BG_COLOR = "scale-bar-bg-color";
+	private static final String HDF5_FETCHER_THREADS = "hdf5-fetcher-threads";
+	private static final String REMOTE_FETCHER_THREADS = "remote-fetcher-threads";
+	private static final String REMOTE_CELLS_PER_REQUEST = "remote-cells-per-request";
+	private static final String REMOTE_CONCURRENT_REQUESTS = "remote-concurrent-requests";
+	private static final String CATMAID_TILE_FETCHER_THREADS = "catmaid-tile-fetcher-threads";
+	private static final String CACHE_MAX_BYTES = "cache-max-bytes";
+	private static final String CACHE_OFF_HEAP_MAX_BYTES = "cache-off-heap-max-bytes";
+	private static final String DISK_CACHE_DIR = "disk-cache-dir";
+	private static final String DISK_CACHE_MAX_BYTES = "disk-cache-max-bytes";
 
 	private boolean showScaleBar;
 	private boolean showMultibox;
@@ -121,6 +220,15 @@ public class Prefs
 	private boolean showScaleBarInMovie;
 	private int scaleBarColor;
 	private int scaleBarBgColor;
+	private int hdf5FetcherThreads;
+	private int remoteFetcherThreads;
+	private int remoteCellsPerRequest;
+	private int remoteConcurrentRequests;
+	private int catmaidTileFetcherThreads;
+	private long cacheMaxBytes;
+	private long cacheOffHeapMaxBytes;
+	private String diskCacheDir;
+	private long diskCacheMaxBytes;
 
 	private Prefs( final Properties p )
 	{
@@ -130,6 +238,15 @@ public class Prefs
 		showScaleBarInMovie = getBoolean( p, SHOW_SCALE_BAR_IN_MOVIE, false );
 		scaleBarColor = getInt( p, SCALE_BAR_COLOR, 0xffffffff );
 		scaleBarBgColor = getInt( p, SCALE_BAR_BG_COLOR, 0x88000000 );
+		hdf5FetcherThreads = Math.max( 1, getInt( p, HDF5_FETCHER_THREADS, Math.min( 4, Runtime.getRuntime().availableProcessors() ) ) );
+		remoteFetcherThreads = Math.max( 1, getInt( p, REMOTE_FETCHER_THREADS, 10 ) );
+		remoteCellsPerRequest = getInt( p, REMOTE_CELLS_PER_REQUEST, 1 );
+		remoteConcurrentRequests = Math.max( 1, getInt( p, REMOTE_CONCURRENT_REQUESTS, 2 ) );
+		catmaidTileFetcherThreads = Math.max( 1, getInt( p, CATMAID_TILE_FETCHER_THREADS, 16 ) );
+		cacheMaxBytes = getLong( p, CACHE_MAX_BYTES, -1 );
+		cacheOffHeapMaxBytes = getLong( p, CACHE_OFF_HEAP_MAX_BYTES, 0 );
+		diskCacheDir = getString( p, DISK_CACHE_DIR, "" );
+		diskCacheMaxBytes = getLong( p, DISK_CACHE_MAX_BYTES, 10L << 30 );
 	}
 
 	private boolean getBoolean( final Properties p, final String key, final boolean defaultValue )
@@ -138,6 +255,12 @@ public class Prefs
 		return ( property != null ) ? Boolean.parseBoolean( property ) : defaultValue;
 	}
 
+	private String getString( final Properties p, final String key, final String defaultValue )
+	{
+		final String property = ( p != null ) ? p.getProperty( key ) : null;
+		return ( property != null ) ? property.trim() : defaultValue;
+	}
+
 	private int getInt( final Properties p, final String key, final int defaultValue )
 	{
 		try
@@ -152,6 +275,20 @@ public class Prefs
 		}
 	}
 
+	private long getLong( final Properties p, final String key, final long defaultValue )
+	{
+		try
+		{
+			final String property = ( p != null ) ? p.getProperty( key ) : null;
+			return ( property != null ) ? Long.decode( property ).longValue() : defaultValue;
+		}
+		catch ( final NumberFormatException e )
+		{
+			e.printStackTrace();
+			return defaultValue;
+		}
+	}
+
 	private double getDouble( final Properties p, final String key, final double defaultValue )
 	{
 		try
@@ -211,6 +348,15 @@ public class Prefs
 		properties.put( SHOW_SCALE_BAR_IN_MOVIE, "" + prefs.showScaleBarInMovie );
 		properties.put( SCALE_BAR_COLOR, "" + prefs.scaleBarColor );
 		properties.put( SCALE_BAR_BG_COLOR, "" + prefs.scaleBarBgColor );
+		properties.put( HDF5_FETCHER_THREADS, "" + prefs.hdf5FetcherThreads );
+		properties.put( REMOTE_FETCHER_THREADS, "" + prefs.remoteFetcherThreads );
+		properties.put( REMOTE_CELLS_PER_REQUEST, "" + prefs.remoteCellsPerRequest );
+		properties.put( REMOTE_CONCURRENT_REQUESTS, "" + prefs.remoteConcurrentRequests );
+		properties.put( CATMAID_TILE_FETCHER_THREADS, "" + prefs.catmaidTileFetcherThreads );
+		properties.put( CACHE_MAX_BYTES, "" + prefs.cacheMaxBytes );
+		properties.put( CACHE_OFF_HEAP_MAX_BYTES, "" + prefs.cacheOffHeapMaxBytes );
+		properties.put( DISK_CACHE_DIR, prefs.diskCacheDir );
+		properties.put( DISK_CACHE_MAX_BYTES, "" + prefs.diskCacheMaxBytes );
 		return properties;
 	}
 
@@ -35,4 +35,15 @@ public interface RequestRepaint
 	 * Repaint as soon as possible.
 	 */
 	public void requestRepaint();
+
+	/**
+	 * Repaint as soon as possible, after only converter settings (display
+	 * range, color) have changed. Implementations may use this to avoid
+	 * resampling the sources. The default implementation calls
+	 * {@link #requestRepaint()}.
+	 */
+	public default void requestConverterRepaint()
+	{
+		requestRepaint();
+	}
 }
@@ -39,6 +39,9 @@ import bdv.viewer.animate.MessageOverlayAnimator;
 import bdv.viewer.render.AccumulateProjector;
 import bdv.viewer.render.AccumulateProjectorARGB;
 import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.AdaptiveFrameScheduler;
+import bdv.viewer.render.FrameScheduler;
+import bdv.viewer.render.FrameSchedulerFactory;
 import bdv.viewer.render.MultiResolutionRenderer;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
@@ -189,6 +192,37 @@ public class ViewerOptions
 		return this;
 	}
 
+	/**
+	 * Set the factory for creating the {@link FrameScheduler} that chooses
+	 * the screen scale at which rendering starts and the IO budget.
+	 *
+	 * @param f
+	 *            factory for creating {@link FrameScheduler}.
+	 * @see MultiResolutionRenderer
+	 */
+	public ViewerOptions frameSchedulerFactory( final FrameSchedulerFactory f )
+	{
+		values.frameSchedulerFactory = f;
+		return this;
+	}
+
+	/**
+	 * Set how many sources must be visible for combining them directly in a
+	 * single pass, without rendering each source to a separate image. This
+	 * is only used with the default {@link AccumulateProjectorFactory} and
+	 * if all sources are volatile.
+	 *
+	 * @param n
+	 *            minimum number of visible sources for fused rendering.
+	 *            Non-positive values disable fused rendering.
+	 * @see MultiResolutionRenderer
+	 */
+	public ViewerOptions fusedAccumulationThreshold( final int n )
+	{
+		values.fusedAccumulationThreshold = n;
+		return this;
+	}
+
 	/**
 	 * Set the {@link InputTriggerConfig} from which keyboard and mouse action mapping is loaded.
 	 *
@@ -246,6 +280,10 @@ public class ViewerOptions
 
 		private AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory = AccumulateProjectorARGB.factory;
 
+		private FrameSchedulerFactory frameSchedulerFactory = AdaptiveFrameScheduler.factory;
+
+		private int fusedAccumulationThreshold = 16;
+
 		private InputTriggerConfig inputTriggerConfig = null;
 
 		private KeyPressedManager keyPressedManager = null;
@@ -264,6 +302,8 @@ public class ViewerOptions
 				msgOverlay( msgOverlay ).
 				transformEventHandlerFactory( transformEventHandlerFactory ).
 				accumulateProjectorFactory( accumulateProjectorFactory ).
+				frameSchedulerFactory( frameSchedulerFactory ).
+				fusedAccumulationThreshold( fusedAccumulationThreshold ).
 				inputTriggerConfig( inputTriggerConfig );
 		}
 
@@ -322,6 +362,16 @@ public class ViewerOptions
 			return accumulateProjectorFactory;
 		}
 
+		public FrameSchedulerFactory getFrameSchedulerFactory()
+		{
+			return frameSchedulerFactory;
+		}
+
+		public int getFusedAccumulationThreshold()
+		{
+			return fusedAccumulationThreshold;
+		}
+
 		public InputTriggerConfig getInputTriggerConfig()
 		{
 			return inputTriggerConfig;
@@ -63,6 +63,7 @@ import javax.swing.DefaultBoundedRangeModel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.SwingConstants;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -81,6 +82,7 @@ import bdv.viewer.animate.TextOverlayAnimator.TextPosition;
 import bdv.viewer.overlay.MultiBoxOverlayRenderer;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
 import bdv.viewer.overlay.SourceInfoOverlayRenderer;
+import bdv.viewer.render.FrameScheduler;
 import bdv.viewer.render.MultiResolutionRenderer;
 import bdv.viewer.render.TransformAwareBufferedImageOverlayRenderer;
 import bdv.viewer.state.SourceGroup;
@@ -236,6 +238,12 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 
 	protected final ViewerOptions.Values options;
 
+	/**
+	 * Steps through time-points during playback, or {@code null} if not
+	 * playing. See {@link #startPlayback(double, int)}.
+	 */
+	protected Timer playbackTimer = null;
+
 	public ViewerPanel( final List< SourceAndConverter< ? > > sources, final int numTimePoints, final CacheControl cacheControl )
 	{
 		this( sources, numTimePoints, cacheControl, ViewerOptions.options() );
@@ -295,6 +303,8 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 				options.isUseVolatileIfAvailable(),
 				options.getAccumulateProjectorFactory(),
 				cacheControl );
+		imageRenderer.setFusedAccumulationThreshold( options.getFusedAccumulationThreshold() );
+		imageRenderer.setFrameScheduler( options.getFrameSchedulerFactory().create( options.getScreenScales(), options.getTargetRenderNanos() ) );
 
 		mouseCoordinates = new MouseCoordinateListener();
 		display.addHandler( mouseCoordinates );
@@ -508,6 +518,16 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		imageRenderer.requestRepaint();
 	}
 
+	/**
+	 * Repaint as soon as possible, after only converter settings (display
+	 * range, color) have changed.
+	 */
+	@Override
+	public void requestConverterRepaint()
+	{
+		imageRenderer.requestConverterRepaint();
+	}
+
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
@@ -762,6 +782,60 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 			sliderTime.setValue( sliderTime.getValue() - 1 );
 	}
 
+	/**
+	 * Play the time-series, showing {@code framesPerSecond} time-points per
+	 * second until the first or last time-point is reached or
+	 * {@link #stopPlayback()} is called. While playing, the visible region of
+	 * the following time-points is prefetched.
+	 *
+	 * @param framesPerSecond
+	 *            how many time-points to show per second.
+	 * @param direction
+	 *            positive to play forward, negative to play backward.
+	 */
+	public synchronized void startPlayback( final double framesPerSecond, final int direction )
+	{
+		stopPlayback();
+		if ( state.getNumTimepoints() <= 1 || framesPerSecond <= 0 )
+			return;
+		final int step = direction < 0 ? -1 : 1;
+		final int readAhead = Math.max( 2, Math.min( 16, ( int ) Math.ceil( framesPerSecond ) ) );
+		imageRenderer.setTimepointReadAhead( readAhead, step );
+		playbackTimer = new Timer( ( int ) Math.max( 1, Math.round( 1000 / framesPerSecond ) ), e -> {
+			synchronized ( ViewerPanel.this )
+			{
+				final int t = sliderTime.getValue() + step;
+				if ( t < 0 || t >= state.getNumTimepoints() )
+					stopPlayback();
+				else
+					sliderTime.setValue( t );
+			}
+		} );
+		playbackTimer.start();
+	}
+
+	/**
+	 * Stop playback started with {@link #startPlayback(double, int)}.
+	 */
+	public synchronized void stopPlayback()
+	{
+		if ( playbackTimer != null )
+		{
+			playbackTimer.stop();
+			playbackTimer = null;
+			imageRenderer.setTimepointReadAhead( 0, 1 );
+		}
+	}
+
+	/**
+	 * Whether the time-series is played, see
+	 * {@link #startPlayback(double, int)}.
+	 */
+	public synchronized boolean isPlaying()
+	{
+		return playbackTimer != null;
+	}
+
 	/**
 	 * Set the number of available timepoints. If {@code numTimepoints == 1}
 	 * this will hide the time slider, otherwise show it. If the currently
@@ -1023,6 +1097,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		{
 			x = e.getX();
 			y = e.getY();
+			imageRenderer.setFocus( new RealPoint( x, y ) );
 		}
 
 		@Override
@@ -1030,6 +1105,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		{
 			x = e.getX();
 			y = e.getY();
+			imageRenderer.setFocus( new RealPoint( x, y ) );
 			display.repaint(); // TODO: only when overlays are visible
 		}
 
@@ -1058,6 +1134,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		public synchronized void mouseExited( final MouseEvent e )
 		{
 			isInside = false;
+			imageRenderer.setFocus( null );
 		}
 
 		@Override
@@ -1101,6 +1178,15 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 		return visibilityAndGrouping;
 	}
 
+	/**
+	 * Get the {@link FrameScheduler} that chooses the screen scale at which
+	 * rendering starts and the IO budget.
+	 */
+	public FrameScheduler getFrameScheduler()
+	{
+		return imageRenderer.getFrameScheduler();
+	}
+
 	public ViewerOptions.Values getOptionValues()
 	{
 		return options;
@@ -1116,6 +1202,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, TransformLis
 	 */
 	public void stop()
 	{
+		stopPlayback();
 		painterThread.interrupt();
 		try
 		{
@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.Arrays;
+
+/**
+ * {@link FrameScheduler} that keeps moving averages of render and IO time for
+ * each screen scale. Screen scales that were not measured yet are predicted
+ * from the nearest measured one, assuming that render time is proportional
+ * to the number of pixels.
+ * <p>
+ * New frames start at the finest screen scale whose frames are predicted to
+ * complete within the target time, counting both render time and the
+ * average time spent in blocking IO at that screen scale. (IO time is not
+ * extrapolated to screen scales where it was not measured, because it
+ * depends on the data rather than on the number of pixels.) To avoid
+ * switching back and forth, a finer screen scale than the current one is only
+ * chosen if it is predicted to complete within {@link #HYSTERESIS} of the
+ * target time. The IO budget is the time that remains of the target time
+ * after rendering at that screen scale.
+ */
+public class AdaptiveFrameScheduler implements FrameScheduler
+{
+	public static final FrameSchedulerFactory factory = new FrameSchedulerFactory()
+	{
+		@Override
+		public FrameScheduler create( final double[] screenScales, final long targetRenderNanos )
+		{
+			return new AdaptiveFrameScheduler( screenScales, targetRenderNanos );
+		}
+	};
+
+	/**
+	 * Weight of the newest measurement in the moving averages.
+	 */
+	private static final double ALPHA = 0.25;
+
+	/**
+	 * Fraction of the target time within which a finer screen scale must be
+	 * predicted to render to be chosen.
+	 */
+	private static final double HYSTERESIS = 0.75;
+
+	/**
+	 * Minimum and maximum IO budget for the highest priority level, in
+	 * nanoseconds. The budget for lower priority levels is a tenth of that.
+	 */
+	private static final long MIN_IO_BUDGET = 5l * 1000000l;
+
+	private static final long MAX_IO_BUDGET = 100l * 1000000l;
+
+	private final double[] screenScales;
+
+	private final long targetRenderNanos;
+
+	/**
+	 * Moving average of render time per screen scale, {@code NaN} if not
+	 * measured yet.
+	 */
+	private final double[] renderNanos;
+
+	/**
+	 * Moving average of IO time per screen scale, {@code NaN} if not
+	 * measured yet.
+	 */
+	private final double[] ioNanos;
+
+	private int maxScreenScaleIndex;
+
+	private final long[] ioBudget;
+
+	public AdaptiveFrameScheduler( final double[] screenScales, final long targetRenderNanos )
+	{
+		this.screenScales = screenScales.clone();
+		this.targetRenderNanos = targetRenderNanos;
+		renderNanos = new double[ screenScales.length ];
+		ioNanos = new double[ screenScales.length ];
+		Arrays.fill( renderNanos, Double.NaN );
+		Arrays.fill( ioNanos, Double.NaN );
+		maxScreenScaleIndex = screenScales.length - 1;
+		ioBudget = new long[] { MAX_IO_BUDGET, MAX_IO_BUDGET / 10 };
+	}
+
+	@Override
+	public synchronized void frameRendered( final int screenScaleIndex, final long renderTime, final long ioTime )
+	{
+		renderNanos[ screenScaleIndex ] = average( renderNanos[ screenScaleIndex ], renderTime );
+		ioNanos[ screenScaleIndex ] = average( ioNanos[ screenScaleIndex ], ioTime );
+
+		int index = screenScales.length - 1;
+		for ( int i = 0; i < screenScales.length; ++i )
+		{
+			final double threshold = i < maxScreenScaleIndex ? HYSTERESIS * targetRenderNanos : targetRenderNanos;
+			if ( predictFrameNanos( i ) <= threshold )
+			{
+				index = i;
+				break;
+			}
+		}
+		maxScreenScaleIndex = index;
+
+		final double render = predictRenderNanos( index );
+		final double remaining = targetRenderNanos - ( Double.isNaN( render ) ? 0 : render );
+		ioBudget[ 0 ] = Math.max( MIN_IO_BUDGET, Math.min( MAX_IO_BUDGET, ( long ) remaining ) );
+		ioBudget[ 1 ] = ioBudget[ 0 ] / 10;
+	}
+
+	@Override
+	public synchronized int getMaxScreenScaleIndex()
+	{
+		return maxScreenScaleIndex;
+	}
+
+	@Override
+	public synchronized long[] getIoBudget()
+	{
+		return ioBudget.clone();
+	}
+
+	/**
+	 * Get the moving average of render time at the given screen scale, in
+	 * nanoseconds, or {@code NaN} if it was not measured yet.
+	 */
+	public synchronized double getAverageRenderNanos( final int screenScaleIndex )
+	{
+		return renderNanos[ screenScaleIndex ];
+	}
+
+	/**
+	 * Get the moving average of IO time at the given screen scale, in
+	 * nanoseconds, or {@code NaN} if it was not measured yet.
+	 */
+	public synchronized double getAverageIoNanos( final int screenScaleIndex )
+	{
+		return ioNanos[ screenScaleIndex ];
+	}
+
+	private static double average( final double average, final long value )
+	{
+		return Double.isNaN( average ) ? value : ( 1 - ALPHA ) * average + ALPHA * value;
+	}
+
+	/**
+	 * Predict the time of a frame at the given screen scale: the predicted
+	 * render time plus the measured IO time, if any. Returns {@code NaN} if no
+	 * render time was measured yet.
+	 */
+	private double predictFrameNanos( final int screenScaleIndex )
+	{
+		final double io = ioNanos[ screenScaleIndex ];
+		return predictRenderNanos( screenScaleIndex ) + ( Double.isNaN( io ) ? 0 : io );
+	}
+
+	/**
+	 * Predict the render time at the given screen scale from the nearest
+	 * measured screen scale. Returns {@code NaN} if nothing was measured yet.
+	 */
+	private double predictRenderNanos( final int screenScaleIndex )
+	{
+		if ( !Double.isNaN( renderNanos[ screenScaleIndex ] ) )
+			return renderNanos[ screenScaleIndex ];
+		for ( int d = 1; d < screenScales.length; ++d )
+		{
+			for ( final int i : new int[] { screenScaleIndex - d, screenScaleIndex + d } )
+			{
+				if ( i >= 0 && i < screenScales.length && !Double.isNaN( renderNanos[ i ] ) )
+				{
+					final double ratio = screenScales[ screenScaleIndex ] / screenScales[ i ];
+					return renderNanos[ i ] * ratio * ratio;
+				}
+			}
+		}
+		return Double.NaN;
+	}
+}
@@ -0,0 +1,288 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import net.imglib2.AbstractLocalizable;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.interpolation.Interpolant;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+
+/**
+ * A nearest-neighbor view of a 3D source under an axis-aligned
+ * source-to-screen transform. That is, every screen axis is mapped to exactly
+ * one source axis (scaled, flipped, and translated). This is equivalent to
+ * {@link RealViews#affine(RealRandomAccessible, net.imglib2.realtransform.AffineGet)}
+ * of a nearest-neighbor interpolated source, but moving along a screen axis
+ * only moves along one source axis, without going through a
+ * {@link RealRandomAccessible} and interpolator.
+ *
+ * @param <T>
+ *            pixel type
+ */
+public class AxisAlignedNearestNeighborView< T > implements RandomAccessible< T >
+{
+	/**
+	 * Relative tolerance for entries of the screen-to-source transform that
+	 * are considered zero.
+	 */
+	private static final double EPS = 1e-10;
+
+	private final RandomAccessible< T > source;
+
+	/**
+	 * For each screen dimension, the source dimension it is mapped to.
+	 */
+	private final int[] axis;
+
+	/**
+	 * For each screen dimension {@code d}, the source coordinate along
+	 * {@code axis[d]} is {@code scale[d] * x + offset[d]}.
+	 */
+	private final double[] scale;
+
+	private final double[] offset;
+
+	private AxisAlignedNearestNeighborView(
+			final RandomAccessible< T > source,
+			final int[] axis,
+			final double[] scale,
+			final double[] offset )
+	{
+		this.source = source;
+		this.axis = axis;
+		this.scale = scale;
+		this.offset = offset;
+	}
+
+	/**
+	 * Create an {@link AxisAlignedNearestNeighborView} of
+	 * {@code interpolated} transformed by {@code sourceToScreen}, if
+	 * {@code interpolated} is a nearest-neighbor {@link Interpolant} of a 3D
+	 * {@link RandomAccessible} and {@code sourceToScreen} is axis-aligned.
+	 *
+	 * @return the view, or {@code null} if the conditions are not met.
+	 */
+	public static < T > AxisAlignedNearestNeighborView< T > create(
+			final RealRandomAccessible< T > interpolated,
+			final AffineTransform3D sourceToScreen )
+	{
+		if ( !( interpolated instanceof Interpolant ) )
+			return null;
+		final Interpolant< T, ? > interpolant = ( Interpolant< T, ? > ) interpolated;
+		if ( !( interpolant.getInterpolatorFactory() instanceof NearestNeighborInterpolatorFactory )
+				|| !( interpolant.getSource() instanceof RandomAccessible ) )
+			return null;
+		@SuppressWarnings( "unchecked" )
+		final RandomAccessible< T > source = ( RandomAccessible< T > ) interpolant.getSource();
+		if ( source.numDimensions() != 3 )
+			return null;
+
+		final AffineTransform3D screenToSource = sourceToScreen.inverse();
+		double max = 0;
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				max = Math.max( max, Math.abs( screenToSource.get( r, c ) ) );
+		final double eps = EPS * max;
+
+		final int[] axis = new int[ 3 ];
+		final double[] scale = new double[ 3 ];
+		final double[] offset = new double[ 3 ];
+		final boolean[] used = new boolean[ 3 ];
+		for ( int c = 0; c < 3; ++c )
+		{
+			axis[ c ] = -1;
+			for ( int r = 0; r < 3; ++r )
+			{
+				if ( Math.abs( screenToSource.get( r, c ) ) > eps )
+				{
+					if ( axis[ c ] >= 0 || used[ r ] )
+						return null;
+					axis[ c ] = r;
+					used[ r ] = true;
+				}
+			}
+			if ( axis[ c ] < 0 )
+				return null;
+			scale[ c ] = screenToSource.get( axis[ c ], c );
+			offset[ c ] = screenToSource.get( axis[ c ], 3 );
+		}
+		return new AxisAlignedNearestNeighborView<>( source, axis, scale, offset );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return 3;
+	}
+
+	@Override
+	public RandomAccess< T > randomAccess()
+	{
+		return new AxisAlignedRandomAccess( source.randomAccess() );
+	}
+
+	@Override
+	public RandomAccess< T > randomAccess( final Interval interval )
+	{
+		return randomAccess();
+	}
+
+	private class AxisAlignedRandomAccess extends AbstractLocalizable implements RandomAccess< T >
+	{
+		private final RandomAccess< T > sourceAccess;
+
+		AxisAlignedRandomAccess( final RandomAccess< T > sourceAccess )
+		{
+			super( 3 );
+			this.sourceAccess = sourceAccess;
+			for ( int d = 0; d < 3; ++d )
+				update( d );
+		}
+
+		private AxisAlignedRandomAccess( final AxisAlignedRandomAccess a )
+		{
+			super( a.position.clone() );
+			sourceAccess = a.sourceAccess.copyRandomAccess();
+		}
+
+		private void update( final int d )
+		{
+			sourceAccess.setPosition( Math.round( scale[ d ] * position[ d ] + offset[ d ] ), axis[ d ] );
+		}
+
+		@Override
+		public void fwd( final int d )
+		{
+			++position[ d ];
+			update( d );
+		}
+
+		@Override
+		public void bck( final int d )
+		{
+			--position[ d ];
+			update( d );
+		}
+
+		@Override
+		public void move( final int distance, final int d )
+		{
+			position[ d ] += distance;
+			update( d );
+		}
+
+		@Override
+		public void move( final long distance, final int d )
+		{
+			position[ d ] += distance;
+			update( d );
+		}
+
+		@Override
+		public void move( final Localizable localizable )
+		{
+			for ( int d = 0; d < n; ++d )
+				move( localizable.getLongPosition( d ), d );
+		}
+
+		@Override
+		public void move( final int[] distance )
+		{
+			for ( int d = 0; d < n; ++d )
+				move( distance[ d ], d );
+		}
+
+		@Override
+		public void move( final long[] distance )
+		{
+			for ( int d = 0; d < n; ++d )
+				move( distance[ d ], d );
+		}
+
+		@Override
+		public void setPosition( final Localizable localizable )
+		{
+			for ( int d = 0; d < n; ++d )
+				setPosition( localizable.getLongPosition( d ), d );
+		}
+
+		@Override
+		public void setPosition( final int[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				setPosition( pos[ d ], d );
+		}
+
+		@Override
+		public void setPosition( final long[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				setPosition( pos[ d ], d );
+		}
+
+		@Override
+		public void setPosition( final int pos, final int d )
+		{
+			position[ d ] = pos;
+			update( d );
+		}
+
+		@Override
+		public void setPosition( final long pos, final int d )
+		{
+			position[ d ] = pos;
+			update( d );
+		}
+
+		@Override
+		public T get()
+		{
+			return sourceAccess.get();
+		}
+
+		@Override
+		public AxisAlignedRandomAccess copy()
+		{
+			return new AxisAlignedRandomAccess( this );
+		}
+
+		@Override
+		public AxisAlignedRandomAccess copyRandomAccess()
+		{
+			return copy();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import net.imglib2.cache.iotiming.IoTimeBudget;
+
+/**
+ * Decides, based on measured render and IO times of previous frames, at
+ * which screen scale {@link MultiResolutionRenderer} starts rendering a new
+ * frame, and how much time may be spent waiting for blocking IO.
+ */
+public interface FrameScheduler
+{
+	/**
+	 * Called after a frame was rendered from scratch at a new screen scale.
+	 * Frames that continue the previous frame (shifted by a translation, or
+	 * only reconverted after converter changes) are not reported, because
+	 * their render times are not representative.
+	 *
+	 * @param screenScaleIndex
+	 *            index of the screen scale that was rendered.
+	 * @param renderNanos
+	 *            time spent rendering, excluding blocking IO, in nanoseconds.
+	 * @param ioNanos
+	 *            time spent in blocking IO, in nanoseconds.
+	 */
+	public void frameRendered( int screenScaleIndex, long renderNanos, long ioNanos );
+
+	/**
+	 * Get the index of the (coarsest) screen scale with which to start
+	 * rendering a new frame.
+	 */
+	public int getMaxScreenScaleIndex();
+
+	/**
+	 * Get the IO time budget for a new frame, in nanoseconds, for each
+	 * priority level (see {@link IoTimeBudget#reset(long[])}).
+	 */
+	public long[] getIoBudget();
+}
@@ -0,0 +1,451 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.cache.iotiming.CacheIoTiming;
+import net.imglib2.cache.iotiming.IoStatistics;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.screenimage.awt.ARGBScreenImage;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.ui.util.StopWatch;
+
+/**
+ * {@link VolatileProjector} that renders a hierarchy of {@link Volatile}
+ * inputs for each of several sources, and sums them into the target the way
+ * {@link AccumulateProjectorARGB} does. Unlike
+ * {@link VolatileHierarchyProjector} with {@link AccumulateProjectorARGB},
+ * this needs no screen image per source.
+ * <p>
+ * Each source is sampled only inside its {@link ScreenFootprint}. Once a pixel
+ * of a source is valid at the best mipmap level, its contribution is added
+ * to an accumulator image shared by all sources, and a bit is set in the
+ * source's bitmask (covering only the footprint). Pixels that are not
+ * complete yet are sampled again (at the best available level) in each
+ * {@link #map(boolean)}.
+ * <p>
+ * The target is processed in square tiles of
+ * {@link VolatileHierarchyProjector#TILE_SIZE} pixels. Tiles in which all
+ * sources are complete are skipped.
+ */
+public class FusedAccumulateProjectorARGB implements VolatileProjector
+{
+	/**
+	 * A source to be rendered by a {@link FusedAccumulateProjectorARGB}.
+	 *
+	 * @param <A>
+	 *            source pixel type
+	 */
+	public static class FusedSource< A extends Volatile< ? > >
+	{
+		private final List< RandomAccessible< A > > levels;
+
+		private final Converter< ? super A, ARGBType > converter;
+
+		private final ScreenFootprint footprint;
+
+		/**
+		 * Tile-aligned bounding box of the {@link #footprint}, in tiles.
+		 */
+		private final int tx0, ty0, numTilesX;
+
+		/**
+		 * One bit per pixel of the tile-aligned bounding box of the
+		 * {@link #footprint}, one {@code long} per row of a tile. A bit is set
+		 * if the pixel is complete. Bits outside the footprint are set.
+		 */
+		private final long[] complete;
+
+		/**
+		 * @param levels
+		 *            the source at different mipmap levels, in render order
+		 *            (that is, the best level first).
+		 * @param converter
+		 *            converts source values to ARGB.
+		 * @param footprint
+		 *            the screen footprint of the source.
+		 */
+		public FusedSource(
+				final List< ? extends RandomAccessible< A > > levels,
+				final Converter< ? super A, ARGBType > converter,
+				final ScreenFootprint footprint )
+		{
+			this.levels = new ArrayList<>( levels );
+			this.converter = converter;
+			this.footprint = footprint;
+			final int ts = VolatileHierarchyProjector.TILE_SIZE;
+			tx0 = footprint.minX / ts;
+			ty0 = footprint.minY / ts;
+			numTilesX = footprint.maxX / ts - tx0 + 1;
+			final int numTilesY = footprint.maxY / ts - ty0 + 1;
+			complete = new long[ numTilesX * numTilesY * ts ];
+			for ( int y = ty0 * ts; y < ( ty0 + numTilesY ) * ts; ++y )
+			{
+				for ( int tx = 0; tx < numTilesX; ++tx )
+				{
+					long bits = -1;
+					if ( y >= footprint.minY && y <= footprint.maxY )
+						for ( int b = 0; b < ts; ++b )
+						{
+							final int x = ( tx0 + tx ) * ts + b;
+							if ( x >= footprint.minX && x <= footprint.maxX )
+								bits &= ~( 1l << b );
+						}
+					complete[ rowIndex( tx0 + tx, y ) ] = bits;
+				}
+			}
+		}
+
+		private int rowIndex( final int tx, final int y )
+		{
+			final int ts = VolatileHierarchyProjector.TILE_SIZE;
+			final int ty = y / ts;
+			return ( ( ty - ty0 ) * numTilesX + ( tx - tx0 ) ) * ts + ( y % ts );
+		}
+
+		/**
+		 * Whether all pixels of tile ({@code tx}, {@code ty}) are complete.
+		 */
+		private boolean isComplete( final int tx, final int ty )
+		{
+			final int ts = VolatileHierarchyProjector.TILE_SIZE;
+			final int i0 = rowIndex( tx, ty * ts );
+			for ( int i = i0; i < i0 + ts; ++i )
+				if ( complete[ i ] != -1 )
+					return false;
+			return true;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		RandomAccess< A >[] createAccesses()
+		{
+			final RandomAccess< A >[] accesses = new RandomAccess[ levels.size() ];
+			for ( int l = 0; l < accesses.length; ++l )
+				accesses[ l ] = levels.get( l ).randomAccess();
+			return accesses;
+		}
+
+		/**
+		 * Render the incomplete pixels of the tile with min ({@code x0},
+		 * {@code y0}) and size {@code w x h}.
+		 *
+		 * @param accesses
+		 *            accesses to {@link #levels}, created by
+		 *            {@link #createAccesses()}.
+		 * @param tileAccumulator
+		 *            accumulated ARGB values of the tile, flattened with
+		 *            stride {@code w}.
+		 * @param accumulator
+		 *            accumulated ARGB values of complete pixels, flattened
+		 *            with stride {@code width}.
+		 * @param width
+		 *            width of the target.
+		 * @param tmp
+		 *            temporary variable.
+		 * @return the number of pixels that are not complete.
+		 */
+		int render(
+				final int x0, final int y0, final int w, final int h,
+				final RandomAccess< A >[] accesses,
+				final int[] tileAccumulator,
+				final int[] accumulator,
+				final int width,
+				final ARGBType tmp )
+		{
+			final int tx = x0 / VolatileHierarchyProjector.TILE_SIZE;
+			int numIncomplete = 0;
+			for ( int y = 0; y < h; ++y )
+			{
+				final int ri = rowIndex( tx, y0 + y );
+				long bits = complete[ ri ];
+				if ( bits == -1 )
+					continue;
+				for ( final RandomAccess< A > access : accesses )
+					access.setPosition( y0 + y, 1 );
+				for ( int x = 0; x < w; ++x )
+				{
+					if ( ( bits & ( 1l << x ) ) != 0 )
+						continue;
+					for ( int l = 0; l < accesses.length; ++l )
+					{
+						final RandomAccess< A > access = accesses[ l ];
+						access.setPosition( x0 + x, 0 );
+						final A a = access.get();
+						if ( a.isValid() )
+						{
+							converter.convert( a, tmp );
+							final int v = tmp.get();
+							final int ti = y * w + x;
+							tileAccumulator[ ti ] = add( tileAccumulator[ ti ], v );
+							if ( l == 0 )
+							{
+								final int i = ( y0 + y ) * width + x0 + x;
+								accumulator[ i ] = add( accumulator[ i ], v );
+								bits |= 1l << x;
+							}
+							break;
+						}
+					}
+					if ( ( bits & ( 1l << x ) ) == 0 )
+						++numIncomplete;
+				}
+				complete[ ri ] = bits;
+			}
+			return numIncomplete;
+		}
+	}
+
+	/**
+	 * Add ARGB values, clamping each channel at 255.
+	 */
+	static int add( final int v1, final int v2 )
+	{
+		final int a = Math.min( 255, ARGBType.alpha( v1 ) + ARGBType.alpha( v2 ) );
+		final int r = Math.min( 255, ARGBType.red( v1 ) + ARGBType.red( v2 ) );
+		final int g = Math.min( 255, ARGBType.green( v1 ) + ARGBType.green( v2 ) );
+		final int b = Math.min( 255, ARGBType.blue( v1 ) + ARGBType.blue( v2 ) );
+		return ARGBType.rgba( r, g, b, a );
+	}
+
+	protected final List< FusedSource< ? > > sources;
+
+	/**
+	 * The target screen image.
+	 */
+	protected final ARGBScreenImage target;
+
+	protected final int width;
+
+	protected final int height;
+
+	protected final int numTilesX;
+
+	protected final int numTilesY;
+
+	/**
+	 * Accumulated ARGB values of complete pixels of all sources.
+	 */
+	private final int[] accumulator;
+
+	/**
+	 * For each tile, whether all sources are complete.
+	 */
+	private final boolean[] tileComplete;
+
+	/**
+	 * Number of threads to use for rendering
+	 */
+	protected final int numThreads;
+
+	protected final ExecutorService executorService;
+
+	/**
+	 * Time needed for rendering the last frame, in nano-seconds.
+	 * This does not include time spent in blocking IO.
+	 */
+	protected long lastFrameRenderNanoTime;
+
+	protected final AtomicBoolean interrupted = new AtomicBoolean();
+
+	protected volatile boolean valid = false;
+
+	/**
+	 * @param sources
+	 *            the sources to render.
+	 * @param target
+	 *            the target screen image.
+	 * @param accumulator
+	 *            storage for accumulated values of complete pixels. Must
+	 *            have at least as many elements as {@code target}. Its
+	 *            contents are overwritten.
+	 * @param numThreads
+	 *            how many threads to use for rendering.
+	 * @param executorService
+	 *            {@link ExecutorService} to use for rendering. may be null.
+	 */
+	public FusedAccumulateProjectorARGB(
+			final List< FusedSource< ? > > sources,
+			final ARGBScreenImage target,
+			final int[] accumulator,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this.sources = new ArrayList<>( sources );
+		this.target = target;
+		width = ( int ) target.dimension( 0 );
+		height = ( int ) target.dimension( 1 );
+		final int ts = VolatileHierarchyProjector.TILE_SIZE;
+		numTilesX = ( width + ts - 1 ) / ts;
+		numTilesY = ( height + ts - 1 ) / ts;
+		this.accumulator = accumulator;
+		Arrays.fill( accumulator, 0, width * height, 0 );
+		tileComplete = new boolean[ numTilesX * numTilesY ];
+		this.numThreads = numThreads;
+		this.executorService = executorService;
+		lastFrameRenderNanoTime = -1;
+	}
+
+	@Override
+	public void cancel()
+	{
+		interrupted.set( true );
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	@Override
+	public boolean map()
+	{
+		return map( true );
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		interrupted.set( false );
+
+		final StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+		final IoStatistics iostat = CacheIoTiming.getIoStatistics();
+		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
+
+		final int[] targetData = target.getData();
+		final int ts = VolatileHierarchyProjector.TILE_SIZE;
+		final AtomicInteger nextTile = new AtomicInteger();
+		final AtomicInteger numIncomplete = new AtomicInteger();
+		final int numTasks = numThreads > 1 ? numThreads : 1;
+
+		final boolean createExecutor = ( executorService == null );
+		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					final RandomAccess< ? >[][] accesses = new RandomAccess[ sources.size() ][];
+					final int[] tileAccumulator = new int[ ts * ts ];
+					final ARGBType tmp = new ARGBType();
+					int myNumIncomplete = 0;
+					for ( int tile = nextTile.getAndIncrement(); tile < tileComplete.length; tile = nextTile.getAndIncrement() )
+					{
+						if ( interrupted.get() )
+							break;
+						if ( tileComplete[ tile ] )
+							continue;
+
+						final int tx = tile % numTilesX;
+						final int ty = tile / numTilesX;
+						final int x0 = tx * ts;
+						final int y0 = ty * ts;
+						final int w = Math.min( ts, width - x0 );
+						final int h = Math.min( ts, height - y0 );
+
+						for ( int y = 0; y < h; ++y )
+							System.arraycopy( accumulator, ( y0 + y ) * width + x0, tileAccumulator, y * w, w );
+
+						int tileIncomplete = 0;
+						for ( int s = 0; s < sources.size(); ++s )
+						{
+							final FusedSource< ? > source = sources.get( s );
+							if ( !source.footprint.intersects( x0, y0, w, h ) || source.isComplete( tx, ty ) )
+								continue;
+							if ( accesses[ s ] == null )
+								accesses[ s ] = source.createAccesses();
+							tileIncomplete += render( source, x0, y0, w, h, accesses[ s ], tileAccumulator, tmp );
+						}
+
+						for ( int y = 0; y < h; ++y )
+							System.arraycopy( tileAccumulator, y * w, targetData, ( y0 + y ) * width + x0, w );
+
+						if ( tileIncomplete == 0 )
+							tileComplete[ tile ] = true;
+						myNumIncomplete += tileIncomplete;
+					}
+					numIncomplete.addAndGet( myNumIncomplete );
+					return null;
+				}
+			} );
+		}
+		try
+		{
+			ex.invokeAll( tasks );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		if ( createExecutor )
+			ex.shutdown();
+
+		final long lastFrameTime = stopWatch.nanoTime();
+		lastFrameRenderNanoTime = lastFrameTime - ( iostat.getCumulativeIoNanoTime() - startTimeIoCumulative ) / numThreads;
+
+		if ( interrupted.get() )
+			return false;
+
+		valid = numIncomplete.get() == 0;
+		return true;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private < A extends Volatile< ? > > int render(
+			final FusedSource< A > source,
+			final int x0, final int y0, final int w, final int h,
+			final RandomAccess< ? >[] accesses,
+			final int[] tileAccumulator,
+			final ARGBType tmp )
+	{
+		return source.render( x0, y0, w, h, ( RandomAccess< A >[] ) accesses, tileAccumulator, accumulator, width, tmp );
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Extrapolates the viewer transforms of the next frames from the last two
+ * distinct viewer transforms. The change between them (translation, z
+ * stepping, zoom, rotation) is assumed to repeat for each predicted frame.
+ */
+public class MotionPredictor
+{
+	/**
+	 * If consecutive viewer transforms are further apart in time, they are not
+	 * considered to be part of a continuous motion.
+	 */
+	private static final long MAX_FRAME_INTERVAL_MILLIS = 250;
+
+	/**
+	 * How many frames to predict.
+	 */
+	private final int lookAhead;
+
+	private final AffineTransform3D previous = new AffineTransform3D();
+
+	private final AffineTransform3D current = new AffineTransform3D();
+
+	private long previousTimeMillis;
+
+	private long currentTimeMillis;
+
+	/**
+	 * How many distinct transforms were recorded (at most 2).
+	 */
+	private int numTransforms;
+
+	/**
+	 * @param lookAhead
+	 *            how many frames to predict.
+	 */
+	public MotionPredictor( final int lookAhead )
+	{
+		this.lookAhead = lookAhead;
+		numTransforms = 0;
+	}
+
+	/**
+	 * Record the viewer transform of a frame.
+	 *
+	 * @return whether {@code viewerTransform} differs from the last recorded
+	 *         transform.
+	 */
+	public synchronized boolean update( final AffineTransform3D viewerTransform, final long timeMillis )
+	{
+		if ( numTransforms > 0 && equal( viewerTransform, current ) )
+			return false;
+		previous.set( current );
+		previousTimeMillis = currentTimeMillis;
+		current.set( viewerTransform );
+		currentTimeMillis = timeMillis;
+		numTransforms = Math.min( 2, numTransforms + 1 );
+		return true;
+	}
+
+	/**
+	 * Predict the viewer transforms of the next frames, nearest first.
+	 *
+	 * @return predicted viewer transforms, or an empty list if the viewer is
+	 *         not moving.
+	 */
+	public synchronized List< AffineTransform3D > predict()
+	{
+		if ( numTransforms < 2 || currentTimeMillis - previousTimeMillis > MAX_FRAME_INTERVAL_MILLIS )
+			return Collections.emptyList();
+
+		// current = delta * previous
+		final AffineTransform3D delta = previous.inverse();
+		delta.preConcatenate( current );
+
+		final ArrayList< AffineTransform3D > predicted = new ArrayList<>( lookAhead );
+		final AffineTransform3D t = current.copy();
+		for ( int i = 0; i < lookAhead; ++i )
+		{
+			t.preConcatenate( delta );
+			predicted.add( t.copy() );
+		}
+		return predicted;
+	}
+
+	private static boolean equal( final AffineTransform3D a, final AffineTransform3D b )
+	{
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 4; ++c )
+				if ( a.get( r, c ) != b.get( r, c ) )
+					return false;
+		return true;
+	}
+}
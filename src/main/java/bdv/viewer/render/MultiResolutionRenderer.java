@@ -34,12 +34,14 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 import bdv.cache.CacheControl;
 import bdv.img.cache.VolatileCachedCellImg;
+import bdv.util.MipmapTransforms;
 import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
 import bdv.viewer.render.MipmapOrdering.Level;
@@ -50,16 +52,21 @@ import net.imglib2.Dimensions;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.cache.iotiming.CacheIoTiming;
+import net.imglib2.cache.iotiming.IoStatistics;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.converter.Converter;
 import net.imglib2.display.screenimage.awt.ARGBScreenImage;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.Type;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.ui.PainterThread;
 import net.imglib2.ui.RenderTarget;
 import net.imglib2.ui.Renderer;
@@ -94,12 +101,10 @@ import net.imglib2.ui.util.GuiUtil;
  * display remains interactive.
  * <p>
  * The renderer tries to maintain a per-frame rendering time close to a desired
- * number of <code>targetRenderNanos</code> nanoseconds. If the rendering time
- * (in nanoseconds) for the (currently) highest scaled screen image is above
- * this threshold, a coarser screen scale is chosen as the highest screen scale
- * to use. Similarly, if the rendering time for the (currently) second-highest
- * scaled screen image is below this threshold, this finer screen scale chosen
- * as the highest screen scale to use.
+ * number of <code>targetRenderNanos</code> nanoseconds. A
+ * {@link FrameScheduler} chooses the highest screen scale to use, and the IO
+ * budget, from the measured rendering and IO times of previous frames (by
+ * default {@link AdaptiveFrameScheduler}).
  * <p>
  * The renderer uses multiple threads (if desired) and double-buffering (if
  * desired).
@@ -178,6 +183,27 @@ public class MultiResolutionRenderer
 	 */
 	protected byte[][] renderMaskArrays;
 
+	/**
+	 * Storage for raw values recorded by {@link VolatileHierarchyProjector}.
+	 * One array per visible source, allocated when required. (First) index is
+	 * index in list of visible sources.
+	 */
+	protected float[][] renderRawArrays;
+
+	/**
+	 * Storage for accumulated values of complete pixels of
+	 * {@link FusedAccumulateProjectorARGB}. Allocated when required.
+	 */
+	protected int[] fusedAccumulator;
+
+	/**
+	 * If at least this many sources are visible, they are rendered with a
+	 * {@link FusedAccumulateProjectorARGB} instead of one
+	 * {@link VolatileHierarchyProjector} and render image per source.
+	 * Non-positive values disable fused rendering.
+	 */
+	protected volatile int fusedAccumulationThreshold = 16;
+
 	/**
 	 * Used to render the image for display. Three images per screen resolution
 	 * if double buffering is enabled. First index is screen scale, second index
@@ -209,12 +235,8 @@ public class MultiResolutionRenderer
 	protected AffineTransform3D[] screenScaleTransforms;
 
 	/**
-	 * If the rendering time (in nanoseconds) for the (currently) highest scaled
-	 * screen image is above this threshold, increase the
-	 * {@link #maxScreenScaleIndex index} of the highest screen scale to use.
-	 * Similarly, if the rendering time for the (currently) second-highest
-	 * scaled screen image is below this threshold, decrease the
-	 * {@link #maxScreenScaleIndex index} of the highest screen scale to use.
+	 * Target rendering time (in nanoseconds) for the (currently) highest
+	 * scaled screen image. Used to create the default {@link #frameScheduler}.
 	 */
 	protected final long targetRenderNanos;
 
@@ -222,9 +244,7 @@ public class MultiResolutionRenderer
 	 * The index of the (coarsest) screen scale with which to start rendering.
 	 * Once this level is painted, rendering proceeds to lower screen scales
 	 * until index 0 (full resolution) has been reached. While rendering, the
-	 * maxScreenScaleIndex is adapted such that it is the highest index for
-	 * which rendering in {@link #targetRenderNanos} nanoseconds is still
-	 * possible.
+	 * maxScreenScaleIndex is adapted by the {@link #frameScheduler}.
 	 */
 	protected int maxScreenScaleIndex;
 
@@ -271,18 +291,168 @@ public class MultiResolutionRenderer
 	 */
 	protected boolean newFrameRequest;
 
+	/**
+	 * Whether a repaint was {@link #requestConverterRepaint() requested}
+	 * because only converter settings changed.
+	 */
+	protected boolean convertersChanged;
+
+	/**
+	 * What was rendered for one visible source in the last frame.
+	 */
+	private static class RenderedSource
+	{
+		/**
+		 * The projector for the source.
+		 */
+		VolatileProjector projector;
+
+		/**
+		 * Transform from the source (at mipmap level 0) to the screen image.
+		 */
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+
+		/**
+		 * The mipmap levels rendered by a {@link VolatileHierarchyProjector},
+		 * in render order.
+		 */
+		int[] mipmapLevels;
+	}
+
+	/**
+	 * The sources rendered in the last frame, for the
+	 * {@link #lastSourceIndices visible sources} at screen scale
+	 * {@link #lastScreenScaleIndex}. If only converters changed, projectors
+	 * that recorded raw values are continued with the new converters. If the
+	 * view was only translated by whole pixels, projectors are continued with
+	 * the image shifted.
+	 */
+	private RenderedSource[] lastRenderedSources = new RenderedSource[ 0 ];
+
+	private List< Integer > lastSourceIndices = Collections.emptyList();
+
+	private int lastScreenScaleIndex = -1;
+
+	private Interpolation lastInterpolation = null;
+
+	/**
+	 * How long to wait before repainting an incomplete frame, if
+	 * {@link #cacheControl} does not notify about loaded data.
+	 */
+	private static final long POLL_MILLIS = 1;
+
+	/**
+	 * How long to wait at most before repainting an incomplete frame, if
+	 * {@link #cacheControl} notifies about loaded data. This is a safety net
+	 * for data that arrived just before the frame was rendered.
+	 */
+	private static final long MAX_WAIT_MILLIS = 100;
+
+	/**
+	 * Notified by {@link #cacheControl} when data has been loaded.
+	 */
+	private final CacheControl.LoadListener loadListener;
+
+	/**
+	 * Whether {@link #cacheControl} notifies {@link #loadListener}.
+	 */
+	private final boolean notifiedOnLoad;
+
+	/**
+	 * Whether new data was loaded or a repaint was requested since rendering
+	 * of the current frame started. Incomplete frames are repainted only
+	 * after this was set (or after a timeout).
+	 */
+	private volatile boolean wakeUp;
+
 	/**
 	 * The timepoint for which last a projector was
-	 * {@link #createProjector(ViewerState, int, ARGBScreenImage) created}.
+	 * {@link #createProjector(ViewerState, List, int, ARGBScreenImage, boolean, int[]) created}.
 	 */
 	protected int previousTimepoint;
 
-	// TODO: should be settable
-	protected long[] iobudget = new long[] { 100l * 1000000l,  10l * 1000000l };
+	/**
+	 * Chooses {@link #maxScreenScaleIndex} and the IO budget from measured
+	 * render and IO times.
+	 */
+	protected FrameScheduler frameScheduler;
 
 	// TODO: should be settable
 	protected boolean prefetchCells = true;
 
+	/**
+	 * Predicts the viewer transforms of the next frames, for which cells are
+	 * prefetched with low priority.
+	 */
+	protected final MotionPredictor motionPredictor = new MotionPredictor( 2 );
+
+	/**
+	 * Counts how many of the cells needed for new viewer transforms or
+	 * timepoints were already loaded.
+	 */
+	protected final PrefetchStatistics prefetchStatistics = new PrefetchStatistics();
+
+	/**
+	 * Predicted viewer transforms of the next frames, updated when a projector
+	 * for a new viewer transform is created.
+	 */
+	private List< AffineTransform3D > predictedViewerTransforms = Collections.emptyList();
+
+	/**
+	 * Whether the projector that is being created is the first for its viewer
+	 * transform. Only then, prefetched cells are counted in
+	 * {@link #prefetchStatistics}.
+	 */
+	private boolean newViewerTransform;
+
+	/**
+	 * Whether the projector that is being created is the first for its
+	 * timepoint. Only then, following timepoints are read ahead and prefetched
+	 * cells are counted in {@link #prefetchStatistics}.
+	 */
+	private boolean newTimepoint;
+
+	/**
+	 * How many timepoints following the current one are prefetched. 0 disables
+	 * read-ahead.
+	 */
+	private int readAheadTimepoints = 0;
+
+	/**
+	 * Direction (+1 or -1) in which timepoints are read ahead.
+	 */
+	private int readAheadDirection = 1;
+
+	/**
+	 * How many mipmap levels coarser than the best level timepoints are read
+	 * ahead. Adapted to the fraction of cells that were already loaded when a
+	 * new timepoint was displayed.
+	 */
+	private int readAheadLevelOffset = 0;
+
+	private static final int MAX_READ_AHEAD_LEVEL_OFFSET = 4;
+
+	/**
+	 * How many cells are prefetched at most for predicted viewer transforms
+	 * and following timepoints, per new projector.
+	 */
+	private static final int MAX_LOOK_AHEAD_CELLS = 1024;
+
+	/**
+	 * Cells to prefetch for predicted viewer transforms and following
+	 * timepoints. They are collected while a projector is created, and
+	 * prefetched by {@link #paint(ViewerState)} after it released the locks on
+	 * the renderer and the viewer state.
+	 */
+	private final ArrayList< LookAhead > lookAheads = new ArrayList<>();
+
+	/**
+	 * Canvas coordinates of the point the user is looking at, or {@code null}
+	 * for the canvas center. Cells are requested and tiles are rendered
+	 * nearest to this point first.
+	 */
+	private volatile double[] focus = null;
+
 	/**
 	 * @param display
 	 *            The canvas that will display the images we render.
@@ -337,13 +507,15 @@ public class MultiResolutionRenderer
 		bufferedImageToRenderId = new HashMap<>();
 		renderImages = new ARGBScreenImage[ screenScales.length ][ 0 ];
 		renderMaskArrays = new byte[ 0 ][];
+		renderRawArrays = new float[ 0 ][];
 		screenImages = new ARGBScreenImage[ screenScales.length ][ 3 ];
 		bufferedImages = new BufferedImage[ screenScales.length ][ 3 ];
 		screenScaleTransforms = new AffineTransform3D[ screenScales.length ];
 
 		this.targetRenderNanos = targetRenderNanos;
+		frameScheduler = AdaptiveFrameScheduler.factory.create( screenScales, targetRenderNanos );
 
-		maxScreenScaleIndex = screenScales.length - 1;
+		maxScreenScaleIndex = frameScheduler.getMaxScreenScaleIndex();
 		requestedScreenScaleIndex = maxScreenScaleIndex;
 		renderingMayBeCancelled = true;
 		this.numRenderingThreads = numRenderingThreads;
@@ -352,7 +524,14 @@ public class MultiResolutionRenderer
 		this.accumulateProjectorFactory = accumulateProjectorFactory;
 		this.cacheControl = cacheControl;
 		newFrameRequest = false;
+		convertersChanged = false;
 		previousTimepoint = -1;
+		wakeUp = false;
+		loadListener = () -> {
+			if ( !wakeUp )
+				wakeUp();
+		};
+		notifiedOnLoad = cacheControl.addLoadListener( loadListener );
 	}
 
 	/**
@@ -442,6 +621,7 @@ public class MultiResolutionRenderer
 			renderMaskArrays = new byte[ numVisibleSources ][];
 			for ( int j = 0; j < numVisibleSources; ++j )
 				renderMaskArrays[ j ] = new byte[ size ];
+			renderRawArrays = new float[ numVisibleSources ][];
 			return true;
 		}
 		return false;
@@ -470,8 +650,33 @@ public class MultiResolutionRenderer
 
 		final boolean createProjector;
 
+		// whether the new projector renders the frame from scratch, i.e., it
+		// neither continues a shifted frame nor reuses raw values.
+		final boolean fromScratch;
+
+		// cells to prefetch for predicted viewer transforms and following
+		// timepoints, collected while creating the new projector.
+		final ArrayList< LookAhead > lookAhead;
+
 		synchronized ( this )
 		{
+			// If the view was only translated by whole pixels, continue
+			// rendering at the screen scale of the last frame. The shifted
+			// pixels were converted with the previous converter settings, so
+			// this is not possible if the converters changed.
+			final int[] shift;
+			if ( newFrameRequest && !resized && !convertersChanged )
+			{
+				synchronized ( state )
+				{
+					shift = getShiftToLastFrame( state );
+				}
+				if ( shift != null )
+					requestedScreenScaleIndex = lastScreenScaleIndex;
+			}
+			else
+				shift = null;
+
 			// Rendering may be cancelled unless we are rendering at coarsest
 			// screen scale and coarsest mipmap level.
 			renderingMayBeCancelled = ( requestedScreenScaleIndex < maxScreenScaleIndex );
@@ -479,8 +684,10 @@ public class MultiResolutionRenderer
 			clearQueue = newFrameRequest;
 			if ( clearQueue )
 				cacheControl.prepareNextFrame();
-			createProjector = newFrameRequest || resized || ( requestedScreenScaleIndex != currentScreenScaleIndex );
+			createProjector = newFrameRequest || convertersChanged || resized || ( requestedScreenScaleIndex != currentScreenScaleIndex );
+			final boolean reuseRawValues = convertersChanged && !newFrameRequest && !resized;
 			newFrameRequest = false;
+			convertersChanged = false;
 
 			if ( createProjector )
 			{
@@ -490,25 +697,39 @@ public class MultiResolutionRenderer
 				final ARGBScreenImage screenImage = screenImages[ currentScreenScaleIndex ][ renderId ];
 				synchronized ( state )
 				{
-					final int numVisibleSources = state.getVisibleSourceIndices().size();
+					final List< Integer > sourceIndices = getSourceIndicesInView( state );
+					final int numVisibleSources = useFusedAccumulation( state, sourceIndices ) ? 0 : sourceIndices.size();
 					checkRenewRenderImages( numVisibleSources );
-					checkRenewMaskArrays( numVisibleSources );
-					p = createProjector( state, currentScreenScaleIndex, screenImage );
+					final boolean renewedMaskArrays = checkRenewMaskArrays( numVisibleSources );
+					p = renewedMaskArrays
+							? createProjector( state, sourceIndices, currentScreenScaleIndex, screenImage, false, null )
+							: createProjector( state, sourceIndices, currentScreenScaleIndex, screenImage, reuseRawValues, shift );
+					fromScratch = renewedMaskArrays || ( !reuseRawValues && shift == null );
 				}
 				projector = p;
+				lookAhead = new ArrayList<>( lookAheads );
+				lookAheads.clear();
 			}
 			else
 			{
 				bufferedImage = null;
 				p = projector;
+				fromScratch = false;
+				lookAhead = new ArrayList<>();
 			}
 
 			requestedScreenScaleIndex = 0;
+			wakeUp = false;
 		}
 
 		// try rendering
+		final IoStatistics iostat = CacheIoTiming.getIoStatistics();
+		final long startTimeIo = iostat.getIoNanoTime();
 		final boolean success = p.map( createProjector );
 		final long rendertime = p.getLastFrameRenderNanoTime();
+		final long iotime = iostat.getIoNanoTime() - startTimeIo;
+
+		prefetchLookAhead( lookAhead );
 
 		synchronized ( this )
 		{
@@ -526,17 +747,14 @@ public class MultiResolutionRenderer
 							renderIdQueue.add( id );
 					}
 
-					if ( currentScreenScaleIndex == maxScreenScaleIndex )
-					{
-						if ( rendertime > targetRenderNanos && maxScreenScaleIndex < screenScales.length - 1 )
-							maxScreenScaleIndex++;
-						else if ( rendertime < targetRenderNanos / 3 && maxScreenScaleIndex > 0 )
-							maxScreenScaleIndex--;
-					}
-					else if ( currentScreenScaleIndex == maxScreenScaleIndex - 1 )
+					// Frames that continue a shifted frame or only reconvert
+					// raw values are much faster than rendering from scratch,
+					// and would make the frame scheduler underestimate
+					// rendering times.
+					if ( fromScratch )
 					{
-						if ( rendertime < targetRenderNanos && maxScreenScaleIndex > 0 )
-							maxScreenScaleIndex--;
+						frameScheduler.frameRendered( currentScreenScaleIndex, rendertime, iotime );
+						maxScreenScaleIndex = frameScheduler.getMaxScreenScaleIndex();
 					}
 //					System.out.println( String.format( "rendering:%4d ms", rendertime / 1000000 ) );
 //					System.out.println( "scale = " + currentScreenScaleIndex );
@@ -547,15 +765,7 @@ public class MultiResolutionRenderer
 					requestRepaint( currentScreenScaleIndex - 1 );
 				else if ( !p.isValid() )
 				{
-					try
-					{
-						Thread.sleep( 1 );
-					}
-					catch ( final InterruptedException e )
-					{
-						// restore interrupted state
-						Thread.currentThread().interrupt();
-					}
+					awaitWakeUp();
 					requestRepaint( currentScreenScaleIndex );
 				}
 			}
@@ -574,6 +784,19 @@ public class MultiResolutionRenderer
 		requestRepaint( maxScreenScaleIndex );
 	}
 
+	/**
+	 * Request a repaint of the display from the painter thread, after only
+	 * converter settings (display range, color) have changed. Sources that
+	 * recorded raw values for the last frame are then converted again
+	 * without resampling. If a full repaint is {@link #requestRepaint()
+	 * requested} at the same time, that takes precedence.
+	 */
+	public synchronized void requestConverterRepaint()
+	{
+		convertersChanged = true;
+		requestRepaint( currentScreenScaleIndex );
+	}
+
 	/**
 	 * Request a repaint of the display from the painter thread. The painter
 	 * thread will trigger a {@link #paint(ViewerState)} as soon as possible (that is,
@@ -586,9 +809,39 @@ public class MultiResolutionRenderer
 			projector.cancel();
 		if ( screenScaleIndex > requestedScreenScaleIndex )
 			requestedScreenScaleIndex = screenScaleIndex;
+		wakeUp();
 		painterThread.requestRepaint();
 	}
 
+	private synchronized void wakeUp()
+	{
+		wakeUp = true;
+		notifyAll();
+	}
+
+	/**
+	 * Wait until new data was loaded or a repaint was requested since
+	 * rendering of the current frame started. If {@link #cacheControl} does
+	 * not notify about loaded data, wait {@link #POLL_MILLIS} instead.
+	 * <p>
+	 * Must be called while holding the lock on {@code this}.
+	 */
+	private void awaitWakeUp()
+	{
+		final long timeout = notifiedOnLoad ? MAX_WAIT_MILLIS : POLL_MILLIS;
+		final long deadline = System.currentTimeMillis() + timeout;
+		try
+		{
+			for ( long t = timeout; !wakeUp && t > 0; t = deadline - System.currentTimeMillis() )
+				wait( t );
+		}
+		catch ( final InterruptedException e )
+		{
+			// restore interrupted state
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	/**
 	 * DON'T USE THIS.
 	 * <p>
@@ -599,6 +852,7 @@ public class MultiResolutionRenderer
 	 */
 	public void kill()
 	{
+		cacheControl.removeLoadListener( loadListener );
 		if ( display instanceof TransformAwareBufferedImageOverlayRenderer )
 			( ( TransformAwareBufferedImageOverlayRenderer ) display ).kill();
 		projector = null;
@@ -608,16 +862,29 @@ public class MultiResolutionRenderer
 			renderImages[ i ] = null;
 		for ( int i = 0; i < renderMaskArrays.length; ++i )
 			renderMaskArrays[ i ] = null;
+		for ( int i = 0; i < renderRawArrays.length; ++i )
+			renderRawArrays[ i ] = null;
+		fusedAccumulator = null;
+		lastRenderedSources = new RenderedSource[ 0 ];
+		lookAheads.clear();
 		for ( int i = 0; i < screenImages.length; ++i )
 			screenImages[ i ] = null;
 		for ( int i = 0; i < bufferedImages.length; ++i )
 			bufferedImages[ i ] = null;
 	}
 
+	/**
+	 * Create a projector for the sources {@code visibleSourceIndices} (a
+	 * subset of the visible sources of {@code viewerState}, see
+	 * {@link #getSourceIndicesInView(ViewerState)}).
+	 */
 	private VolatileProjector createProjector(
 			final ViewerState viewerState,
+			final List< Integer > visibleSourceIndices,
 			final int screenScaleIndex,
-			final ARGBScreenImage screenImage )
+			final ARGBScreenImage screenImage,
+			final boolean reuseRawValues,
+			final int[] shift )
 	{
 		/*
 		 * This shouldn't be necessary, with
@@ -625,14 +892,41 @@ public class MultiResolutionRenderer
 		 */
 //		CacheIoTiming.getIoTimeBudget().clear(); // clear time budget such that prefetching doesn't wait for loading blocks.
 		final List< SourceState< ? > > sourceStates = viewerState.getSources();
-		final List< Integer > visibleSourceIndices = viewerState.getVisibleSourceIndices();
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerState.getViewerTransform( viewerTransform );
+		lookAheads.clear();
+		newViewerTransform = motionPredictor.update( viewerTransform, System.currentTimeMillis() );
+		if ( newViewerTransform )
+			predictedViewerTransforms = motionPredictor.predict();
+		newTimepoint = viewerState.getCurrentTimepoint() != previousTimepoint;
+		final long requestedCells = prefetchStatistics.getNumRequestedCells();
+		final long loadedCells = prefetchStatistics.getNumLoadedCells();
+		final boolean fused = useFusedAccumulation( viewerState, visibleSourceIndices );
+		final boolean reuse = !fused
+				&& ( reuseRawValues || shift != null )
+				&& screenScaleIndex == lastScreenScaleIndex
+				&& visibleSourceIndices.equals( lastSourceIndices );
+		final RenderedSource[] previousRenderedSources = reuse ? lastRenderedSources : null;
+		lastRenderedSources = new RenderedSource[ fused ? 0 : visibleSourceIndices.size() ];
+		lastSourceIndices = new ArrayList<>( visibleSourceIndices );
+		lastScreenScaleIndex = screenScaleIndex;
+		lastInterpolation = viewerState.getInterpolation();
+		for ( int j = 0; j < lastRenderedSources.length; ++j )
+		{
+			final RenderedSource r = new RenderedSource();
+			getSourceToScreen( viewerState, sourceStates.get( visibleSourceIndices.get( j ) ).getSpimSource(), screenScaleTransforms[ screenScaleIndex ], r.sourceToScreen );
+			lastRenderedSources[ j ] = r;
+		}
+
 		VolatileProjector projector;
 		if ( visibleSourceIndices.isEmpty() )
 			projector = new EmptyProjector<>( screenImage );
+		else if ( fused )
+			projector = createFusedProjector( viewerState, visibleSourceIndices, screenImage );
 		else if ( visibleSourceIndices.size() == 1 )
 		{
 			final int i = visibleSourceIndices.get( 0 );
-			projector = createSingleSourceProjector( viewerState, sourceStates.get( i ), i, currentScreenScaleIndex, screenImage, renderMaskArrays[ 0 ] );
+			projector = createSingleSourceProjector( viewerState, sourceStates.get( i ), i, currentScreenScaleIndex, screenImage, 0, previousRenderedSources, shift );
 		}
 		else
 		{
@@ -643,23 +937,330 @@ public class MultiResolutionRenderer
 			for ( final int i : visibleSourceIndices )
 			{
 				final ARGBScreenImage renderImage = renderImages[ currentScreenScaleIndex ][ j ];
-				final byte[] maskArray = renderMaskArrays[ j ];
-				++j;
 				final VolatileProjector p = createSingleSourceProjector(
 						viewerState, sourceStates.get( i ), i, currentScreenScaleIndex,
-						renderImage, maskArray );
+						renderImage, j, previousRenderedSources, shift );
+				++j;
 				sourceProjectors.add( p );
 				sources.add( sourceStates.get( i ).getSpimSource() );
 				sourceImages.add( renderImage );
 			}
 			projector = accumulateProjectorFactory.createAccumulateProjector( sourceProjectors, sources, sourceImages, screenImage, numRenderingThreads, renderingExecutorService );
 		}
+		if ( newTimepoint && readAheadTimepoints > 0 )
+			adaptReadAheadLevelOffset(
+					prefetchStatistics.getNumRequestedCells() - requestedCells,
+					prefetchStatistics.getNumLoadedCells() - loadedCells );
 		previousTimepoint = viewerState.getCurrentTimepoint();
 		viewerState.getViewerTransform( currentProjectorTransform );
-		CacheIoTiming.getIoTimeBudget().reset( iobudget );
+		CacheIoTiming.getIoTimeBudget().reset( frameScheduler.getIoBudget() );
 		return projector;
 	}
 
+	/**
+	 * Set the {@link FrameScheduler} that chooses the screen scale at which
+	 * rendering starts and the IO budget.
+	 */
+	public synchronized void setFrameScheduler( final FrameScheduler frameScheduler )
+	{
+		this.frameScheduler = frameScheduler;
+		maxScreenScaleIndex = frameScheduler.getMaxScreenScaleIndex();
+	}
+
+	public synchronized FrameScheduler getFrameScheduler()
+	{
+		return frameScheduler;
+	}
+
+	/**
+	 * Get statistics about how many of the cells needed for new viewer
+	 * transforms or timepoints were already loaded (for example, because they
+	 * were prefetched for predicted viewer transforms or read ahead).
+	 */
+	public PrefetchStatistics getPrefetchStatistics()
+	{
+		return prefetchStatistics;
+	}
+
+	/**
+	 * Set the point the user is looking at, for example the mouse position.
+	 * Within each mipmap level, cells are requested and tiles are rendered in
+	 * order of increasing distance from this point, such that this region
+	 * sharpens first when loading is slow.
+	 *
+	 * @param focus
+	 *            canvas coordinates of the focus point, or {@code null} to use
+	 *            the canvas center.
+	 */
+	public void setFocus( final RealLocalizable focus )
+	{
+		this.focus = ( focus == null ) ? null : new double[] { focus.getDoublePosition( 0 ), focus.getDoublePosition( 1 ) };
+	}
+
+	/**
+	 * Get the {@link #setFocus(RealLocalizable) focus point} in coordinates of
+	 * {@code screenImage}.
+	 */
+	private RealPoint getScreenFocus( final AffineTransform3D screenScaleTransform, final ARGBScreenImage screenImage )
+	{
+		final double[] f = focus;
+		if ( f == null )
+			return new RealPoint( 0.5 * screenImage.dimension( 0 ), 0.5 * screenImage.dimension( 1 ), 0 );
+		final RealPoint screenFocus = new RealPoint( 3 );
+		screenScaleTransform.apply( new RealPoint( f[ 0 ], f[ 1 ], 0 ), screenFocus );
+		return screenFocus;
+	}
+
+	/**
+	 * Set how many timepoints following the current one are prefetched, for
+	 * example during playback of a time-series. Cells of the visible region are
+	 * prefetched with lowest priority, after all cells of the current frame.
+	 * The mipmap level of read-ahead adapts to how many cells are loaded in
+	 * time.
+	 *
+	 * @param numTimepoints
+	 *            how many timepoints to read ahead. 0 disables read-ahead.
+	 * @param direction
+	 *            positive to read ahead following timepoints, negative to read
+	 *            ahead preceding timepoints.
+	 */
+	public synchronized void setTimepointReadAhead( final int numTimepoints, final int direction )
+	{
+		readAheadTimepoints = Math.max( 0, numTimepoints );
+		readAheadDirection = direction < 0 ? -1 : 1;
+		if ( readAheadTimepoints == 0 )
+			readAheadLevelOffset = 0;
+	}
+
+	/**
+	 * Read ahead at coarser mipmap levels if less than 80% of the cells of a
+	 * new timepoint were loaded, and at finer levels if more than 95% were.
+	 */
+	private void adaptReadAheadLevelOffset( final long requestedCells, final long loadedCells )
+	{
+		if ( requestedCells <= 0 )
+			return;
+		final double hitRate = ( double ) loadedCells / requestedCells;
+		if ( hitRate < 0.8 && readAheadLevelOffset < MAX_READ_AHEAD_LEVEL_OFFSET )
+			++readAheadLevelOffset;
+		else if ( hitRate > 0.95 && readAheadLevelOffset > 0 )
+			--readAheadLevelOffset;
+	}
+
+	/**
+	 * Set how many sources must be visible for rendering them with a
+	 * {@link FusedAccumulateProjectorARGB}. Fused rendering is used only with
+	 * the default {@link AccumulateProjectorARGB#factory} and if all visible
+	 * sources are volatile. Non-positive values disable fused rendering.
+	 */
+	public synchronized void setFusedAccumulationThreshold( final int threshold )
+	{
+		fusedAccumulationThreshold = threshold;
+	}
+
+	/**
+	 * Get the indices of the visible sources of {@code viewerState} that
+	 * intersect the screen, that is, whose bounding box intersects the
+	 * viewing plane within the screen. Other sources are neither prefetched
+	 * nor rendered.
+	 */
+	private List< Integer > getSourceIndicesInView( final ViewerState viewerState )
+	{
+		final List< SourceState< ? > > sourceStates = viewerState.getSources();
+		final List< Integer > visibleSourceIndices = viewerState.getVisibleSourceIndices();
+		final ArrayList< Integer > sourceIndices = new ArrayList<>( visibleSourceIndices.size() );
+		for ( final int i : visibleSourceIndices )
+			if ( getScreenFootprint( viewerState, sourceStates.get( i ).getSpimSource(), 0 ) != null )
+				sourceIndices.add( i );
+		return sourceIndices;
+	}
+
+	/**
+	 * Get the footprint of {@code source} on the screen image at the given
+	 * screen scale, or {@code null} if the source is not visible.
+	 */
+	private ScreenFootprint getScreenFootprint(
+			final ViewerState viewerState,
+			final Source< ? > source,
+			final int screenScaleIndex )
+	{
+		final int t = viewerState.getCurrentTimepoint();
+		if ( !source.isPresent( t ) )
+			return null;
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		getSourceToScreen( viewerState, source, screenScaleTransforms[ screenScaleIndex ], sourceToScreen );
+		final ARGBScreenImage screenImage = screenImages[ screenScaleIndex ][ 0 ];
+		return ScreenFootprint.of(
+				source.getSource( t, 0 ),
+				sourceToScreen,
+				1,
+				( int ) screenImage.dimension( 0 ),
+				( int ) screenImage.dimension( 1 ) );
+	}
+
+	/**
+	 * Whether the sources {@code visibleSourceIndices} of {@code viewerState}
+	 * should be rendered with a {@link FusedAccumulateProjectorARGB}.
+	 */
+	private boolean useFusedAccumulation( final ViewerState viewerState, final List< Integer > visibleSourceIndices )
+	{
+		final int threshold = fusedAccumulationThreshold;
+		if ( threshold <= 0
+				|| visibleSourceIndices.size() < Math.max( 2, threshold )
+				|| !useVolatileIfAvailable
+				|| accumulateProjectorFactory != AccumulateProjectorARGB.factory )
+			return false;
+		final List< SourceState< ? > > sourceStates = viewerState.getSources();
+		for ( final int i : visibleSourceIndices )
+			if ( getVolatileSourceState( sourceStates.get( i ) ) == null )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Get the volatile version of {@code source}, or {@code null} if there is
+	 * none.
+	 */
+	private static SourceState< ? extends Volatile< ? > > getVolatileSourceState( final SourceState< ? > source )
+	{
+		if ( source.asVolatile() != null )
+			return source.asVolatile();
+		else if ( source.getSpimSource().getType() instanceof Volatile )
+		{
+			@SuppressWarnings( "unchecked" )
+			final SourceState< ? extends Volatile< ? > > s = ( SourceState< ? extends Volatile< ? > > ) source;
+			return s;
+		}
+		else
+			return null;
+	}
+
+	private VolatileProjector createFusedProjector(
+			final ViewerState viewerState,
+			final List< Integer > visibleSourceIndices,
+			final ARGBScreenImage screenImage )
+	{
+		final List< SourceState< ? > > sourceStates = viewerState.getSources();
+		final ArrayList< FusedAccumulateProjectorARGB.FusedSource< ? > > fusedSources = new ArrayList<>();
+		for ( final int i : visibleSourceIndices )
+		{
+			final FusedAccumulateProjectorARGB.FusedSource< ? > fusedSource = createFusedSource(
+					viewerState, getVolatileSourceState( sourceStates.get( i ) ), screenImage );
+			if ( fusedSource != null )
+				fusedSources.add( fusedSource );
+		}
+
+		final int size = ( int ) screenImages[ 0 ][ 0 ].size();
+		if ( fusedAccumulator == null || fusedAccumulator.length < size )
+			fusedAccumulator = new int[ size ];
+
+		return new FusedAccumulateProjectorARGB( fusedSources, screenImage, fusedAccumulator, numRenderingThreads, renderingExecutorService );
+	}
+
+	/**
+	 * Create a {@link FusedAccumulateProjectorARGB.FusedSource} for
+	 * {@code source}, or return {@code null} if the source is not visible in
+	 * {@code screenImage}.
+	 */
+	private < T extends Volatile< ? > > FusedAccumulateProjectorARGB.FusedSource< T > createFusedSource(
+			final ViewerState viewerState,
+			final SourceState< T > source,
+			final ARGBScreenImage screenImage )
+	{
+		final Source< T > spimSource = source.getSpimSource();
+		final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
+		final ScreenFootprint footprint = getScreenFootprint( viewerState, spimSource, currentScreenScaleIndex );
+		if ( footprint == null )
+			return null;
+
+		final ArrayList< RandomAccessible< T > > renderList = new ArrayList<>();
+		for ( final Level l : getRenderLevels( viewerState, spimSource, screenImage ) )
+			renderList.add( getTransformedSource( viewerState, spimSource, screenScaleTransform, l.getMipmapLevel(), l.getRenderCacheHints() ) );
+		return new FusedAccumulateProjectorARGB.FusedSource<>( renderList, source.getConverter(), footprint );
+	}
+
+	/**
+	 * Get the mipmap levels to render for {@code spimSource}, in render order.
+	 * If {@link #prefetchCells} is enabled, the cells required for
+	 * {@code screenImage} are prefetched.
+	 */
+	private List< Level > getRenderLevels(
+			final ViewerState viewerState,
+			final Source< ? > spimSource,
+			final ARGBScreenImage screenImage )
+	{
+		final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
+		final int t = viewerState.getCurrentTimepoint();
+
+		final MipmapOrdering ordering = MipmapOrdering.class.isInstance( spimSource ) ?
+			( MipmapOrdering ) spimSource : new DefaultMipmapOrdering( spimSource );
+
+		final AffineTransform3D screenTransform = new AffineTransform3D();
+		viewerState.getViewerTransform( screenTransform );
+		screenTransform.preConcatenate( screenScaleTransform );
+		final MipmapHints hints = ordering.getMipmapHints( screenTransform, t, previousTimepoint );
+		final List< Level > levels = hints.getLevels();
+
+		if ( prefetchCells )
+		{
+			final RealPoint screenFocus = getScreenFocus( screenScaleTransform, screenImage );
+			final AffineTransform3D viewerTransform = new AffineTransform3D();
+			viewerState.getViewerTransform( viewerTransform );
+			final PrefetchStatistics statistics = ( newViewerTransform || newTimepoint ) ? prefetchStatistics : null;
+			int lowestPriority = 0;
+			Collections.sort( levels, MipmapOrdering.prefetchOrderComparator );
+			for ( final Level l : levels )
+			{
+				final CacheHints cacheHints = l.getPrefetchCacheHints();
+				if ( cacheHints == null || cacheHints.getLoadingStrategy() != LoadingStrategy.DONTLOAD )
+					prefetch( viewerState, viewerTransform, spimSource, t, screenScaleTransform, l.getMipmapLevel(), cacheHints, screenImage, statistics, screenFocus );
+				if ( cacheHints != null )
+					lowestPriority = Math.max( lowestPriority, cacheHints.getQueuePriority() );
+			}
+
+			// Prefetch the best mipmap level for predicted viewer transforms,
+			// after all cells of the current frame. This only records what to
+			// prefetch, see lookAheads.
+			final CacheHints lookAheadCacheHints = new CacheHints( LoadingStrategy.VOLATILE, lowestPriority, false );
+			if ( newViewerTransform )
+			{
+				for ( final AffineTransform3D predicted : predictedViewerTransforms )
+				{
+					final AffineTransform3D predictedScreenTransform = predicted.copy();
+					predictedScreenTransform.preConcatenate( screenScaleTransform );
+					final int level = MipmapTransforms.getBestMipMapLevel( predictedScreenTransform, spimSource, t );
+					lookAheads.add( new LookAhead( viewerState, predicted, spimSource, t, screenScaleTransform, level, lookAheadCacheHints, screenImage, screenFocus, 0 ) );
+				}
+			}
+
+			// Read ahead the visible region of following timepoints, nearest
+			// timepoint first.
+			if ( newTimepoint && readAheadTimepoints > 0 )
+			{
+				final int numTimepoints = viewerState.getNumTimepoints();
+				final int coarsestLevel = spimSource.getNumMipmapLevels() - 1;
+				for ( int k = 1; k <= readAheadTimepoints; ++k )
+				{
+					final int tk = t + k * readAheadDirection;
+					if ( tk < 0 || tk >= numTimepoints )
+						break;
+					if ( !spimSource.isPresent( tk ) )
+						continue;
+					final int bestLevel = MipmapTransforms.getBestMipMapLevel( screenTransform, spimSource, tk );
+					final int level = Math.min( bestLevel + readAheadLevelOffset, coarsestLevel );
+					lookAheads.add( new LookAhead( viewerState, viewerTransform, spimSource, tk, screenScaleTransform, level, lookAheadCacheHints, screenImage, screenFocus, k ) );
+				}
+			}
+		}
+
+		Collections.sort( levels, MipmapOrdering.renderOrderComparator );
+
+		if ( hints.renewHintsAfterPaintingOnce() )
+			newFrameRequest = true;
+
+		return levels;
+	}
+
 	private static class SimpleVolatileProjector< A, B > extends SimpleInterruptibleProjector< A, B > implements VolatileProjector
 	{
 		private boolean valid = false;
@@ -689,23 +1290,44 @@ public class MultiResolutionRenderer
 		}
 	}
 
+	/**
+	 * Create a projector for one source.
+	 *
+	 * @param renderIndex
+	 *            index of the source in the list of visible sources. The
+	 *            projector is stored at this index in
+	 *            {@link #lastRenderedSources}.
+	 * @param previousRenderedSources
+	 *            if non-null, the sources rendered in the last frame, which
+	 *            may be continued with the current converter (if
+	 *            {@code shift == null}) or shifted.
+	 * @param shift
+	 *            if non-null, the translation in X and Y with respect to the
+	 *            last frame.
+	 */
 	private < T > VolatileProjector createSingleSourceProjector(
 			final ViewerState viewerState,
 			final SourceState< T > source,
 			final int sourceIndex,
 			final int screenScaleIndex,
 			final ARGBScreenImage screenImage,
-			final byte[] maskArray )
+			final int renderIndex,
+			final RenderedSource[] previousRenderedSources,
+			final int[] shift )
 	{
 		if ( useVolatileIfAvailable )
 		{
-			if ( source.asVolatile() != null )
-				return createSingleSourceVolatileProjector( viewerState, source.asVolatile(), sourceIndex, screenScaleIndex, screenImage, maskArray );
-			else if ( source.getSpimSource().getType() instanceof Volatile )
+			final SourceState< ? extends Volatile< ? > > vsource = getVolatileSourceState( source );
+			if ( vsource != null )
 			{
-				@SuppressWarnings( "unchecked" )
-				final SourceState< ? extends Volatile< ? > > vsource = ( SourceState< ? extends Volatile< ? > > ) source;
-				return createSingleSourceVolatileProjector( viewerState, vsource, sourceIndex, screenScaleIndex, screenImage, maskArray );
+				final RenderedSource previous = previousRenderedSources == null ? null : previousRenderedSources[ renderIndex ];
+				VolatileProjector p = null;
+				if ( previous != null && shift == null )
+					p = continueSingleSourceVolatileProjector( previous.projector, vsource, screenImage );
+				if ( p == null )
+					p = createSingleSourceVolatileProjector( viewerState, vsource, sourceIndex, screenScaleIndex, screenImage, renderIndex, shift == null ? null : previous, shift );
+				lastRenderedSources[ renderIndex ].projector = p;
+				return p;
 			}
 		}
 
@@ -716,47 +1338,81 @@ public class MultiResolutionRenderer
 				source.getConverter(), screenImage, numRenderingThreads, renderingExecutorService );
 	}
 
+	/**
+	 * If {@code previous} recorded raw values, create a projector that
+	 * continues it with the current converter of {@code source}. Otherwise,
+	 * return {@code null}.
+	 */
+	private static < T extends Volatile< ? > > VolatileProjector continueSingleSourceVolatileProjector(
+			final VolatileProjector previous,
+			final SourceState< T > source,
+			final ARGBScreenImage screenImage )
+	{
+		if ( previous instanceof VolatileHierarchyProjector && ( ( VolatileHierarchyProjector< ?, ? > ) previous ).hasRawValues() )
+		{
+			@SuppressWarnings( "unchecked" )
+			final VolatileHierarchyProjector< T, ? > p = ( VolatileHierarchyProjector< T, ? > ) previous;
+			return new VolatileHierarchyProjector<>( p, source.getConverter(), screenImage );
+		}
+		return null;
+	}
+
 	private < T extends Volatile< ? > > VolatileProjector createSingleSourceVolatileProjector(
 			final ViewerState viewerState,
 			final SourceState< T > source,
 			final int sourceIndex,
 			final int screenScaleIndex,
 			final ARGBScreenImage screenImage,
-			final byte[] maskArray )
+			final int renderIndex,
+			final RenderedSource previous,
+			final int[] shift )
 	{
+		final byte[] maskArray = renderMaskArrays[ renderIndex ];
 		final AffineTransform3D screenScaleTransform = screenScaleTransforms[ currentScreenScaleIndex ];
 		final ArrayList< RandomAccessible< T > > renderList = new ArrayList<>();
 		final Source< T > spimSource = source.getSpimSource();
-		final int t = viewerState.getCurrentTimepoint();
-
-		final MipmapOrdering ordering = MipmapOrdering.class.isInstance( spimSource ) ?
-			( MipmapOrdering ) spimSource : new DefaultMipmapOrdering( spimSource );
-
-		final AffineTransform3D screenTransform = new AffineTransform3D();
-		viewerState.getViewerTransform( screenTransform );
-		screenTransform.preConcatenate( screenScaleTransform );
-		final MipmapHints hints = ordering.getMipmapHints( screenTransform, t, previousTimepoint );
-		final List< Level > levels = hints.getLevels();
-
-		if ( prefetchCells )
+		final List< Level > levels = getRenderLevels( viewerState, spimSource, screenImage );
+		final int[] mipmapLevels = new int[ levels.size() ];
+		for ( int i = 0; i < mipmapLevels.length; ++i )
 		{
-			Collections.sort( levels, MipmapOrdering.prefetchOrderComparator );
-			for ( final Level l : levels )
+			final Level l = levels.get( i );
+			mipmapLevels[ i ] = l.getMipmapLevel();
+			renderList.add( getTransformedSource( viewerState, spimSource, screenScaleTransform, l.getMipmapLevel(), l.getRenderCacheHints() ) );
+		}
+		lastRenderedSources[ renderIndex ].mipmapLevels = mipmapLevels;
+
+		// continue the previous projector with the image shifted, if it
+		// rendered the same mipmap levels
+		final VolatileHierarchyProjector< T, ARGBType > projector;
+		if ( previous != null
+				&& previous.projector instanceof VolatileHierarchyProjector
+				&& Arrays.equals( mipmapLevels, previous.mipmapLevels ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final VolatileHierarchyProjector< T, ARGBType > p = ( VolatileHierarchyProjector< T, ARGBType > ) previous.projector;
+			projector = new VolatileHierarchyProjector<>( p, renderList, source.getConverter(), screenImage, shift[ 0 ], shift[ 1 ] );
+		}
+		else
+		{
+			// record raw values if they can be converted again later
+			final T type = spimSource.getType();
+			if ( type instanceof Type && type.get() instanceof RealType )
 			{
-				final CacheHints cacheHints = l.getPrefetchCacheHints();
-				if ( cacheHints == null || cacheHints.getLoadingStrategy() != LoadingStrategy.DONTLOAD )
-					prefetch( viewerState, spimSource, screenScaleTransform, l.getMipmapLevel(), cacheHints, screenImage );
+				if ( renderRawArrays[ renderIndex ] == null )
+					renderRawArrays[ renderIndex ] = new float[ maskArray.length ];
+				projector = new VolatileHierarchyProjector<>( renderList, source.getConverter(), screenImage, maskArray, renderRawArrays[ renderIndex ], numRenderingThreads, renderingExecutorService );
 			}
+			else
+				projector = new VolatileHierarchyProjector<>( renderList, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService );
 		}
 
-		Collections.sort( levels, MipmapOrdering.renderOrderComparator );
-		for ( final Level l : levels )
-			renderList.add( getTransformedSource( viewerState, spimSource, screenScaleTransform, l.getMipmapLevel(), l.getRenderCacheHints() ) );
-
-		if ( hints.renewHintsAfterPaintingOnce() )
-			newFrameRequest = true;
-
-		return new VolatileHierarchyProjector<>( renderList, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService );
+		// only render the tiles covered by the source
+		final ScreenFootprint footprint = getScreenFootprint( viewerState, spimSource, currentScreenScaleIndex );
+		if ( footprint != null )
+			projector.setClip( footprint );
+		final RealPoint screenFocus = getScreenFocus( screenScaleTransform, screenImage );
+		projector.setFocus( screenFocus.getDoublePosition( 0 ), screenFocus.getDoublePosition( 1 ) );
+		return projector;
 	}
 
 	private static < T > RandomAccessible< T > getTransformedSource(
@@ -776,24 +1432,114 @@ public class MultiResolutionRenderer
 		final RealRandomAccessible< T > ipimg = source.getInterpolatedSource( timepoint, mipmapIndex, interpolation );
 
 		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		getSourceToScreen( viewerState, source, screenScaleTransform, mipmapIndex, sourceToScreen );
+
+		// nearest-neighbor views that are aligned with the source axes can
+		// be sampled without going through the interpolator
+		final RandomAccessible< T > axisAligned = AxisAlignedNearestNeighborView.create( ipimg, sourceToScreen );
+		if ( axisAligned != null )
+			return axisAligned;
+
+		return RealViews.affine( ipimg, sourceToScreen );
+	}
+
+	/**
+	 * Get the transform from {@code source} at mipmap level 0 to the screen
+	 * image with the given {@code screenScaleTransform}.
+	 */
+	private static void getSourceToScreen(
+			final ViewerState viewerState,
+			final Source< ? > source,
+			final AffineTransform3D screenScaleTransform,
+			final AffineTransform3D sourceToScreen )
+	{
+		getSourceToScreen( viewerState, source, screenScaleTransform, 0, sourceToScreen );
+	}
+
+	private static void getSourceToScreen(
+			final ViewerState viewerState,
+			final Source< ? > source,
+			final AffineTransform3D screenScaleTransform,
+			final int mipmapIndex,
+			final AffineTransform3D sourceToScreen )
+	{
 		viewerState.getViewerTransform( sourceToScreen );
 		final AffineTransform3D sourceTransform = new AffineTransform3D();
-		source.getSourceTransform( timepoint, mipmapIndex, sourceTransform );
+		source.getSourceTransform( viewerState.getCurrentTimepoint(), mipmapIndex, sourceTransform );
 		sourceToScreen.concatenate( sourceTransform );
 		sourceToScreen.preConcatenate( screenScaleTransform );
+	}
 
-		return RealViews.affine( ipimg, sourceToScreen );
+	/**
+	 * Check whether, compared to the last frame, all visible sources are only
+	 * translated by the same whole number of pixels in X and Y (at the screen
+	 * scale of the last frame), and nothing else changed. All sources must
+	 * have been rendered by a {@link VolatileHierarchyProjector}, which can
+	 * be continued with the shifted image.
+	 *
+	 * @return the translation {@code (dx, dy)}, or {@code null} if the last
+	 *         frame cannot be reused this way.
+	 */
+	private int[] getShiftToLastFrame( final ViewerState viewerState )
+	{
+		if ( lastScreenScaleIndex < 0
+				|| lastRenderedSources.length == 0
+				|| viewerState.getCurrentTimepoint() != previousTimepoint
+				|| viewerState.getInterpolation() != lastInterpolation
+				|| !getSourceIndicesInView( viewerState ).equals( lastSourceIndices ) )
+			return null;
+
+		final List< SourceState< ? > > sourceStates = viewerState.getSources();
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		int[] shift = null;
+		for ( int j = 0; j < lastRenderedSources.length; ++j )
+		{
+			// only a VolatileHierarchyProjector can be continued shifted,
+			// other sources would be rendered from scratch at the last
+			// (full) screen scale
+			if ( !( lastRenderedSources[ j ].projector instanceof VolatileHierarchyProjector ) )
+				return null;
+			final Source< ? > source = sourceStates.get( lastSourceIndices.get( j ) ).getSpimSource();
+			getSourceToScreen( viewerState, source, screenScaleTransforms[ lastScreenScaleIndex ], sourceToScreen );
+			final AffineTransform3D last = lastRenderedSources[ j ].sourceToScreen;
+			for ( int r = 0; r < 3; ++r )
+				for ( int c = 0; c < 3; ++c )
+					if ( !almostEqual( sourceToScreen.get( r, c ), last.get( r, c ) ) )
+						return null;
+			if ( !almostEqual( sourceToScreen.get( 2, 3 ), last.get( 2, 3 ) ) )
+				return null;
+			final double dx = sourceToScreen.get( 0, 3 ) - last.get( 0, 3 );
+			final double dy = sourceToScreen.get( 1, 3 ) - last.get( 1, 3 );
+			final int[] s = new int[] { ( int ) Math.round( dx ), ( int ) Math.round( dy ) };
+			if ( !almostEqual( dx, s[ 0 ] ) || !almostEqual( dy, s[ 1 ] ) )
+				return null;
+			if ( shift == null )
+				shift = s;
+			else if ( !Arrays.equals( shift, s ) )
+				return null;
+		}
+		if ( shift[ 0 ] == 0 && shift[ 1 ] == 0 )
+			return null;
+		return shift;
+	}
+
+	private static boolean almostEqual( final double a, final double b )
+	{
+		return Math.abs( a - b ) <= 1e-6 * Math.max( 1, Math.max( Math.abs( a ), Math.abs( b ) ) );
 	}
 
 	private static < T > void prefetch(
 			final ViewerState viewerState,
+			final AffineTransform3D viewerTransform,
 			final Source< T > source,
+			final int timepoint,
 			final AffineTransform3D screenScaleTransform,
 			final int mipmapIndex,
 			final CacheHints prefetchCacheHints,
-			final Dimensions screenInterval )
+			final Dimensions screenInterval,
+			final PrefetchStatistics statistics,
+			final RealLocalizable screenFocus )
 	{
-		final int timepoint = viewerState.getCurrentTimepoint();
 		final RandomAccessibleInterval< T > img = source.getSource( timepoint, mipmapIndex );
 		if ( VolatileCachedCellImg.class.isInstance( img ) )
 		{
@@ -814,15 +1560,125 @@ public class MultiResolutionRenderer
 
 			final Interpolation interpolation = viewerState.getInterpolation();
 
-			final AffineTransform3D sourceToScreen = new AffineTransform3D();
-			viewerState.getViewerTransform( sourceToScreen );
+			final AffineTransform3D sourceToScreen = viewerTransform.copy();
 			final AffineTransform3D sourceTransform = new AffineTransform3D();
 			source.getSourceTransform( timepoint, mipmapIndex, sourceTransform );
 			sourceToScreen.concatenate( sourceTransform );
 			sourceToScreen.preConcatenate( screenScaleTransform );
 
-			Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+			Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, statistics, screenFocus );
+		}
+	}
+
+	/**
+	 * Cells of one source, timepoint, and mipmap level to prefetch for a
+	 * predicted viewer transform or a following timepoint.
+	 */
+	private static class LookAhead
+	{
+		final Source< ? > source;
+
+		final int timepoint;
+
+		final int mipmapLevel;
+
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+
+		final Interpolation interpolation;
+
+		final CacheHints cacheHints;
+
+		final Dimensions screenInterval;
+
+		final RealLocalizable screenFocus;
+
+		/**
+		 * 0 for predicted viewer transforms, {@code k} for the {@code k}th
+		 * following timepoint. Look-aheads are prefetched in this order.
+		 */
+		final int order;
+
+		LookAhead(
+				final ViewerState viewerState,
+				final AffineTransform3D viewerTransform,
+				final Source< ? > source,
+				final int timepoint,
+				final AffineTransform3D screenScaleTransform,
+				final int mipmapLevel,
+				final CacheHints cacheHints,
+				final Dimensions screenInterval,
+				final RealLocalizable screenFocus,
+				final int order )
+		{
+			this.source = source;
+			this.timepoint = timepoint;
+			this.mipmapLevel = mipmapLevel;
+			this.interpolation = viewerState.getInterpolation();
+			this.cacheHints = cacheHints;
+			this.screenInterval = screenInterval;
+			this.screenFocus = screenFocus;
+			this.order = order;
+
+			final AffineTransform3D sourceTransform = new AffineTransform3D();
+			source.getSourceTransform( timepoint, mipmapLevel, sourceTransform );
+			sourceToScreen.set( viewerTransform );
+			sourceToScreen.concatenate( sourceTransform );
+			sourceToScreen.preConcatenate( screenScaleTransform );
+		}
+	}
+
+	private static final Comparator< LookAhead > lookAheadOrder = new Comparator< LookAhead >()
+	{
+		@Override
+		public int compare( final LookAhead o1, final LookAhead o2 )
+		{
+			return Integer.compare( o1.order, o2.order );
 		}
+	};
+
+	/**
+	 * Prefetch cells for predicted viewer transforms first, then for
+	 * following timepoints, nearest first, until
+	 * {@link #MAX_LOOK_AHEAD_CELLS} cells were requested. This must be called
+	 * without holding the locks on the renderer or the viewer state.
+	 */
+	private static void prefetchLookAhead( final ArrayList< LookAhead > lookAheads )
+	{
+		Collections.sort( lookAheads, lookAheadOrder );
+		int remaining = MAX_LOOK_AHEAD_CELLS;
+		for ( final LookAhead lookAhead : lookAheads )
+		{
+			if ( remaining <= 0 )
+				break;
+			remaining -= prefetch( lookAhead, remaining );
+		}
+	}
+
+	/**
+	 * Prefetch at most {@code maxCells} cells for {@code lookAhead}.
+	 *
+	 * @return how many cells were requested.
+	 */
+	private static int prefetch( final LookAhead lookAhead, final int maxCells )
+	{
+		final RandomAccessibleInterval< ? > img = lookAhead.source.getSource( lookAhead.timepoint, lookAhead.mipmapLevel );
+		if ( !VolatileCachedCellImg.class.isInstance( img ) )
+			return 0;
+
+		final VolatileCachedCellImg< ?, ? > cellImg = ( VolatileCachedCellImg< ?, ? > ) img;
+		final int[] cellDimensions = new int[ 3 ];
+		cellImg.getCellGrid().cellDimensions( cellDimensions );
+		final long[] dimensions = new long[ 3 ];
+		cellImg.dimensions( dimensions );
+		final RandomAccess< ? > cellsRandomAccess = cellImg.getCells().randomAccess();
+
+		// The image may be rendered in the current frame, so restore the
+		// render hints afterwards.
+		final CacheHints hints = cellImg.getCacheHints();
+		cellImg.setCacheHints( lookAhead.cacheHints );
+		final int numCells = Prefetcher.fetchCells( lookAhead.sourceToScreen, cellDimensions, dimensions, lookAhead.screenInterval, lookAhead.interpolation, cellsRandomAccess, lookAhead.screenFocus, maxCells );
+		cellImg.setCacheHints( hints );
+		return numCells;
 	}
 
 	private static TransformAwareRenderTarget wrapTransformAwareRenderTarget( final RenderTarget t )
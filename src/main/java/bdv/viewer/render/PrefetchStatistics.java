@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how many of the cells needed for rendering were already loaded when
+ * they were first requested for a frame.
+ */
+public class PrefetchStatistics
+{
+	private final AtomicLong numRequestedCells = new AtomicLong();
+
+	private final AtomicLong numLoadedCells = new AtomicLong();
+
+	void add( final long requested, final long loaded )
+	{
+		numRequestedCells.addAndGet( requested );
+		numLoadedCells.addAndGet( loaded );
+	}
+
+	public long getNumRequestedCells()
+	{
+		return numRequestedCells.get();
+	}
+
+	public long getNumLoadedCells()
+	{
+		return numLoadedCells.get();
+	}
+
+	/**
+	 * Get the fraction of requested cells that were already loaded, or
+	 * {@code NaN} if no cells were requested.
+	 */
+	public double getHitRate()
+	{
+		final long requested = numRequestedCells.get();
+		return requested == 0 ? Double.NaN : ( double ) numLoadedCells.get() / requested;
+	}
+
+	public void reset()
+	{
+		numRequestedCells.set( 0 );
+		numLoadedCells.set( 0 );
+	}
+}
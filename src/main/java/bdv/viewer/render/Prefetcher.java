@@ -29,9 +29,16 @@
  */
 package bdv.viewer.render;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
 import net.imglib2.Dimensions;
 import net.imglib2.RandomAccess;
+import net.imglib2.RealLocalizable;
 import net.imglib2.RealPoint;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.realtransform.AffineTransform3D;
 import bdv.viewer.Interpolation;
@@ -56,12 +63,130 @@ public class Prefetcher
 	 */
 	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess )
 	{
-		new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+		fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, null );
+	}
+
+	/**
+	 * Access cells that will be needed for rendering to the screen, and count
+	 * how many of them were already loaded.
+	 *
+	 * @param sourceToScreen
+	 *            source-to-screen transform
+	 * @param cellDimensions
+	 *            standard size of a source cell
+	 * @param dimensions
+	 *            dimensions of the source {@link CellImg}
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered
+	 * @param interpolation
+	 *            the interpolation method
+	 * @param cellsRandomAccess
+	 *            access to the source cells
+	 * @param statistics
+	 *            accessed and already loaded cells are added to this. May be
+	 *            {@code null}.
+	 */
+	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess, final PrefetchStatistics statistics )
+	{
+		fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, statistics, null );
+	}
+
+	/**
+	 * Access cells that will be needed for rendering to the screen, nearest to
+	 * a focus point first, and count how many of them were already loaded.
+	 *
+	 * @param sourceToScreen
+	 *            source-to-screen transform
+	 * @param cellDimensions
+	 *            standard size of a source cell
+	 * @param dimensions
+	 *            dimensions of the source {@link CellImg}
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered
+	 * @param interpolation
+	 *            the interpolation method
+	 * @param cellsRandomAccess
+	 *            access to the source cells
+	 * @param statistics
+	 *            accessed and already loaded cells are added to this. May be
+	 *            {@code null}.
+	 * @param focus
+	 *            screen coordinates of the point the user is looking at. Cells
+	 *            are accessed in order of increasing distance from this point.
+	 *            If {@code null}, the screen center is used.
+	 */
+	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess, final PrefetchStatistics statistics, final RealLocalizable focus )
+	{
+		final Prefetcher prefetcher = scanCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, focus, Integer.MAX_VALUE );
+		if ( statistics != null )
+			statistics.add( prefetcher.numCells, prefetcher.numLoadedCells );
+	}
+
+	/**
+	 * Access at most {@code maxCells} of the cells that will be needed for
+	 * rendering to the screen, nearest to a focus point first.
+	 *
+	 * @param sourceToScreen
+	 *            source-to-screen transform
+	 * @param cellDimensions
+	 *            standard size of a source cell
+	 * @param dimensions
+	 *            dimensions of the source {@link CellImg}
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered
+	 * @param interpolation
+	 *            the interpolation method
+	 * @param cellsRandomAccess
+	 *            access to the source cells
+	 * @param focus
+	 *            screen coordinates of the point the user is looking at. Cells
+	 *            are accessed in order of increasing distance from this point.
+	 *            If {@code null}, the screen center is used.
+	 * @param maxCells
+	 *            how many cells may be accessed at most.
+	 * @return how many cells were accessed.
+	 */
+	public static int fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess, final RealLocalizable focus, final int maxCells )
+	{
+		return scanCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, focus, maxCells ).numCells;
+	}
+
+	private static Prefetcher scanCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess, final RealLocalizable focus, final int maxCells )
+	{
+		final Prefetcher prefetcher = new Prefetcher();
+		prefetcher.maxCells = maxCells;
+		if ( focus != null )
+		{
+			prefetcher.focusX = focus.getDoublePosition( 0 );
+			prefetcher.focusY = focus.getDoublePosition( 1 );
+		}
+		else
+		{
+			prefetcher.focusX = 0.5 * screenInterval.dimension( 0 );
+			prefetcher.focusY = 0.5 * screenInterval.dimension( 1 );
+		}
+		prefetcher.scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+		return prefetcher;
 	}
 
 	private Prefetcher()
 	{}
 
+	/**
+	 * How many cells were accessed.
+	 */
+	private int numCells = 0;
+
+	/**
+	 * How many of the accessed cells were already loaded.
+	 */
+	private int numLoadedCells = 0;
+
+	/**
+	 * How many cells may be accessed at most.
+	 */
+	private int maxCells;
+
 	/**
 	 * The transformed vector in screen coordinate when moving by by one cell in
 	 * X direction.
@@ -80,11 +205,79 @@ public class Prefetcher
 	 */
 	private final double[] offsetPos = new double[ 3 ];
 
+	/**
+	 * The corners of a cell under the current transform and interpolation
+	 * method, as seen from the min corner of the cell. Corner {@code i} is at
+	 * the max of the cell in dimension {@code d} if bit {@code d} of {@code i}
+	 * is set.
+	 */
+	private final double[][] cornerOffsets = new double[ 8 ][ 3 ];
+
+	/**
+	 * The edges of a cell, as pairs of indices into {@link #cornerOffsets}.
+	 */
+	private static final int[][] edges = {
+			{ 0, 1 }, { 2, 3 }, { 4, 5 }, { 6, 7 },
+			{ 0, 2 }, { 1, 3 }, { 4, 6 }, { 5, 7 },
+			{ 0, 4 }, { 1, 5 }, { 2, 6 }, { 3, 7 } };
+
+	/**
+	 * Vertices of the intersection of a cell with the screen plane.
+	 */
+	private final double[] polygonX = new double[ 24 ];
+
+	private final double[] polygonY = new double[ 24 ];
+
+	private final double[] polygonAngle = new double[ 24 ];
+
+	/**
+	 * Screen coordinates of the point from which distances of cells are
+	 * measured.
+	 */
+	private double focusX;
+
+	private double focusY;
+
+	/**
+	 * Cells that intersect the screen, with their distance from the focus
+	 * point. Cells are accessed in order of increasing distance.
+	 */
+	private final ArrayList< CellCandidate > candidates = new ArrayList<>();
+
+	private static class CellCandidate
+	{
+		final long[] position;
+
+		final double distance;
+
+		CellCandidate( final long[] position, final double distance )
+		{
+			this.position = position;
+			this.distance = distance;
+		}
+	}
+
+	private static final Comparator< CellCandidate > distanceComparator = new Comparator< CellCandidate >()
+	{
+		@Override
+		public int compare( final CellCandidate o1, final CellCandidate o2 )
+		{
+			return Double.compare( o1.distance, o2.distance );
+		}
+	};
+
 	private static final double eps = 0.0000001;
 
 	/**
 	 * Access cells that will be needed for rendering to the screen.
 	 *
+	 * <p>
+	 * Candidate cells are found by scanning rows of cells in the bounding box
+	 * of the screen in source coordinates, restricted to the cells whose
+	 * screen z range contains 0. Only cells whose intersection with the screen
+	 * plane overlaps the screen (see {@link #intersectScreen}) are accessed,
+	 * in order of increasing distance from the focus point.
+	 *
 	 * @param sourceToScreen
 	 *            source-to-screen transform
 	 * @param cellDimensions
@@ -192,12 +385,136 @@ public class Prefetcher
 							( y + offsetPos[ 1 ] >= 0 ) &&
 							( y + offsetNeg[ 1 ] < h ) )
 					{
-						cellsRandomAccess.get();
+						final double distance = intersectScreen( x, y, pScreen.getDoublePosition( 2 ), w, h );
+						if ( distance >= 0 )
+						{
+							final long[] position = new long[ 3 ];
+							cellsRandomAccess.localize( position );
+							candidates.add( new CellCandidate( position, distance ) );
+						}
 					}
 					pSource.move( cellDimensions[ 0 ], 0 );
 				}
 			}
 		}
+
+		Collections.sort( candidates, distanceComparator );
+		for ( final CellCandidate candidate : candidates )
+		{
+			if ( numCells >= maxCells )
+				break;
+			cellsRandomAccess.setPosition( candidate.position );
+			final Object cell = cellsRandomAccess.get();
+			++numCells;
+			if ( cell instanceof Cell )
+			{
+				final Object data = ( ( Cell< ? > ) cell ).getData();
+				if ( !( data instanceof VolatileAccess ) || ( ( VolatileAccess ) data ).isValid() )
+					++numLoadedCells;
+			}
+		}
+	}
+
+	/**
+	 * Intersect the cell whose min corner is at screen coordinates
+	 * {@code (ax, ay, az)} with the screen plane {@code z = 0}, and check
+	 * whether the resulting convex polygon overlaps the screen rectangle
+	 * {@code [0, w) x [0, h)}.
+	 *
+	 * @return the squared distance of the polygon centroid from the focus
+	 *         point, or a negative value if the cell does not overlap the
+	 *         screen.
+	 */
+	private double intersectScreen( final double ax, final double ay, final double az, final int w, final int h )
+	{
+		// clip the cell edges against the screen plane
+		int n = 0;
+		for ( final int[] edge : edges )
+		{
+			final double[] c0 = cornerOffsets[ edge[ 0 ] ];
+			final double[] c1 = cornerOffsets[ edge[ 1 ] ];
+			final double z0 = az + c0[ 2 ];
+			final double z1 = az + c1[ 2 ];
+			if ( z0 == 0 && z1 == 0 )
+			{
+				polygonX[ n ] = ax + c0[ 0 ];
+				polygonY[ n++ ] = ay + c0[ 1 ];
+				polygonX[ n ] = ax + c1[ 0 ];
+				polygonY[ n++ ] = ay + c1[ 1 ];
+			}
+			else if ( ( z0 <= 0 && z1 >= 0 ) || ( z0 >= 0 && z1 <= 0 ) )
+			{
+				final double t = z0 / ( z0 - z1 );
+				polygonX[ n ] = ax + c0[ 0 ] + t * ( c1[ 0 ] - c0[ 0 ] );
+				polygonY[ n++ ] = ay + c0[ 1 ] + t * ( c1[ 1 ] - c0[ 1 ] );
+			}
+		}
+		if ( n == 0 )
+			return -1;
+
+		// separating axes of the screen rectangle
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		double cx = 0;
+		double cy = 0;
+		for ( int i = 0; i < n; ++i )
+		{
+			minX = Math.min( minX, polygonX[ i ] );
+			maxX = Math.max( maxX, polygonX[ i ] );
+			minY = Math.min( minY, polygonY[ i ] );
+			maxY = Math.max( maxY, polygonY[ i ] );
+			cx += polygonX[ i ];
+			cy += polygonY[ i ];
+		}
+		if ( maxX < 0 || minX >= w || maxY < 0 || minY >= h )
+			return -1;
+		cx /= n;
+		cy /= n;
+
+		// order vertices around the centroid
+		for ( int i = 0; i < n; ++i )
+		{
+			final double a = Math.atan2( polygonY[ i ] - cy, polygonX[ i ] - cx );
+			final double px = polygonX[ i ];
+			final double py = polygonY[ i ];
+			int j = i;
+			for ( ; j > 0 && polygonAngle[ j - 1 ] > a; --j )
+			{
+				polygonAngle[ j ] = polygonAngle[ j - 1 ];
+				polygonX[ j ] = polygonX[ j - 1 ];
+				polygonY[ j ] = polygonY[ j - 1 ];
+			}
+			polygonAngle[ j ] = a;
+			polygonX[ j ] = px;
+			polygonY[ j ] = py;
+		}
+
+		// separating axes of the polygon edges
+		for ( int i = 0; i < n; ++i )
+		{
+			final int k = ( i + 1 ) % n;
+			final double ex = polygonX[ k ] - polygonX[ i ];
+			final double ey = polygonY[ k ] - polygonY[ i ];
+			final double side = ex * ( cy - polygonY[ i ] ) - ey * ( cx - polygonX[ i ] );
+			if ( Math.abs( side ) < eps )
+				continue;
+			boolean separated = true;
+			for ( int corner = 0; corner < 4 && separated; ++corner )
+			{
+				final double rx = ( corner & 1 ) == 0 ? 0 : w;
+				final double ry = ( corner & 2 ) == 0 ? 0 : h;
+				final double s = ex * ( ry - polygonY[ i ] ) - ey * ( rx - polygonX[ i ] );
+				separated = side > 0 ? s < 0 : s > 0;
+			}
+			if ( separated )
+				return -1;
+		}
+
+		final double dx = cx - focusX;
+		final double dy = cy - focusY;
+		return dx * dx + dy * dy;
 	}
 
 	/**
@@ -226,7 +543,8 @@ public class Prefetcher
 	 * The box <em>(0,0,0)-cellDims</em> is projected to screen coordinates
 	 * (padded for interpolation). The bounding box in screen coordinates with
 	 * respect to the projected cell origin <em>(0,0,0)</em> is computed and
-	 * stored in {@link #offsetNeg} and {@link #offsetPos}.
+	 * stored in {@link #offsetNeg} and {@link #offsetPos}. The projected
+	 * corners are stored in {@link #cornerOffsets}.
 	 */
 	private void checkProtoCell( final int[] cellDims, final AffineTransform3D sourceToScreen, final Interpolation interpolation )
 	{
@@ -280,6 +598,8 @@ public class Prefetcher
 			}
 			offsetNeg[ d ] = min - pScreenAnchor.getDoublePosition( d );
 			offsetPos[ d ] = max - pScreenAnchor.getDoublePosition( d );
+			for ( i = 0; i < 8; ++i )
+				cornerOffsets[ i ][ d ] = pScreen[ i ].getDoublePosition( d ) - pScreenAnchor.getDoublePosition( d );
 		}
 	}
 }
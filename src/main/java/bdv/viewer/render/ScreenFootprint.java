@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import net.imglib2.Interval;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * The bounding box of the pixels of a screen image that show (part of) a
+ * source. This is computed by intersecting the source bounding box,
+ * transformed to screen coordinates, with the screen plane {@code z = 0}.
+ */
+public final class ScreenFootprint
+{
+	public final int minX;
+
+	public final int minY;
+
+	public final int maxX;
+
+	public final int maxY;
+
+	private ScreenFootprint( final int minX, final int minY, final int maxX, final int maxY )
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	public int width()
+	{
+		return maxX - minX + 1;
+	}
+
+	public int height()
+	{
+		return maxY - minY + 1;
+	}
+
+	/**
+	 * Whether the footprint intersects the rectangle
+	 * {@code [x0, x0 + w) x [y0, y0 + h)}.
+	 */
+	public boolean intersects( final int x0, final int y0, final int w, final int h )
+	{
+		return minX < x0 + w && maxX >= x0 && minY < y0 + h && maxY >= y0;
+	}
+
+	/**
+	 * Compute the footprint of {@code sourceInterval} on a screen image of
+	 * size {@code screenWidth x screenHeight}.
+	 *
+	 * @param sourceInterval
+	 *            the source bounding box, in source voxel coordinates.
+	 * @param sourceToScreen
+	 *            transforms source voxel coordinates to screen coordinates.
+	 * @param margin
+	 *            the bounding box is enlarged by this many voxels in every
+	 *            direction, e.g., to account for interpolation.
+	 * @param screenWidth
+	 *            width of the screen image.
+	 * @param screenHeight
+	 *            height of the screen image.
+	 * @return the footprint clipped to the screen image, or {@code null} if
+	 *         the source is not visible.
+	 */
+	public static ScreenFootprint of(
+			final Interval sourceInterval,
+			final AffineTransform3D sourceToScreen,
+			final double margin,
+			final int screenWidth,
+			final int screenHeight )
+	{
+		// corners of the source bounding box in screen coordinates
+		final double[][] corners = new double[ 8 ][ 3 ];
+		final double[] s = new double[ 3 ];
+		for ( int i = 0; i < 8; ++i )
+		{
+			for ( int d = 0; d < 3; ++d )
+				s[ d ] = ( ( i >> d ) & 1 ) == 0
+						? sourceInterval.min( d ) - margin
+						: sourceInterval.max( d ) + margin;
+			sourceToScreen.apply( s, corners[ i ] );
+		}
+
+		// bounding box of the intersection of the box edges with z = 0
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < 8; ++i )
+		{
+			for ( int d = 0; d < 3; ++d )
+			{
+				final int j = i | ( 1 << d );
+				if ( j == i )
+					continue;
+				final double[] a = corners[ i ];
+				final double[] b = corners[ j ];
+				if ( ( a[ 2 ] > 0 && b[ 2 ] > 0 ) || ( a[ 2 ] < 0 && b[ 2 ] < 0 ) )
+					continue;
+				final double t = ( a[ 2 ] == b[ 2 ] ) ? 0 : a[ 2 ] / ( a[ 2 ] - b[ 2 ] );
+				final double x = a[ 0 ] + t * ( b[ 0 ] - a[ 0 ] );
+				final double y = a[ 1 ] + t * ( b[ 1 ] - a[ 1 ] );
+				minX = Math.min( minX, x );
+				minY = Math.min( minY, y );
+				maxX = Math.max( maxX, x );
+				maxY = Math.max( maxY, y );
+				if ( a[ 2 ] == b[ 2 ] )
+				{
+					// edge lies in the plane
+					minX = Math.min( minX, b[ 0 ] );
+					minY = Math.min( minY, b[ 1 ] );
+					maxX = Math.max( maxX, b[ 0 ] );
+					maxY = Math.max( maxY, b[ 1 ] );
+				}
+			}
+		}
+		if ( minX > maxX )
+			return null;
+
+		final int x0 = ( int ) Math.max( 0, Math.floor( minX ) );
+		final int y0 = ( int ) Math.max( 0, Math.floor( minY ) );
+		final int x1 = ( int ) Math.min( screenWidth - 1, Math.ceil( maxX ) );
+		final int y1 = ( int ) Math.min( screenHeight - 1, Math.ceil( maxY ) );
+		if ( x0 > x1 || y0 > y1 )
+			return null;
+		return new ScreenFootprint( x0, y0, x1, y1 );
+	}
+}
@@ -38,7 +38,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
@@ -50,7 +49,9 @@ import net.imglib2.cache.iotiming.IoStatistics;
 import net.imglib2.converter.Converter;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.Type;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.ByteType;
 import net.imglib2.ui.AbstractInterruptibleProjector;
 import net.imglib2.ui.util.StopWatch;
@@ -60,6 +61,24 @@ import net.imglib2.view.Views;
  * {@link VolatileProjector} for a hierarchy of {@link Volatile} inputs.  After each
  * {@link #map()} call, the projector has a {@link #isValid() state} that
  * signalizes whether all projected pixels were perfect.
+ * <p>
+ * The target is processed in square tiles of {@link #TILE_SIZE} pixels. For
+ * each tile, the coarsest level at which any of its pixels was drawn is
+ * recorded, and tiles that are already complete at the level of the current
+ * pass are skipped.
+ * <p>
+ * Optionally, the raw values of drawn pixels are recorded (for sources of
+ * {@link RealType} values). A projector created from a previous one with
+ * {@link #VolatileHierarchyProjector(VolatileHierarchyProjector, Converter, RandomAccessibleInterval)}
+ * starts by converting the recorded values with its own converter, instead of
+ * reading the sources again. This is used to quickly repaint after converter
+ * settings (display range, color) changed.
+ * <p>
+ * A projector created from a previous one with
+ * {@link #VolatileHierarchyProjector(VolatileHierarchyProjector, List, Converter, RandomAccessibleInterval, int, int)}
+ * starts by shifting the pixels drawn by the previous projector, and only
+ * renders pixels that were exposed by the shift. This is used to quickly
+ * repaint after the view was translated by whole pixels.
  *
  * @author Stephan Saalfeld &lt;saalfeld@mpi-cbg.de&gt;
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
@@ -72,6 +91,68 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 
 	protected final Img< ByteType > mask;
 
+	/**
+	 * Width and height of tiles.
+	 */
+	public static final int TILE_SIZE = 64;
+
+	/**
+	 * Number of tiles in X and Y.
+	 */
+	protected final int numTilesX;
+
+	protected final int numTilesY;
+
+	/**
+	 * For each tile, the maximum {@link #mask} value of its pixels, that is,
+	 * the coarsest level at which a pixel of the tile was drawn
+	 * ({@code Byte.MAX_VALUE} if a pixel was not drawn yet).
+	 */
+	protected final byte[] tileMask;
+
+	/**
+	 * Raw values of drawn pixels, or {@code null} if raw values are not
+	 * recorded.
+	 */
+	private final float[] rawArray;
+
+	/**
+	 * A copy of a valid source value, used as a template for converting
+	 * recorded raw values. {@code null} until the first pixel is drawn.
+	 */
+	private volatile A rawPrototype;
+
+	/**
+	 * Whether the next {@link #map(boolean)} should start by converting the
+	 * recorded raw values of drawn pixels.
+	 */
+	private boolean reconvert;
+
+	/**
+	 * If not {@code null}, the next {@link #map(boolean)} starts by clearing
+	 * all tiles that do not intersect this footprint, and marks them as
+	 * drawn at the best level.
+	 */
+	private ScreenFootprint clip;
+
+	/**
+	 * The order in which tiles are rendered in each pass, nearest to the
+	 * {@link #setFocus(double, double) focus point} first. If {@code null},
+	 * tiles are rendered row by row.
+	 */
+	private int[] tileOrder;
+
+	/**
+	 * If non-null, the next {@link #map(boolean)} should start by shifting
+	 * the pixels drawn into this (previous) target by ({@link #shiftX},
+	 * {@link #shiftY}).
+	 */
+	private RandomAccessibleInterval< B > shiftSource;
+
+	private int shiftX;
+
+	private int shiftY;
+
 	protected volatile boolean valid = false;
 
 	protected int numInvalidLevels;
@@ -148,6 +229,88 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 			final byte[] maskArray,
 			final int numThreads,
 			final ExecutorService executorService )
+	{
+		this( sources, converter, target, maskArray, null, numThreads, executorService, true );
+	}
+
+	/**
+	 * Create a projector that records the raw values of drawn pixels into
+	 * {@code rawArray}. This requires that {@code A} is a {@link Type} with
+	 * {@link RealType} values.
+	 */
+	public VolatileHierarchyProjector(
+			final List< ? extends RandomAccessible< A > > sources,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target,
+			final byte[] maskArray,
+			final float[] rawArray,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this( sources, converter, target, maskArray, rawArray, numThreads, executorService, true );
+	}
+
+	/**
+	 * Create a projector that continues where {@code previous} stopped, but
+	 * with a different {@code converter} and {@code target}. The first
+	 * {@link #map(boolean)} converts the raw values recorded by
+	 * {@code previous} (which must {@link #hasRawValues() have them}), and
+	 * then refines pixels that are still missing.
+	 */
+	public VolatileHierarchyProjector(
+			final VolatileHierarchyProjector< A, ? > previous,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target )
+	{
+		this( previous.sources, converter, target, previous.maskArray, previous.rawArray, previous.numThreads, previous.executorService, false );
+		System.arraycopy( previous.tileMask, 0, tileMask, 0, tileMask.length );
+		numInvalidLevels = previous.numInvalidLevels;
+		rawPrototype = previous.rawPrototype;
+		reconvert = true;
+	}
+
+	/**
+	 * Create a projector for {@code sources} that continues where
+	 * {@code previous} stopped, but with the image shifted by
+	 * ({@code shiftX}, {@code shiftY}) pixels. That is, the new pixel at
+	 * (x,y) is the pixel at (x-shiftX, y-shiftY) of {@code previous}. The
+	 * first {@link #map(boolean)} shifts the pixels drawn by
+	 * {@code previous} into {@code target}, and then renders only the exposed
+	 * pixels.
+	 * <p>
+	 * {@code sources} must be the sources of {@code previous} translated by
+	 * the shift, that is, the same mipmap levels in the same order.
+	 * {@code target} must have the same size as the target of
+	 * {@code previous}, and may be the same image.
+	 */
+	public VolatileHierarchyProjector(
+			final VolatileHierarchyProjector< A, B > previous,
+			final List< ? extends RandomAccessible< A > > sources,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target,
+			final int shiftX,
+			final int shiftY )
+	{
+		this( sources, converter, target, previous.maskArray, previous.rawArray, previous.numThreads, previous.executorService, false );
+		if ( previous.width != width || previous.height != height )
+			throw new IllegalArgumentException( "previous target has different size" );
+		rawPrototype = previous.rawPrototype;
+		shiftSource = previous.target;
+		this.shiftX = shiftX;
+		this.shiftY = shiftY;
+		numInvalidLevels = sources.size();
+		Arrays.fill( tileMask, Byte.MAX_VALUE );
+	}
+
+	private VolatileHierarchyProjector(
+			final List< ? extends RandomAccessible< A > > sources,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target,
+			final byte[] maskArray,
+			final float[] rawArray,
+			final int numThreads,
+			final ExecutorService executorService,
+			final boolean clearMask )
 	{
 		super( Math.max( 2, sources.get( 0 ).numDimensions() ), converter, target );
 
@@ -155,6 +318,7 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		numInvalidLevels = sources.size();
 
 		this.maskArray = maskArray;
+		this.rawArray = rawArray;
 		mask = ArrayImgs.bytes( maskArray, target.dimension( 0 ), target.dimension( 1 ) );
 
 		iterableTarget = Views.iterable( target );
@@ -170,11 +334,16 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		height = ( int )target.dimension( 1 );
 		cr = -width;
 
+		numTilesX = ( width + TILE_SIZE - 1 ) / TILE_SIZE;
+		numTilesY = ( height + TILE_SIZE - 1 ) / TILE_SIZE;
+		tileMask = new byte[ numTilesX * numTilesY ];
+
 		this.numThreads = numThreads;
 		this.executorService = executorService;
 
 		lastFrameRenderNanoTime = -1;
-		clearMask();
+		if ( clearMask )
+			clearMask();
 	}
 
 	@Override
@@ -200,6 +369,55 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		return valid;
 	}
 
+	/**
+	 * Whether this projector records the raw values of drawn pixels.
+	 */
+	public boolean hasRawValues()
+	{
+		return rawArray != null;
+	}
+
+	/**
+	 * Restrict rendering to the tiles that intersect {@code footprint}. All
+	 * other tiles are set to 100% transparent zero at the start of the next
+	 * {@link #map(boolean)} and are not sampled.
+	 *
+	 * @param footprint
+	 *            the screen footprint of the sources, in target pixel
+	 *            coordinates.
+	 */
+	public void setClip( final ScreenFootprint footprint )
+	{
+		clip = footprint;
+	}
+
+	/**
+	 * Render tiles in order of increasing distance from the point
+	 * {@code (x, y)}, such that the region the user is looking at is sampled
+	 * (and its missing data requested) first.
+	 *
+	 * @param x
+	 *            X coordinate of the focus point, in target pixel coordinates.
+	 * @param y
+	 *            Y coordinate of the focus point, in target pixel coordinates.
+	 */
+	public void setFocus( final double x, final double y )
+	{
+		final long[] keys = new long[ tileMask.length ];
+		for ( int tile = 0; tile < tileMask.length; ++tile )
+		{
+			final double dx = ( tile % numTilesX + 0.5 ) * TILE_SIZE - x;
+			final double dy = ( tile / numTilesX + 0.5 ) * TILE_SIZE - y;
+			final long distance = ( long ) Math.sqrt( dx * dx + dy * dy );
+			keys[ tile ] = ( distance << 32 ) | tile;
+		}
+		Arrays.sort( keys );
+		final int[] order = new int[ keys.length ];
+		for ( int i = 0; i < keys.length; ++i )
+			order[ i ] = ( int ) keys[ i ];
+		tileOrder = order;
+	}
+
 	/**
 	 * Set all pixels in target to 100% transparent zero, and mask to all
 	 * Integer.MAX_VALUE.
@@ -207,18 +425,37 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 	public void clearMask()
 	{
 		Arrays.fill( maskArray, 0, ( int ) mask.size(), Byte.MAX_VALUE );
+		Arrays.fill( tileMask, Byte.MAX_VALUE );
 		numInvalidLevels = sources.size();
 	}
 
 	/**
-	 * Clear target pixels that were never written.
+	 * Clear target pixels that were never written. Only tiles that contain
+	 * such pixels are visited.
 	 */
 	protected void clearUntouchedTargetPixels()
 	{
-		final Cursor< ByteType > maskCursor = mask.cursor();
-		for ( final B t : iterableTarget )
-			if ( maskCursor.next().get() == Byte.MAX_VALUE )
-				t.setZero();
+		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
+		for ( int tile = 0; tile < tileMask.length; ++tile )
+		{
+			if ( tileMask[ tile ] != Byte.MAX_VALUE )
+				continue;
+			final int x0 = ( tile % numTilesX ) * TILE_SIZE;
+			final int y0 = ( tile / numTilesX ) * TILE_SIZE;
+			final int w = Math.min( TILE_SIZE, width - x0 );
+			final int h = Math.min( TILE_SIZE, height - y0 );
+			for ( int y = 0; y < h; ++y )
+			{
+				targetRandomAccess.setPosition( min[ 0 ] + x0, 0 );
+				targetRandomAccess.setPosition( min[ 1 ] + y0 + y, 1 );
+				for ( int x = 0, mi = ( y0 + y ) * width + x0; x < w; ++x, ++mi )
+				{
+					if ( maskArray[ mi ] == Byte.MAX_VALUE )
+						targetRandomAccess.get().setZero();
+					targetRandomAccess.fwd( 0 );
+				}
+			}
+		}
 	}
 
 	@Override
@@ -239,14 +476,7 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
 //		final long startIoBytes = iostat.getIoBytes();
 
-		final int numTasks;
-		if ( numThreads > 1 )
-		{
-			numTasks = Math.min( numThreads * 10, height );
-		}
-		else
-			numTasks = 1;
-		final double taskHeight = ( double )height / numTasks;
+		final int numTasks = numThreads > 1 ? numThreads : 1;
 
 		int i;
 
@@ -254,6 +484,26 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 
 		final boolean createExecutor = ( executorService == null );
 		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
+		if ( shiftSource != null )
+		{
+			shiftPreviousFrame();
+			shiftSource = null;
+		}
+		if ( clip != null )
+		{
+			clearClippedTiles( clip );
+			clip = null;
+		}
+		if ( reconvert )
+		{
+			if ( !reconvertDrawnPixels( ex, numTasks ) )
+			{
+				if ( createExecutor )
+					ex.shutdown();
+				return false;
+			}
+			reconvert = false;
+		}
 		for ( i = 0; i < numInvalidLevels && !valid; ++i )
 		{
 			final byte iFinal = ( byte ) i;
@@ -261,63 +511,78 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 			valid = true;
 			numInvalidPixels.set( 0 );
 
-			final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
-			for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+			// tiles that have pixels coarser than level i
+			final int[] pendingTiles = new int[ tileMask.length ];
+			int numPendingTiles = 0;
+			for ( int t = 0; t < tileMask.length; ++t )
 			{
-				final int myOffset = width * ( int ) ( taskNum * taskHeight );
-				final long myMinY = min[ 1 ] + ( int ) ( taskNum * taskHeight );
-				final int myHeight = ( int ) ( ( (taskNum == numTasks - 1 ) ? height : ( int ) ( ( taskNum + 1 ) * taskHeight ) ) - myMinY - min[ 1 ] );
+				final int tile = tileOrder == null ? t : tileOrder[ t ];
+				if ( tileMask[ tile ] > iFinal )
+					pendingTiles[ numPendingTiles++ ] = tile;
+			}
+			if ( numPendingTiles == 0 )
+				continue;
 
+			// each task takes the next pending tile until none are left
+			final int numTiles = numPendingTiles;
+			final AtomicInteger nextTile = new AtomicInteger();
+			final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
+			for ( int taskNum = 0; taskNum < Math.min( numTasks, numTiles ); ++taskNum )
+			{
 				final Callable< Void > r = new Callable< Void >()
 				{
 					@Override
 					public Void call()
 					{
-						if ( interrupted.get() )
-							return null;
-
 						final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
-						final Cursor< ByteType > maskCursor = mask.cursor();
 						final RandomAccess< A > sourceRandomAccess = sources.get( iFinal ).randomAccess( sourceInterval );
-						int myNumInvalidPixels = 0;
-
 						final long[] smin = new long[ n ];
 						System.arraycopy( min, 0, smin, 0, n );
-						smin[ 1 ] = myMinY;
-						sourceRandomAccess.setPosition( smin );
-
-						targetRandomAccess.setPosition( min[ 0 ], 0 );
-						targetRandomAccess.setPosition( myMinY, 1 );
-
-						maskCursor.jumpFwd( myOffset );
+						int myNumInvalidPixels = 0;
 
-						for ( int y = 0; y < myHeight; ++y )
+						for ( int t = nextTile.getAndIncrement(); t < numTiles; t = nextTile.getAndIncrement() )
 						{
-							if ( interrupted.get() )
-								return null;
-
-							for ( int x = 0; x < width; ++x )
+							final int tile = pendingTiles[ t ];
+							final int x0 = ( tile % numTilesX ) * TILE_SIZE;
+							final int y0 = ( tile / numTilesX ) * TILE_SIZE;
+							final int w = Math.min( TILE_SIZE, width - x0 );
+							final int h = Math.min( TILE_SIZE, height - y0 );
+							byte myTileMask = 0;
+
+							for ( int y = 0; y < h; ++y )
 							{
-								final ByteType m = maskCursor.next();
-								if ( m.get() > iFinal )
+								if ( interrupted.get() )
+									return null;
+
+								smin[ 0 ] = min[ 0 ] + x0;
+								smin[ 1 ] = min[ 1 ] + y0 + y;
+								sourceRandomAccess.setPosition( smin );
+								targetRandomAccess.setPosition( smin[ 0 ], 0 );
+								targetRandomAccess.setPosition( smin[ 1 ], 1 );
+
+								for ( int x = 0, mi = ( y0 + y ) * width + x0; x < w; ++x, ++mi )
 								{
-									final A a = sourceRandomAccess.get();
-									final boolean v = a.isValid();
-									if ( v )
+									byte m = maskArray[ mi ];
+									if ( m > iFinal )
 									{
-										converter.convert( a, targetRandomAccess.get() );
-										m.set( iFinal );
+										final A a = sourceRandomAccess.get();
+										if ( a.isValid() )
+										{
+											converter.convert( a, targetRandomAccess.get() );
+											maskArray[ mi ] = m = iFinal;
+											if ( rawArray != null )
+												recordRawValue( a, mi );
+										}
+										else
+											++myNumInvalidPixels;
 									}
-									else
-										++myNumInvalidPixels;
+									if ( m > myTileMask )
+										myTileMask = m;
+									sourceRandomAccess.fwd( 0 );
+									targetRandomAccess.fwd( 0 );
 								}
-								sourceRandomAccess.fwd( 0 );
-								targetRandomAccess.fwd( 0 );
 							}
-							++smin[ 1 ];
-							sourceRandomAccess.setPosition( smin );
-							targetRandomAccess.move( cr, 0 );
-							targetRandomAccess.fwd( 1 );
+							tileMask[ tile ] = myTileMask;
 						}
 						numInvalidPixels.addAndGet( myNumInvalidPixels );
 						if ( myNumInvalidPixels != 0 )
@@ -366,4 +631,204 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 
 		return !interrupted.get();
 	}
+
+	private void recordRawValue( final A a, final int index )
+	{
+		rawArray[ index ] = ( ( RealType< ? > ) a.get() ).getRealFloat();
+		if ( rawPrototype == null )
+			rawPrototype = copy( a );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private A copy( final A a )
+	{
+		return ( A ) ( ( Type< ? > ) a ).copy();
+	}
+
+	/**
+	 * Convert the recorded raw values of all drawn pixels into the target.
+	 *
+	 * @return {@code false} if interrupted.
+	 */
+	private boolean reconvertDrawnPixels( final ExecutorService ex, final int numTasks )
+	{
+		final A prototype = rawPrototype;
+		if ( prototype == null )
+			return true;
+
+		final AtomicInteger nextTile = new AtomicInteger();
+		final ArrayList< Callable< Void > > tasks = new ArrayList<>( numTasks );
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					final A a = copy( prototype );
+					a.setValid( true );
+					final RealType< ? > value = ( RealType< ? > ) a.get();
+					final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
+					for ( int tile = nextTile.getAndIncrement(); tile < tileMask.length; tile = nextTile.getAndIncrement() )
+					{
+						final int x0 = ( tile % numTilesX ) * TILE_SIZE;
+						final int y0 = ( tile / numTilesX ) * TILE_SIZE;
+						final int w = Math.min( TILE_SIZE, width - x0 );
+						final int h = Math.min( TILE_SIZE, height - y0 );
+						for ( int y = 0; y < h; ++y )
+						{
+							if ( interrupted.get() )
+								return null;
+
+							targetRandomAccess.setPosition( min[ 0 ] + x0, 0 );
+							targetRandomAccess.setPosition( min[ 1 ] + y0 + y, 1 );
+							for ( int x = 0, mi = ( y0 + y ) * width + x0; x < w; ++x, ++mi )
+							{
+								if ( maskArray[ mi ] != Byte.MAX_VALUE )
+								{
+									final float raw = rawArray[ mi ];
+									if ( Float.isNaN( raw ) )
+										targetRandomAccess.get().setZero();
+									else
+									{
+										value.setReal( raw );
+										converter.convert( a, targetRandomAccess.get() );
+									}
+								}
+								targetRandomAccess.fwd( 0 );
+							}
+						}
+					}
+					return null;
+				}
+			} );
+		}
+		try
+		{
+			ex.invokeAll( tasks );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		return !interrupted.get();
+	}
+
+	/**
+	 * Set the pixels of all tiles that do not intersect {@code footprint} to
+	 * zero, and mark them as drawn at the best level. Recorded raw values
+	 * of these pixels are set to {@code NaN}, which is converted to zero by
+	 * {@link #reconvertDrawnPixels(ExecutorService, int)}.
+	 */
+	private void clearClippedTiles( final ScreenFootprint footprint )
+	{
+		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
+		for ( int tile = 0; tile < tileMask.length; ++tile )
+		{
+			final int x0 = ( tile % numTilesX ) * TILE_SIZE;
+			final int y0 = ( tile / numTilesX ) * TILE_SIZE;
+			final int w = Math.min( TILE_SIZE, width - x0 );
+			final int h = Math.min( TILE_SIZE, height - y0 );
+			if ( footprint.intersects( x0, y0, w, h ) )
+				continue;
+			if ( tileMask[ tile ] == 0 )
+				continue;
+			for ( int y = 0; y < h; ++y )
+			{
+				targetRandomAccess.setPosition( min[ 0 ] + x0, 0 );
+				targetRandomAccess.setPosition( min[ 1 ] + y0 + y, 1 );
+				for ( int x = 0, mi = ( y0 + y ) * width + x0; x < w; ++x, ++mi )
+				{
+					if ( maskArray[ mi ] != 0 )
+					{
+						targetRandomAccess.get().setZero();
+						maskArray[ mi ] = 0;
+						if ( rawArray != null )
+							rawArray[ mi ] = Float.NaN;
+					}
+					targetRandomAccess.fwd( 0 );
+				}
+			}
+			tileMask[ tile ] = 0;
+		}
+	}
+
+	/**
+	 * Shift the pixels drawn into {@link #shiftSource} into the target, and
+	 * shift {@link #maskArray} and {@link #rawArray} accordingly. Exposed
+	 * pixels are marked as not drawn. Rows and pixels are processed in an
+	 * order that allows the target to be the same image as
+	 * {@link #shiftSource}.
+	 */
+	private void shiftPreviousFrame()
+	{
+		final int dx = shiftX;
+		final int dy = shiftY;
+		final RandomAccess< B > in = shiftSource.randomAccess( shiftSource );
+		final RandomAccess< B > out = target.randomAccess( target );
+
+		// range of x in the target that is covered by the shifted image
+		final int x0 = Math.max( 0, dx );
+		final int x1 = Math.min( width, width + dx );
+
+		for ( int k = 0; k < height; ++k )
+		{
+			final int y = dy > 0 ? height - 1 - k : k;
+			final int sy = y - dy;
+			final int row = y * width;
+			if ( sy < 0 || sy >= height || x0 >= x1 )
+			{
+				Arrays.fill( maskArray, row, row + width, Byte.MAX_VALUE );
+				continue;
+			}
+
+			final int srow = sy * width;
+			System.arraycopy( maskArray, srow + x0 - dx, maskArray, row + x0, x1 - x0 );
+			if ( rawArray != null )
+				System.arraycopy( rawArray, srow + x0 - dx, rawArray, row + x0, x1 - x0 );
+			Arrays.fill( maskArray, row, row + x0, Byte.MAX_VALUE );
+			Arrays.fill( maskArray, row + x1, row + width, Byte.MAX_VALUE );
+
+			if ( dx > 0 )
+			{
+				in.setPosition( min[ 0 ] + x1 - 1 - dx, 0 );
+				out.setPosition( min[ 0 ] + x1 - 1, 0 );
+			}
+			else
+			{
+				in.setPosition( min[ 0 ] + x0 - dx, 0 );
+				out.setPosition( min[ 0 ] + x0, 0 );
+			}
+			in.setPosition( min[ 1 ] + sy, 1 );
+			out.setPosition( min[ 1 ] + y, 1 );
+			for ( int x = x0; x < x1; ++x )
+			{
+				out.get().set( in.get() );
+				if ( dx > 0 )
+				{
+					in.bck( 0 );
+					out.bck( 0 );
+				}
+				else
+				{
+					in.fwd( 0 );
+					out.fwd( 0 );
+				}
+			}
+		}
+
+		for ( int tile = 0; tile < tileMask.length; ++tile )
+		{
+			final int tx0 = ( tile % numTilesX ) * TILE_SIZE;
+			final int ty0 = ( tile / numTilesX ) * TILE_SIZE;
+			final int w = Math.min( TILE_SIZE, width - tx0 );
+			final int h = Math.min( TILE_SIZE, height - ty0 );
+			byte m = 0;
+			for ( int y = 0; y < h; ++y )
+				for ( int x = 0, mi = ( ty0 + y ) * width + tx0; x < w; ++x, ++mi )
+					if ( maskArray[ mi ] > m )
+						m = maskArray[ mi ];
+			tileMask[ tile ] = m;
+		}
+	}
 }
@@ -31,6 +31,7 @@ package net.imglib2.display;
 
 import net.imglib2.converter.Converter;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 
 public abstract class RealARGBColorConverter< R extends RealType< ? > > implements ColorConverter, Converter< R, ARGBType >
@@ -58,6 +59,12 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 
 	protected int black;
 
+	/**
+	 * Lookup table used by {@link Lut}. Created lazily, and cleared whenever
+	 * min, max, or color change.
+	 */
+	private volatile int[] lut;
+
 	@Override
 	public ARGBType getColor()
 	{
@@ -103,7 +110,7 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 		update();
 	}
 
-	private void update()
+	private synchronized void update()
 	{
 		final double scale = 1.0 / ( max - min );
 		final int value = color.get();
@@ -112,6 +119,7 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 		scaleG = ARGBType.green( value ) * scale;
 		scaleB = ARGBType.blue( value ) * scale;
 		black = ARGBType.rgba( 0, 0, 0, A );
+		lut = null;
 	}
 
 	public static class Imp0< R extends RealType< ? > > extends RealARGBColorConverter< R >
@@ -169,4 +177,86 @@ public abstract class RealARGBColorConverter< R extends RealType< ? > > implemen
 			}
 		}
 	}
+
+	/**
+	 * Converter for integer types with at most 65536 distinct values. The
+	 * converted color of every possible value is stored in a lookup table,
+	 * which is recomputed lazily after {@link #setMin(double)},
+	 * {@link #setMax(double)}, or {@link #setColor(ARGBType)}.
+	 */
+	public static class Lut< R extends RealType< ? > > extends RealARGBColorConverter< R >
+	{
+		/**
+		 * The value corresponding to the first entry of the lookup table.
+		 */
+		private final int lutMin;
+
+		private final int lutSize;
+
+		/**
+		 * @param min
+		 *            value that is mapped to black.
+		 * @param max
+		 *            value that is mapped to the full color.
+		 * @param type
+		 *            determines the range of input values. Must be
+		 *            {@link #supports(RealType) supported}.
+		 */
+		public Lut( final double min, final double max, final RealType< ? > type )
+		{
+			super( min, max );
+			if ( !supports( type ) )
+				throw new IllegalArgumentException( "unsupported type " + type.getClass().getSimpleName() );
+			lutMin = ( int ) type.getMinValue();
+			lutSize = ( int ) ( type.getMaxValue() - type.getMinValue() ) + 1;
+		}
+
+		/**
+		 * Whether values of {@code type} can be converted by a {@link Lut}
+		 * converter, that is, whether it is an integer type with at most
+		 * 65536 distinct values.
+		 */
+		public static boolean supports( final RealType< ? > type )
+		{
+			return type instanceof IntegerType
+					&& type.getMaxValue() - type.getMinValue() < 65536;
+		}
+
+		@Override
+		public void convert( final R input, final ARGBType output )
+		{
+			int[] l = lut;
+			if ( l == null )
+				l = createLut();
+			output.set( l[ ( int ) input.getRealDouble() - lutMin ] );
+		}
+
+		private synchronized int[] createLut()
+		{
+			if ( lut == null )
+			{
+				final int[] l = new int[ lutSize ];
+				for ( int i = 0; i < lutSize; ++i )
+				{
+					final double v = i + lutMin - min;
+					if ( v < 0 )
+					{
+						l[ i ] = black;
+					}
+					else
+					{
+						final int r0 = ( int ) ( scaleR * v + 0.5 );
+						final int g0 = ( int ) ( scaleG * v + 0.5 );
+						final int b0 = ( int ) ( scaleB * v + 0.5 );
+						final int r = Math.min( 255, r0 );
+						final int g = Math.min( 255, g0 );
+						final int b = Math.min( 255, b0 );
+						l[ i ] = ARGBType.rgba( r, g, b, A );
+					}
+				}
+				lut = l;
+			}
+			return lut;
+		}
+	}
 }
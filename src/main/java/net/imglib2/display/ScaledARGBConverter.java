@@ -41,6 +41,12 @@ public abstract class ScaledARGBConverter< T > implements ColorConverter, Conver
 
 	protected double scale;
 
+	/**
+	 * Scaled value of each possible channel value. Created lazily, and
+	 * cleared whenever min or max change.
+	 */
+	private volatile int[] lut;
+
 	private ScaledARGBConverter( final double min, final double max )
 	{
 		this.min = min;
@@ -90,17 +96,33 @@ public abstract class ScaledARGBConverter< T > implements ColorConverter, Conver
 		return false;
 	}
 
-	private void update()
+	private synchronized void update()
 	{
 		scale = 255.0 / ( max - min );
+		lut = null;
+	}
+
+	private synchronized int[] createLut()
+	{
+		if ( lut == null )
+		{
+			final int[] l = new int[ 256 ];
+			for ( int i = 0; i < 256; ++i )
+				l[ i ] = Math.min( 255, ( int ) ( scale * Math.max( 0, i - min ) + 0.5 ) );
+			lut = l;
+		}
+		return lut;
 	}
 
 	int getScaledColor( final int color )
 	{
+		int[] l = lut;
+		if ( l == null )
+			l = createLut();
 		final int a = ARGBType.alpha( color );
-		final int r = Math.min( 255, ( int ) ( scale * Math.max( 0, ARGBType.red( color ) - min ) + 0.5 ) );
-		final int g = Math.min( 255, ( int ) ( scale * Math.max( 0, ARGBType.green( color ) - min ) + 0.5 ) );
-		final int b = Math.min( 255, ( int ) ( scale * Math.max( 0, ARGBType.blue( color ) - min ) + 0.5 ) );
+		final int r = l[ ARGBType.red( color ) ];
+		final int g = l[ ARGBType.green( color ) ];
+		final int b = l[ ARGBType.blue( color ) ];
 		return ARGBType.rgba( r, g, b, a );
 	}
 
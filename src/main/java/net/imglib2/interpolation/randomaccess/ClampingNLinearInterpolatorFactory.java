@@ -56,7 +56,12 @@ public class ClampingNLinearInterpolatorFactory< T extends NumericType< T > > im
 		if ( type instanceof RealType )
 		{
 			if ( type instanceof Volatile )
-				return new ClampingNLinearInterpolatorVolatileRealType( randomAccessible );
+			{
+				if ( randomAccessible.numDimensions() == 3 )
+					return new ClampingTrilinearInterpolatorVolatileRealType( randomAccessible );
+				else
+					return new ClampingNLinearInterpolatorVolatileRealType( randomAccessible );
+			}
 			else
 				return new ClampingNLinearInterpolatorRealType( randomAccessible );
 		}
@@ -66,7 +71,10 @@ public class ClampingNLinearInterpolatorFactory< T extends NumericType< T > > im
 		}
 		else if ( VolatileARGBType.class.isInstance( type ) )
 		{
-			return ( RealRandomAccess ) new ClampingNLinearInterpolatorVolatileARGB< VolatileARGBType >( ( RandomAccessible ) randomAccessible );
+			if ( randomAccessible.numDimensions() == 3 )
+				return ( RealRandomAccess ) new ClampingTrilinearInterpolatorVolatileARGB< VolatileARGBType >( ( RandomAccessible ) randomAccessible );
+			else
+				return ( RealRandomAccess ) new ClampingNLinearInterpolatorVolatileARGB< VolatileARGBType >( ( RandomAccessible ) randomAccessible );
 		}
 		else
 			// fall back to (non-clamping) NLinearInterpolator
@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.interpolation.randomaccess;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.AbstractVolatileNumericType;
+import net.imglib2.util.Util;
+
+/**
+ * Trilinear interpolator for 3D volatile ARGB values with overflow check.
+ * <p>
+ * This computes the same values as
+ * {@link ClampingNLinearInterpolatorVolatileARGB}, but visits the eight
+ * neighbors in a fixed sequence of moves. If all neighbors are valid, they
+ * are remembered and reused as long as the interpolator stays in the same
+ * voxel.
+ *
+ * @param <T>
+ */
+public class ClampingTrilinearInterpolatorVolatileARGB< T extends AbstractVolatileNumericType< ARGBType, T > > extends NLinearInterpolator< T >
+{
+	/**
+	 * ARGB values of the 2x2x2 neighborhood at {@link #x0}, {@link #y0},
+	 * {@link #z0}. Index is {@code x + 2 * y + 4 * z}.
+	 */
+	private final int[] values = new int[ 8 ];
+
+	/**
+	 * Position of the remembered {@link #values}. Only meaningful if
+	 * {@link #cached}.
+	 */
+	private long x0, y0, z0;
+
+	/**
+	 * Whether {@link #values} holds the (all valid) neighborhood at
+	 * {@link #x0}, {@link #y0}, {@link #z0}.
+	 */
+	private boolean cached;
+
+	protected ClampingTrilinearInterpolatorVolatileARGB( final ClampingTrilinearInterpolatorVolatileARGB< T > interpolator )
+	{
+		super( interpolator );
+		cached = false;
+	}
+
+	protected ClampingTrilinearInterpolatorVolatileARGB( final RandomAccessible< T > randomAccessible, final T type )
+	{
+		super( randomAccessible, type );
+		if ( n != 3 )
+			throw new IllegalArgumentException( "expected 3 dimensions" );
+		cached = false;
+	}
+
+	protected ClampingTrilinearInterpolatorVolatileARGB( final RandomAccessible< T > randomAccessible )
+	{
+		this( randomAccessible, randomAccessible.randomAccess().get() );
+	}
+
+	/**
+	 * Get the interpolated value at the current position.
+	 */
+	@Override
+	public T get()
+	{
+		final long x = ( long ) Math.floor( position[ 0 ] );
+		final long y = ( long ) Math.floor( position[ 1 ] );
+		final long z = ( long ) Math.floor( position[ 2 ] );
+		final boolean valid;
+		if ( cached && x == x0 && y == y0 && z == z0 )
+			valid = true;
+		else
+		{
+			valid = fetch();
+			x0 = x;
+			y0 = y;
+			z0 = z;
+			cached = valid;
+		}
+
+		final double fx = position[ 0 ] - x;
+		final double fy = position[ 1 ] - y;
+		final double fz = position[ 2 ] - z;
+		final int a = Math.min( 255, ( int ) Util.round( interpolate( 24, fx, fy, fz ) ) );
+		final int r = Math.min( 255, ( int ) Util.round( interpolate( 16, fx, fy, fz ) ) );
+		final int g = Math.min( 255, ( int ) Util.round( interpolate( 8, fx, fy, fz ) ) );
+		final int b = Math.min( 255, ( int ) Util.round( interpolate( 0, fx, fy, fz ) ) );
+
+		accumulator.get().set( ( ( ( ( ( a << 8 ) | r ) << 8 ) | g ) << 8 ) | b );
+		accumulator.setValid( valid );
+		return accumulator;
+	}
+
+	/**
+	 * Interpolate the channel at bit offset {@code shift} of the
+	 * {@link #values}.
+	 */
+	private double interpolate( final int shift, final double fx, final double fy, final double fz )
+	{
+		final int[] v = values;
+		final int v0 = ( v[ 0 ] >> shift ) & 0xff;
+		final int v1 = ( v[ 1 ] >> shift ) & 0xff;
+		final int v2 = ( v[ 2 ] >> shift ) & 0xff;
+		final int v3 = ( v[ 3 ] >> shift ) & 0xff;
+		final int v4 = ( v[ 4 ] >> shift ) & 0xff;
+		final int v5 = ( v[ 5 ] >> shift ) & 0xff;
+		final int v6 = ( v[ 6 ] >> shift ) & 0xff;
+		final int v7 = ( v[ 7 ] >> shift ) & 0xff;
+		final double c00 = v0 + fx * ( v1 - v0 );
+		final double c10 = v2 + fx * ( v3 - v2 );
+		final double c01 = v4 + fx * ( v5 - v4 );
+		final double c11 = v6 + fx * ( v7 - v6 );
+		final double c0 = c00 + fy * ( c10 - c00 );
+		final double c1 = c01 + fy * ( c11 - c01 );
+		return c0 + fz * ( c1 - c0 );
+	}
+
+	/**
+	 * Read the 2x2x2 neighborhood of the {@link #target} position into
+	 * {@link #values}, and return the target to its position.
+	 *
+	 * @return whether all values are valid.
+	 */
+	private boolean fetch()
+	{
+		final int[] v = values;
+		T t = target.get();
+		boolean valid = t.isValid();
+		v[ 0 ] = t.get().get();
+		target.fwd( 0 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 1 ] = t.get().get();
+		target.fwd( 1 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 3 ] = t.get().get();
+		target.bck( 0 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 2 ] = t.get().get();
+		target.fwd( 2 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 6 ] = t.get().get();
+		target.fwd( 0 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 7 ] = t.get().get();
+		target.bck( 1 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 5 ] = t.get().get();
+		target.bck( 0 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 4 ] = t.get().get();
+		target.bck( 2 );
+		return valid;
+	}
+
+	@Override
+	public ClampingTrilinearInterpolatorVolatileARGB< T > copy()
+	{
+		return new ClampingTrilinearInterpolatorVolatileARGB<>( this );
+	}
+
+	@Override
+	public ClampingTrilinearInterpolatorVolatileARGB< T > copyRealRandomAccess()
+	{
+		return copy();
+	}
+}
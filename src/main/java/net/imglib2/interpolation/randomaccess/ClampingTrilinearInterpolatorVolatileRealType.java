@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * BigDataViewer core classes with minimal dependencies
+ * %%
+ * Copyright (C) 2012 - 2016 Tobias Pietzsch, Stephan Saalfeld, Stephan Preibisch,
+ * Jean-Yves Tinevez, HongKee Moon, Johannes Schindelin, Curtis Rueden, John Bogovic
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.interpolation.randomaccess;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.volatiles.AbstractVolatileRealType;
+
+/**
+ * Trilinear interpolator for 3D volatile {@link RealType} values with
+ * overflow check. Interpolated values are clamped to the range
+ * {@link RealType#getMinValue()},{@link RealType#getMaxValue()}.
+ * <p>
+ * This computes the same values as
+ * {@link ClampingNLinearInterpolatorVolatileRealType}, but visits the eight
+ * neighbors in a fixed sequence of moves. If all neighbors are valid, they
+ * are remembered and reused as long as the interpolator stays in the same
+ * voxel.
+ *
+ * @param <T>
+ */
+public class ClampingTrilinearInterpolatorVolatileRealType< R extends RealType< R >, T extends AbstractVolatileRealType< R, T > > extends NLinearInterpolator< T >
+{
+	protected final double clampMin;
+
+	protected final double clampMax;
+
+	/**
+	 * Values of the 2x2x2 neighborhood at {@link #x0}, {@link #y0},
+	 * {@link #z0}. Index is {@code x + 2 * y + 4 * z}.
+	 */
+	private final double[] values = new double[ 8 ];
+
+	/**
+	 * Position of the remembered {@link #values}. Only meaningful if
+	 * {@link #cached}.
+	 */
+	private long x0, y0, z0;
+
+	/**
+	 * Whether {@link #values} holds the (all valid) neighborhood at
+	 * {@link #x0}, {@link #y0}, {@link #z0}.
+	 */
+	private boolean cached;
+
+	protected ClampingTrilinearInterpolatorVolatileRealType( final ClampingTrilinearInterpolatorVolatileRealType< R, T > interpolator )
+	{
+		super( interpolator );
+		clampMin = interpolator.clampMin;
+		clampMax = interpolator.clampMax;
+		cached = false;
+	}
+
+	protected ClampingTrilinearInterpolatorVolatileRealType( final RandomAccessible< T > randomAccessible, final T type )
+	{
+		super( randomAccessible, type );
+		if ( n != 3 )
+			throw new IllegalArgumentException( "expected 3 dimensions" );
+		clampMin = type.getMinValue();
+		clampMax = type.getMaxValue();
+		cached = false;
+	}
+
+	protected ClampingTrilinearInterpolatorVolatileRealType( final RandomAccessible< T > randomAccessible )
+	{
+		this( randomAccessible, randomAccessible.randomAccess().get() );
+	}
+
+	/**
+	 * Get the interpolated value at the current position.
+	 */
+	@Override
+	public T get()
+	{
+		final long x = ( long ) Math.floor( position[ 0 ] );
+		final long y = ( long ) Math.floor( position[ 1 ] );
+		final long z = ( long ) Math.floor( position[ 2 ] );
+		final boolean valid;
+		if ( cached && x == x0 && y == y0 && z == z0 )
+			valid = true;
+		else
+		{
+			valid = fetch();
+			x0 = x;
+			y0 = y;
+			z0 = z;
+			cached = valid;
+		}
+
+		final double fx = position[ 0 ] - x;
+		final double fy = position[ 1 ] - y;
+		final double fz = position[ 2 ] - z;
+		final double[] v = values;
+		final double c00 = v[ 0 ] + fx * ( v[ 1 ] - v[ 0 ] );
+		final double c10 = v[ 2 ] + fx * ( v[ 3 ] - v[ 2 ] );
+		final double c01 = v[ 4 ] + fx * ( v[ 5 ] - v[ 4 ] );
+		final double c11 = v[ 6 ] + fx * ( v[ 7 ] - v[ 6 ] );
+		final double c0 = c00 + fy * ( c10 - c00 );
+		final double c1 = c01 + fy * ( c11 - c01 );
+		final double acc = c0 + fz * ( c1 - c0 );
+
+		accumulator.setReal( Math.max( clampMin, Math.min( clampMax, acc ) ) );
+		accumulator.setValid( valid );
+		return accumulator;
+	}
+
+	/**
+	 * Read the 2x2x2 neighborhood of the {@link #target} position into
+	 * {@link #values}, and return the target to its position.
+	 *
+	 * @return whether all values are valid.
+	 */
+	private boolean fetch()
+	{
+		final double[] v = values;
+		T t = target.get();
+		boolean valid = t.isValid();
+		v[ 0 ] = t.getRealDouble();
+		target.fwd( 0 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 1 ] = t.getRealDouble();
+		target.fwd( 1 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 3 ] = t.getRealDouble();
+		target.bck( 0 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 2 ] = t.getRealDouble();
+		target.fwd( 2 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 6 ] = t.getRealDouble();
+		target.fwd( 0 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 7 ] = t.getRealDouble();
+		target.bck( 1 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 5 ] = t.getRealDouble();
+		target.bck( 0 );
+		t = target.get();
+		valid &= t.isValid();
+		v[ 4 ] = t.getRealDouble();
+		target.bck( 2 );
+		return valid;
+	}
+
+	@Override
+	public ClampingTrilinearInterpolatorVolatileRealType< R, T > copy()
+	{
+		return new ClampingTrilinearInterpolatorVolatileRealType<>( this );
+	}
+
+	@Override
+	public ClampingTrilinearInterpolatorVolatileRealType< R, T > copyRealRandomAccess()
+	{
+		return copy();
+	}
+}